@@ -0,0 +1,74 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.cli.command;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.kit.kastel.sdq.lissa.ratlr.EmbeddingPrecomputation;
+
+import picocli.CommandLine;
+
+/**
+ * Command implementation for precomputing the embeddings of configurations.
+ * This command only runs the artifact providers, preprocessors, and embedding creators of the configurations to
+ * warm the caches, so that later evaluations of the configurations do not need to calculate any embeddings.
+ * Corpora and embedding creators shared by several configurations are only processed once.
+ */
+@CommandLine.Command(
+        name = "embed",
+        mixinStandardHelpOptions = true,
+        description = "Precomputes the embeddings of the configurations to warm the caches")
+public class EmbedCommand implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(EmbedCommand.class);
+
+    /**
+     * Array of configuration file paths to be processed.
+     * If a path points to a directory, all files within that directory will be processed.
+     * If no paths are provided, the command will look for a default "config.json" file.
+     */
+    @CommandLine.Option(
+            names = {"-c", "--configs"},
+            arity = "1..*",
+            description =
+                    "Specifies one or more config paths whose embeddings are precomputed. If the path points to a directory, all files inside are chosen.")
+    private Path @Nullable [] configs;
+
+    /**
+     * The maximum number of corpora that are embedded at the same time.
+     */
+    @CommandLine.Option(
+            names = {"-p", "--parallel"},
+            defaultValue = "4",
+            description =
+                    "The maximum number of corpora that are embedded at the same time (default: ${DEFAULT-VALUE}).")
+    private int parallelism;
+
+    /**
+     * Executes the embedding command.
+     * This method:
+     * 1. Loads the specified configuration files (or uses default if none specified)
+     * 2. Deduplicates the corpora and embedding creators of all configurations
+     * 3. Calculates the embeddings of each corpus with each of its embedding creators
+     */
+    @Override
+    public void run() {
+        List<Path> configsToEmbed = EvaluateCommand.loadConfigs(configs);
+        logger.info("Found {} config files to precompute embeddings for", configsToEmbed.size());
+
+        try {
+            EmbeddingPrecomputation precomputation = new EmbeddingPrecomputation(configsToEmbed, parallelism);
+            logger.info("Precomputing {} distinct embedding runs", precomputation.size());
+            int failures = precomputation.run();
+            if (failures > 0) {
+                logger.warn("{} corpora could not be embedded", failures);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not precompute the embeddings: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.kit.kastel.sdq.lissa.ratlr.artifactprovider.ArtifactProvider;
+import edu.kit.kastel.sdq.lissa.ratlr.cache.CacheManager;
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.Configuration;
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.context.ContextStore;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.PersistentVectorIndex;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.TargetElementStore;
+import edu.kit.kastel.sdq.lissa.ratlr.embeddingcreator.EmbeddingCreator;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.preprocessor.Preprocessor;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.Futures;
+
+/**
+ * Precomputes the embeddings of one or more configurations to warm the caches, without classifying any trace links.
+ * Only the artifact providers, preprocessors, and embedding creators of the configurations are used.
+ * <p>
+ * The work is deduplicated across all configurations: Each corpus (cache directory, artifact provider, and
+ * preprocessor) is loaded and preprocessed only once, and each corpus is embedded only once per distinct embedding
+ * creator. Sources and targets are treated alike, so a corpus that is the source of one configuration and the target
+ * of another is only embedded once. If a configuration persists the embeddings of its target store
+ * ({@code persistent_index}), the {@link PersistentVectorIndex} of the target corpus is written as well.
+ * <p>
+ * The corpora of a cache directory are processed in parallel. Cache directories are processed one after another,
+ * as the {@link CacheManager#getDefaultInstance() default cache manager} is global. Each distinct embedding creator
+ * is created once per cache directory, before the corpora are processed, and shared by all corpora, so that its
+ * configuration is not accessed concurrently and its request limits apply to all corpora together.
+ */
+public class EmbeddingPrecomputation {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EmbeddingPrecomputation.class);
+
+    /** A corpus, i.e., the elements created by an artifact provider and a preprocessor */
+    private record Corpus(ModuleConfiguration artifactProvider, ModuleConfiguration preprocessor) {}
+
+    /** The embedding creator for a corpus and whether its embeddings are persisted in a vector index */
+    private record Embedding(ModuleConfiguration embeddingCreator, boolean persistentIndex) {}
+
+    /** The corpora and their embeddings, grouped by cache directory (null for the default directory) */
+    private final Map<@Nullable String, Map<Corpus, Map<ModuleConfiguration, Embedding>>> work =
+            new LinkedHashMap<>();
+
+    private final int parallelism;
+
+    /**
+     * Creates a new precomputation for the given configuration files.
+     *
+     * @param configFiles The paths to the configuration files
+     * @param parallelism The maximum number of corpora that are processed at the same time
+     * @throws IOException If a configuration file cannot be read
+     * @throws IllegalArgumentException If the parallelism is less than 1
+     */
+    public EmbeddingPrecomputation(List<Path> configFiles, int parallelism) throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be greater than 0.");
+        }
+        this.parallelism = parallelism;
+        ObjectMapper mapper = new ObjectMapper();
+        for (Path configFile : configFiles) {
+            Configuration configuration = mapper.readValue(configFile.toFile(), Configuration.class);
+            boolean persistentIndex = new TargetElementStore(configuration.targetStore()).usesPersistentIndex();
+            add(configuration, configuration.sourceArtifactProvider(), configuration.sourcePreprocessor(), false);
+            add(
+                    configuration,
+                    configuration.targetArtifactProvider(),
+                    configuration.targetPreprocessor(),
+                    persistentIndex);
+        }
+    }
+
+    private void add(
+            Configuration configuration,
+            ModuleConfiguration artifactProvider,
+            ModuleConfiguration preprocessor,
+            boolean persistentIndex) {
+        Map<Corpus, Map<ModuleConfiguration, Embedding>> corpora =
+                work.computeIfAbsent(configuration.cacheDir(), ignored -> new LinkedHashMap<>());
+        Map<ModuleConfiguration, Embedding> embeddings =
+                corpora.computeIfAbsent(new Corpus(artifactProvider, preprocessor), ignored -> new LinkedHashMap<>());
+        ModuleConfiguration embeddingCreator = configuration.embeddingCreator();
+        embeddings.merge(
+                embeddingCreator,
+                new Embedding(embeddingCreator, persistentIndex),
+                (existing, added) -> new Embedding(
+                        existing.embeddingCreator(), existing.persistentIndex() || added.persistentIndex()));
+    }
+
+    /**
+     * Returns the number of distinct combinations of corpus and embedding creator of all configurations.
+     *
+     * @return The number of embedding runs
+     */
+    public int size() {
+        int size = 0;
+        for (var corpora : work.values()) {
+            for (var embeddings : corpora.values()) {
+                size += embeddings.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Calculates the embeddings of all corpora with all of their embedding creators.
+     * A failing corpus is logged and does not stop the others.
+     *
+     * @return The number of corpora that could not be embedded
+     * @throws IOException If a cache directory cannot be created
+     */
+    public int run() throws IOException {
+        AtomicInteger failures = new AtomicInteger();
+        for (var entry : work.entrySet()) {
+            CacheManager.setCacheDir(entry.getKey());
+            Map<ModuleConfiguration, EmbeddingCreator> embeddingCreators = createEmbeddingCreators(entry.getValue());
+            List<Future<Void>> futures = new ArrayList<>();
+            try (ExecutorService executor = Executors.newFixedThreadPool(parallelism)) {
+                for (var corpus : entry.getValue().entrySet()) {
+                    futures.add(executor.submit(() -> {
+                        try {
+                            embed(corpus.getKey(), corpus.getValue().values(), embeddingCreators);
+                        } catch (RuntimeException e) {
+                            failures.incrementAndGet();
+                            LOGGER.warn("Could not embed corpus {}: {}", corpus.getKey(), e.getMessage());
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<Void> future : futures) {
+                    Futures.getLogged(future, LOGGER);
+                }
+            } finally {
+                CacheManager.getDefaultInstance().flush();
+            }
+        }
+        return failures.get();
+    }
+
+    /**
+     * Creates each distinct embedding creator of the given corpora once.
+     * A creator that cannot be created is logged and missing in the result, so only the corpora that use it fail.
+     */
+    private static Map<ModuleConfiguration, EmbeddingCreator> createEmbeddingCreators(
+            Map<Corpus, Map<ModuleConfiguration, Embedding>> corpora) {
+        ContextStore contextStore = new ContextStore();
+        Map<ModuleConfiguration, EmbeddingCreator> embeddingCreators = new LinkedHashMap<>();
+        for (var embeddings : corpora.values()) {
+            for (ModuleConfiguration configuration : embeddings.keySet()) {
+                if (embeddingCreators.containsKey(configuration)) {
+                    continue;
+                }
+                try {
+                    embeddingCreators.put(
+                            configuration, EmbeddingCreator.createEmbeddingCreator(configuration, contextStore));
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Could not create embedding creator {}: {}", configuration, e.getMessage());
+                }
+            }
+        }
+        return embeddingCreators;
+    }
+
+    private static void embed(
+            Corpus corpus,
+            Iterable<Embedding> embeddings,
+            Map<ModuleConfiguration, EmbeddingCreator> embeddingCreators) {
+        ContextStore contextStore = new ContextStore();
+        ArtifactProvider artifactProvider =
+                ArtifactProvider.createArtifactProvider(corpus.artifactProvider(), contextStore);
+        Preprocessor preprocessor = Preprocessor.createPreprocessor(corpus.preprocessor(), contextStore);
+
+        LOGGER.info("Loading and preprocessing artifacts of {}", corpus.artifactProvider());
+        List<Element> elements = preprocessor.preprocess(artifactProvider.getArtifacts());
+
+        for (Embedding embedding : embeddings) {
+            EmbeddingCreator embeddingCreator = embeddingCreators.get(embedding.embeddingCreator());
+            if (embeddingCreator == null) {
+                throw new IllegalStateException("Could not create embedding creator " + embedding.embeddingCreator());
+            }
+            LOGGER.info("Calculating {} embeddings with {}", elements.size(), embedding.embeddingCreator());
+            if (embedding.persistentIndex()) {
+                new PersistentVectorIndex(CacheManager.getDefaultInstance()
+                                .getCacheDirectory()
+                                .resolve(PersistentVectorIndex.DIRECTORY_NAME))
+                        .loadOrCalculate(
+                                embeddingCreator.getModelIdentifier(),
+                                elements,
+                                embeddingCreator::calculateEmbeddings,
+                                embeddingCreator.usesHalfPrecision());
+            } else {
+                embeddingCreator.calculateEmbeddings(elements);
+            }
+        }
+    }
+}
@@ -20,6 +20,8 @@ import edu.kit.kastel.sdq.lissa.ratlr.cache.CacheManager;
 import edu.kit.kastel.sdq.lissa.ratlr.classifier.Classifier;
 import edu.kit.kastel.sdq.lissa.ratlr.configuration.Configuration;
 import edu.kit.kastel.sdq.lissa.ratlr.context.ContextStore;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.EmbeddingMatrix;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.PersistentVectorIndex;
 import edu.kit.kastel.sdq.lissa.ratlr.elementstore.SourceElementStore;
 import edu.kit.kastel.sdq.lissa.ratlr.elementstore.TargetElementStore;
 import edu.kit.kastel.sdq.lissa.ratlr.embeddingcreator.EmbeddingCreator;
@@ -264,13 +266,41 @@ public class Evaluation {
 
         LOGGER.info("Calculating embeddings");
         var sourceEmbeddings = embeddingCreator.calculateEmbeddings(sourceElements);
-        var targetEmbeddings = embeddingCreator.calculateEmbeddings(targetElements);
+        EmbeddingMatrix targetEmbeddings = calculateTargetEmbeddings(targetStore, embeddingCreator, targetElements);
 
         LOGGER.info("Building element stores");
-        sourceStore.setup(sourceElements, sourceEmbeddings);
+        sourceStore.setup(sourceElements, sourceEmbeddings, embeddingCreator.usesHalfPrecision());
         targetStore.setup(targetElements, targetEmbeddings);
     }
 
+    /**
+     * Calculates the embeddings of the target elements in the precision of the embedding creator.
+     * If the target store uses a {@link PersistentVectorIndex}, the embeddings are mapped from the index file instead
+     * of being copied to the heap.
+     *
+     * @param targetStore The target store the embeddings are calculated for
+     * @param embeddingCreator The embedding creator
+     * @param targetElements The target elements
+     * @return The embeddings, row {@code i} belongs to {@code targetElements.get(i)}
+     */
+    static EmbeddingMatrix calculateTargetEmbeddings(
+            TargetElementStore targetStore, EmbeddingCreator embeddingCreator, List<Element> targetElements) {
+        if (targetStore.usesPersistentIndex()) {
+            return new PersistentVectorIndex(CacheManager.getDefaultInstance()
+                            .getCacheDirectory()
+                            .resolve(PersistentVectorIndex.DIRECTORY_NAME))
+                    .loadOrCalculate(
+                            embeddingCreator.getModelIdentifier(),
+                            targetElements,
+                            embeddingCreator::calculateEmbeddings,
+                            embeddingCreator.usesHalfPrecision());
+        }
+        List<float[]> embeddings = embeddingCreator.calculateEmbeddings(targetElements);
+        return embeddingCreator.usesHalfPrecision()
+                ? EmbeddingMatrix.ofHalfPrecision(embeddings)
+                : EmbeddingMatrix.of(embeddings);
+    }
+
     /**
      * Gets the number of source artifacts in this evaluation.
      *
@@ -110,10 +110,10 @@ public class Main {
 
         logger.info("Calculating embeddings");
         var sourceEmbeddings = embeddingCreator.calculateEmbeddings(sourceElements);
-        var targetEmbeddings = embeddingCreator.calculateEmbeddings(targetElements);
+        var targetEmbeddings = Evaluation.calculateTargetEmbeddings(targetStore, embeddingCreator, targetElements);
 
         logger.info("Building element stores");
-        sourceStore.setup(sourceElements, sourceEmbeddings);
+        sourceStore.setup(sourceElements, sourceEmbeddings, embeddingCreator.usesHalfPrecision());
         targetStore.setup(targetElements, targetEmbeddings);
 
         logger.info("Classifying Tracelinks");
@@ -0,0 +1,128 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A cache that stores embeddings ({@code float[]} values) in a binary {@link EmbeddingFile} instead of JSON text.
+ * All other values are stored in the wrapped cache.
+ * <p>
+ * Embeddings that are not contained in the embedding file are looked up in the wrapped cache, so existing
+ * JSON caches (and Redis) are still used. Such embeddings are copied to the embedding file on the first read.
+ * New embeddings are only written to the embedding file, unless the file is locked by another writer and was
+ * opened read-only; they are stored in the wrapped cache then.
+ */
+class BinaryEmbeddingCache implements Cache {
+    private final EmbeddingFile embeddings;
+    private final Cache cache;
+
+    /**
+     * Creates a new binary embedding cache.
+     *
+     * @param embeddings The file that stores the embeddings
+     * @param cache The cache for all other values and for looking up embeddings that are not in the file
+     */
+    BinaryEmbeddingCache(EmbeddingFile embeddings, Cache cache) {
+        this.embeddings = Objects.requireNonNull(embeddings);
+        this.cache = Objects.requireNonNull(cache);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> @Nullable T get(CacheKey key, Class<T> clazz) {
+        if (clazz != float[].class) {
+            return cache.get(key, clazz);
+        }
+        float[] embedding = embeddings.get(key.localKey());
+        if (embedding == null) {
+            embedding = cache.get(key, float[].class);
+            if (embedding != null) {
+                embeddings.put(key.localKey(), embedding);
+            }
+        }
+        return (T) embedding;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K extends CacheKey, T> Map<K, T> getAll(Collection<K> keys, Class<T> clazz) {
+        if (clazz != float[].class) {
+            return cache.getAll(keys, clazz);
+        }
+        Map<K, float[]> values = HashMap.newHashMap(keys.size());
+        List<K> misses = new ArrayList<>();
+        for (K key : keys) {
+            float[] embedding = embeddings.get(key.localKey());
+            if (embedding == null) {
+                misses.add(key);
+            } else {
+                values.put(key, embedding);
+            }
+        }
+        if (!misses.isEmpty()) {
+            Map<K, float[]> loaded = cache.getAll(misses, float[].class);
+            for (var entry : loaded.entrySet()) {
+                embeddings.put(entry.getKey().localKey(), entry.getValue());
+            }
+            values.putAll(loaded);
+        }
+        return (Map<K, T>) values;
+    }
+
+    @Override
+    public void put(CacheKey key, String value) {
+        cache.put(key, value);
+    }
+
+    @Override
+    public <T> void put(CacheKey key, T value) {
+        if (value instanceof float[] embedding && embeddings.isWritable()) {
+            embeddings.put(key.localKey(), embedding);
+        } else {
+            cache.put(key, value);
+        }
+    }
+
+    @Override
+    public void putAll(Map<? extends CacheKey, ?> values) {
+        Map<CacheKey, Object> others = new HashMap<>();
+        for (var entry : values.entrySet()) {
+            if (entry.getValue() instanceof float[] embedding && embeddings.isWritable()) {
+                embeddings.put(entry.getKey().localKey(), embedding);
+            } else {
+                others.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!others.isEmpty()) {
+            cache.putAll(others);
+        }
+    }
+
+    @Override
+    public void flush() {
+        embeddings.flush();
+        cache.flush();
+    }
+
+    /**
+     * Closes the embedding file and flushes the wrapped cache, which is managed (and closed) by its
+     * {@link CacheManager}.
+     */
+    @Override
+    public void close() {
+        embeddings.close();
+        cache.flush();
+    }
+
+    @Override
+    public boolean containsKey(CacheKey key) {
+        return embeddings.contains(key.localKey()) || cache.containsKey(key);
+    }
+}
@@ -1,6 +1,10 @@
 /* Licensed under MIT 2025. */
 package edu.kit.kastel.sdq.lissa.ratlr.cache;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.jspecify.annotations.Nullable;
 
 /**
@@ -19,6 +23,46 @@ public interface Cache {
      */
     <T> @Nullable T get(CacheKey key, Class<T> clazz);
 
+    /**
+     * Retrieves the values of several keys at once and deserializes them to the specified type.
+     * Implementations may look up all keys with a few requests (e.g., pipelined Redis commands) instead of one
+     * request per key. The default implementation calls {@link #get(CacheKey, Class)} for each key.
+     *
+     * @param <K> The type of the cache keys
+     * @param <T> The type to deserialize the cached values to
+     * @param keys The cache keys to look up
+     * @param clazz The class of the type to deserialize to
+     * @return The deserialized values of the keys that are contained in the cache
+     */
+    default <K extends CacheKey, T> Map<K, T> getAll(Collection<K> keys, Class<T> clazz) {
+        Map<K, T> values = HashMap.newHashMap(keys.size());
+        for (K key : keys) {
+            T value = get(key, clazz);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Stores several values at once. String values are stored as they are (like {@link #put(CacheKey, String)}),
+     * all other values are serialized (like {@link #put(CacheKey, Object)}).
+     * Implementations may store all values with a few requests. The default implementation calls {@code put} for
+     * each value.
+     *
+     * @param values The values to store by their cache keys
+     */
+    default void putAll(Map<? extends CacheKey, ?> values) {
+        for (var entry : values.entrySet()) {
+            if (entry.getValue() instanceof String value) {
+                put(entry.getKey(), value);
+            } else {
+                put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
     /**
      * Stores a string value in the cache.
      *
@@ -43,6 +87,14 @@ public interface Cache {
      */
     void flush();
 
+    /**
+     * Flushes the cache and releases the resources it holds, e.g., the locks of its files.
+     * The cache must not be used afterward.
+     */
+    default void close() {
+        flush();
+    }
+
     /**
      * Returns true if this map contains a mapping for the specified key.
      * More formally, returns true if and only if this map contains a mapping for a key k such that Objects.equals(key, k).
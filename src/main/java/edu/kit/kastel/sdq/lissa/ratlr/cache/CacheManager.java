@@ -8,6 +8,10 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.kit.kastel.sdq.lissa.ratlr.utils.Environment;
 
 /**
  * Manages caching operations in the LiSSA framework.
@@ -21,29 +25,63 @@ public final class CacheManager {
      */
     public static final String DEFAULT_CACHE_DIRECTORY = "cache";
 
+    private static final Logger logger = LoggerFactory.getLogger(CacheManager.class);
+
     private static @Nullable CacheManager defaultInstanceManager;
     private final Path directoryOfCaches;
-    private final Map<String, RedisCache> caches = new HashMap<>();
+    private final Map<String, Cache> caches = new HashMap<>();
+    private final Map<String, BinaryEmbeddingCache> embeddingCaches = new HashMap<>();
     private final boolean replaceLocalCacheOnConflict;
 
+    /** The sync policy of the {@link LogLocalCache log caches}, or null if the local caches are JSON files */
+    private final LogLocalCache.@Nullable SyncPolicy logSyncPolicy;
+
+    /** The in-memory tier shared by all caches, or null if it is disabled */
+    private final @Nullable HotTier hotTier;
+
+    private final boolean negativeCaching;
+
     /**
      * Sets the cache directory for the default cache manager instance.
      * This method must be called before using the default instance.
+     * <p>
+     * If the default instance already uses this directory, it is kept, so that its caches are not opened twice.
+     * Otherwise, the caches of the previous default instance are {@link #close() closed}, which releases the locks
+     * of their files.
      *
      * @param directory The path to the cache directory, or null to use the default directory
      * @throws IOException If the cache directory cannot be created
      */
     public static synchronized void setCacheDir(@Nullable String directory) throws IOException {
-        defaultInstanceManager = new CacheManager(Path.of(directory == null ? DEFAULT_CACHE_DIRECTORY : directory));
+        Path cacheDir = Path.of(directory == null ? DEFAULT_CACHE_DIRECTORY : directory);
+        CacheManager previous = defaultInstanceManager;
+        if (previous != null) {
+            if (previous.directoryOfCaches.toAbsolutePath().normalize().equals(cacheDir.toAbsolutePath().normalize())) {
+                return;
+            }
+            previous.close();
+        }
+        defaultInstanceManager = new CacheManager(cacheDir);
     }
 
     /**
      * Creates a new cache manager instance using the specified cache directory.
      * The directory will be created if it doesn't exist.
+     * <p>
+     * The format of the local caches can be configured through the CACHE_FORMAT environment variable:
+     * {@code json} (default) stores each cache in a JSON file ({@link JsonLocalCache}), {@code log} in an
+     * append-only log ({@link LogLocalCache}) that imports the JSON file on first use. When the records of a log are
+     * forced to disk is configured through the CACHE_FSYNC environment variable ({@code never}, {@code flush}
+     * (default), or {@code always}).
+     * <p>
+     * If the CACHE_MEMORY_BYTES environment variable is set to a positive number, recently used values of all caches
+     * are additionally kept in an in-memory tier of (approximately) this size ({@link HotTierCache}).
+     * If CACHE_NEGATIVE is {@code true}, the tier also remembers keys that are missing in a cache.
      *
      * @param cacheDir The path to the cache directory
      * @throws IOException If the cache directory cannot be created
-     * @throws IllegalArgumentException If the path exists but is not a directory
+     * @throws IllegalArgumentException If the path exists but is not a directory, the cache format or sync policy
+     *                                  is unknown, or the size of the in-memory tier is not a number
      */
     public CacheManager(Path cacheDir) throws IOException {
         if (!Files.exists(cacheDir)) Files.createDirectories(cacheDir);
@@ -52,6 +90,31 @@ public final class CacheManager {
         }
         this.directoryOfCaches = cacheDir;
         this.replaceLocalCacheOnConflict = true;
+        this.logSyncPolicy = logSyncPolicy();
+        this.hotTier = hotTier();
+        this.negativeCaching = Boolean.parseBoolean(Environment.getenv("CACHE_NEGATIVE"));
+    }
+
+    private static @Nullable HotTier hotTier() {
+        String size = Environment.getenv("CACHE_MEMORY_BYTES");
+        try {
+            long maxBytes = size == null ? 0 : Long.parseLong(size.strip());
+            return maxBytes > 0 ? new HotTier(maxBytes) : null;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid size of the in-memory cache: " + size, e);
+        }
+    }
+
+    private static LogLocalCache.@Nullable SyncPolicy logSyncPolicy() {
+        String format = Environment.getenv("CACHE_FORMAT");
+        if (format == null || format.equalsIgnoreCase("json")) {
+            return null;
+        }
+        if (!format.equalsIgnoreCase("log")) {
+            throw new IllegalArgumentException("Unknown cache format: " + format);
+        }
+        String syncPolicy = Environment.getenv("CACHE_FSYNC");
+        return syncPolicy == null ? LogLocalCache.SyncPolicy.FLUSH : LogLocalCache.SyncPolicy.of(syncPolicy);
     }
 
     /**
@@ -66,6 +129,15 @@ public final class CacheManager {
         return defaultInstanceManager;
     }
 
+    /**
+     * Gets the directory that contains the caches of this manager.
+     *
+     * @return The cache directory
+     */
+    public Path getCacheDirectory() {
+        return directoryOfCaches;
+    }
+
     /**
      * Gets a cache instance for the specified name.
      * This method is designed for internal use by model implementations.
@@ -84,8 +156,34 @@ public final class CacheManager {
                 throw new IllegalArgumentException("Parameters must not contain null values");
             }
         }
-        String name = origin.getClass().getSimpleName() + "_" + String.join("_", parameters);
-        return getCache(name, true);
+        return getCache(cacheName(origin, parameters), true);
+    }
+
+    /**
+     * Gets a cache instance for embeddings, which stores {@code float[]} values in a binary file
+     * ({@code <name>.embeddings}, or {@code <name>.f16.embeddings} in half precision) next to the regular cache file.
+     * Embeddings that are not yet contained in the binary file are still looked up in the regular cache of the same
+     * name (see {@link #getCache(Object, String[])}).
+     *
+     * @param origin The class origin (caller, {@code this})
+     * @param parameters a list of parameters that define what makes a cache unique, e.g., the model name.
+     * @param halfPrecision Whether the embeddings are stored as half-precision floats
+     * @return A cache instance for the specified name
+     * @throws IllegalArgumentException If origin or parameters is null or contains null values
+     */
+    public synchronized Cache getEmbeddingCache(Object origin, String[] parameters, boolean halfPrecision) {
+        Cache cache = getCache(origin, parameters);
+        String name = cacheName(origin, parameters).replace(":", "__") + (halfPrecision ? ".f16" : "");
+        EmbeddingFile.Precision precision =
+                halfPrecision ? EmbeddingFile.Precision.FLOAT16 : EmbeddingFile.Precision.FLOAT32;
+        return embeddingCaches.computeIfAbsent(
+                name,
+                ignored -> new BinaryEmbeddingCache(
+                        new EmbeddingFile(directoryOfCaches.resolve(name + ".embeddings"), precision), cache));
+    }
+
+    private static String cacheName(Object origin, String[] parameters) {
+        return origin.getClass().getSimpleName() + "_" + String.join("_", parameters);
     }
 
     /**
@@ -111,15 +209,22 @@ public final class CacheManager {
      * @param appendEnding Whether to append the .json extension to the cache name
      * @return A cache instance for the specified name
      */
-    private Cache getCache(String name, boolean appendEnding) {
+    private synchronized Cache getCache(String name, boolean appendEnding) {
         name = name.replace(":", "__");
 
         if (caches.containsKey(name)) {
             return caches.get(name);
         }
 
-        LocalCache localCache = new LocalCache(directoryOfCaches + "/" + name + (appendEnding ? ".json" : ""));
-        RedisCache cache = new RedisCache(localCache, replaceLocalCacheOnConflict);
+        String fileName = name + (appendEnding ? ".json" : "");
+        LocalCache localCache = logSyncPolicy == null
+                ? new JsonLocalCache(directoryOfCaches + "/" + fileName)
+                : new LogLocalCache(
+                        directoryOfCaches.resolve(name + ".log"), directoryOfCaches.resolve(fileName), logSyncPolicy);
+        Cache cache = new RedisCache(localCache, replaceLocalCacheOnConflict);
+        if (hotTier != null) {
+            cache = new HotTierCache(cache, hotTier, name, negativeCaching);
+        }
         caches.put(name, cache);
         return cache;
     }
@@ -140,13 +245,34 @@ public final class CacheManager {
         return getCache(path.getFileName().toString(), false);
     }
 
+    /**
+     * Closes all caches managed by this cache manager, which flushes them and releases the locks of their files.
+     * The caches must not be used afterward.
+     */
+    public synchronized void close() {
+        for (Cache cache : embeddingCaches.values()) {
+            cache.close();
+        }
+        for (Cache cache : caches.values()) {
+            cache.close();
+        }
+        embeddingCaches.clear();
+        caches.clear();
+    }
+
     /**
      * Flushes all caches managed by this cache manager.
      * This ensures that all pending changes are written to disk.
      */
-    public void flush() {
+    public synchronized void flush() {
         for (Cache cache : caches.values()) {
             cache.flush();
         }
+        for (Cache cache : embeddingCaches.values()) {
+            cache.flush();
+        }
+        if (hotTier != null) {
+            logger.info("In-memory cache tier: {}", hotTier.statistics());
+        }
     }
 }
@@ -0,0 +1,330 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only file of embedding vectors, indexed by the local key of their {@link CacheKey}.
+ * <p>
+ * File format (little endian):
+ * <ol>
+ *     <li>Magic number, format version, and {@link Precision} (3 ints)</li>
+ *     <li>Records, each consisting of the length of the key in bytes (int), the key (UTF-8), the number of
+ *     dimensions (int), and the values (4 bytes per value for {@link Precision#FLOAT32}, 2 bytes for
+ *     {@link Precision#FLOAT16})</li>
+ * </ol>
+ * When opening the file, only the record headers are read to build the in-memory index from key to offset.
+ * Values are read on demand from a memory-mapped view of the file. If a key is stored more than once, the last
+ * record wins. A truncated record at the end of the file (e.g., after a crash) is discarded.
+ * <p>
+ * Only one instance may write the file at a time: The file is opened with an exclusive lock, which is held until
+ * the file is {@link #close() closed}. If another instance (in this or another process) holds the lock, the file is
+ * opened read-only: It is neither truncated nor appended to, and new vectors are discarded.
+ * <p>
+ * This class is thread-safe.
+ */
+final class EmbeddingFile {
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingFile.class);
+    private static final int MAGIC = 0x4C454D42; // "LEMB"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 3 * Integer.BYTES;
+
+    /**
+     * The precision in which the values of the vectors are stored.
+     */
+    enum Precision {
+        /** IEEE 754 single precision, 4 bytes per value */
+        FLOAT32(Float.BYTES),
+        /** IEEE 754 half precision, 2 bytes per value */
+        FLOAT16(Short.BYTES);
+
+        private final int bytes;
+
+        Precision(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    /** The offset of the values of a record and its number of dimensions */
+    private record Entry(long offset, int dimensions) {}
+
+    private final Path file;
+    private final Precision precision;
+    private final FileChannel channel;
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+
+    /** Whether this instance holds the lock of the file and may append to it */
+    private final boolean writable;
+
+    /** Read-only view of the file, may not contain the most recently appended records */
+    private volatile @Nullable MappedByteBuffer mapped;
+
+    private long size;
+
+    /**
+     * Opens (or creates) an embedding file.
+     *
+     * @param file The path to the file
+     * @param precision The precision of new files, existing files keep their precision
+     * @throws UncheckedIOException If the file cannot be opened
+     * @throws IllegalArgumentException If the file is not an embedding file
+     */
+    EmbeddingFile(Path file, Precision precision) {
+        this.file = file;
+        try {
+            this.channel = FileChannel.open(
+                    file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.writable = tryLock(channel);
+            if (!writable) {
+                logger.warn("Embedding file {} is locked by another writer, opening it read-only", file);
+            }
+            if (channel.size() < HEADER_SIZE) {
+                if (writable) {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                    header.putInt(MAGIC).putInt(VERSION).putInt(precision.ordinal()).flip();
+                    channel.truncate(0);
+                    writeFully(header, 0);
+                }
+                this.precision = precision;
+                this.size = HEADER_SIZE;
+            } else {
+                this.precision = readHeader();
+                this.size = readIndex();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open embedding file " + file, e);
+        }
+        logger.debug("Opened embedding file {} with {} embeddings", file, index.size());
+    }
+
+    /**
+     * Tries to lock the whole file exclusively.
+     *
+     * @return true if the lock was acquired, false if another instance holds it
+     */
+    private static boolean tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock() != null;
+        } catch (OverlappingFileLockException e) {
+            // Locked by another instance in this process
+            return false;
+        }
+    }
+
+    private Precision readHeader() throws IOException {
+        ByteBuffer header = read(0, HEADER_SIZE);
+        int precisionOrdinal;
+        if (header.getInt() != MAGIC
+                || header.getInt() != VERSION
+                || (precisionOrdinal = header.getInt()) < 0
+                || precisionOrdinal >= Precision.values().length) {
+            throw new IllegalArgumentException("Not an embedding file: " + file);
+        }
+        return Precision.values()[precisionOrdinal];
+    }
+
+    /**
+     * Reads the headers of all records into the index. An incomplete record at the end of the file is only truncated
+     * if this instance holds the lock, as it may still be written by the holder otherwise.
+     *
+     * @return The end of the last complete record
+     */
+    private long readIndex() throws IOException {
+        long fileSize = channel.size();
+        long position = HEADER_SIZE;
+        while (position + Integer.BYTES <= fileSize) {
+            int keyLength = read(position, Integer.BYTES).getInt();
+            long valuesOffset = position + 2L * Integer.BYTES + keyLength;
+            if (keyLength < 0 || valuesOffset > fileSize) {
+                break;
+            }
+            byte[] key = new byte[keyLength];
+            read(position + Integer.BYTES, keyLength).get(key);
+            int dimensions = read(valuesOffset - Integer.BYTES, Integer.BYTES).getInt();
+            long end = valuesOffset + (long) dimensions * precision.bytes;
+            if (dimensions < 0 || end > fileSize) {
+                break;
+            }
+            index.put(new String(key, StandardCharsets.UTF_8), new Entry(valuesOffset, dimensions));
+            position = end;
+        }
+        if (position < fileSize && writable) {
+            logger.warn("Discarding incomplete record at the end of embedding file {}", file);
+            channel.truncate(position);
+        }
+        return position;
+    }
+
+    /**
+     * Checks whether this instance holds the lock of the file, i.e., whether vectors can be appended.
+     *
+     * @return false if the file was opened read-only because another instance holds the lock
+     */
+    boolean isWritable() {
+        return writable;
+    }
+
+    /**
+     * Checks whether the file contains a vector for a key.
+     *
+     * @param key The local key
+     * @return true if there is a vector for the key
+     */
+    boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Reads the vector of a key.
+     *
+     * @param key The local key
+     * @return A new array with the values of the vector, or null if there is no vector for the key
+     * @throws UncheckedIOException If the file cannot be read
+     */
+    float @Nullable [] get(String key) {
+        Entry entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+        int length = Math.multiplyExact(entry.dimensions(), precision.bytes);
+        ByteBuffer values = view(entry.offset(), length);
+        float[] vector = new float[entry.dimensions()];
+        if (precision == Precision.FLOAT32) {
+            values.asFloatBuffer().get(vector);
+        } else {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = Float.float16ToFloat(values.getShort());
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * Appends the vector of a key to the file.
+     * The record is written through to the file, but only forced to the storage device by {@link #flush()}.
+     * If the file was opened read-only, the vector is discarded.
+     *
+     * @param key The local key
+     * @param vector The vector
+     * @throws UncheckedIOException If the file cannot be written
+     */
+    synchronized void put(String key, float[] vector) {
+        if (!writable) {
+            return;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int recordSize = 2 * Integer.BYTES + keyBytes.length + vector.length * precision.bytes;
+        ByteBuffer record = ByteBuffer.allocate(recordSize).order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(keyBytes.length).put(keyBytes).putInt(vector.length);
+        for (float value : vector) {
+            if (precision == Precision.FLOAT32) {
+                record.putFloat(value);
+            } else {
+                record.putShort(Float.floatToFloat16(value));
+            }
+        }
+        record.flip();
+        try {
+            writeFully(record, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write embedding file " + file, e);
+        }
+        index.put(key, new Entry(size + 2L * Integer.BYTES + keyBytes.length, vector.length));
+        size += recordSize;
+    }
+
+    /**
+     * Forces all appended records to the storage device.
+     *
+     * @throws UncheckedIOException If the file cannot be written
+     */
+    void flush() {
+        if (!writable) {
+            return;
+        }
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not flush embedding file " + file, e);
+        }
+    }
+
+    /**
+     * Forces all appended records to the storage device and closes the file, which releases its lock.
+     * The file must not be used afterward.
+     *
+     * @throws UncheckedIOException If the file cannot be written or closed
+     */
+    synchronized void close() {
+        flush();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close embedding file " + file, e);
+        }
+    }
+
+    /**
+     * Returns a little endian view of a region of the file. The region is read from the memory-mapped view,
+     * which is extended if the region was appended after mapping the file. Regions beyond the largest mappable size
+     * are read with a positional read instead.
+     */
+    private ByteBuffer view(long offset, int length) {
+        try {
+            MappedByteBuffer current = mapped;
+            if (current == null || offset + length > current.capacity()) {
+                current = remap(offset + length);
+            }
+            if (current == null) {
+                return read(offset, length);
+            }
+            return current.slice((int) offset, length).order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read embedding file " + file, e);
+        }
+    }
+
+    private synchronized @Nullable MappedByteBuffer remap(long requiredSize) throws IOException {
+        MappedByteBuffer current = mapped;
+        if (current != null && requiredSize <= current.capacity()) {
+            return current;
+        }
+        if (size > Integer.MAX_VALUE) {
+            return null;
+        }
+        current = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        mapped = current;
+        return current;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file " + file);
+            }
+        }
+        return buffer.flip();
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * An in-memory, size-bounded store of recently used cache values, shared by the {@link HotTierCache}s of a
+ * {@link CacheManager}.
+ * <p>
+ * The entries are distributed over {@value #SEGMENTS} segments by the hash of their key. Each segment evicts its
+ * least recently used entries once its share of the byte budget is exceeded and is guarded by its own lock, which is
+ * only held for the map operation itself. The size of an entry is estimated from the lengths of its key and value.
+ */
+final class HotTier {
+    private static final int SEGMENTS = 16;
+    /** Estimated overhead of an entry (map node, strings, and value record) in bytes */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    /**
+     * A cached value.
+     *
+     * @param json The serialized value, or null if the cache is known not to contain the key
+     */
+    record Value(@Nullable String json) {
+        static final Value ABSENT = new Value(null);
+
+        long size(String key) {
+            return ENTRY_OVERHEAD + 2L * (key.length() + (json == null ? 0 : json.length()));
+        }
+    }
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long maxBytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a new tier.
+     *
+     * @param maxBytes The maximum estimated size of all entries in bytes
+     * @throws IllegalArgumentException If the maximum size is not positive
+     */
+    HotTier(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("The size of the in-memory cache must be greater than 0.");
+        }
+        this.maxBytes = maxBytes;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(1, maxBytes / SEGMENTS));
+        }
+    }
+
+    /**
+     * Looks up a key and counts the lookup as hit or miss.
+     *
+     * @param key The key
+     * @return The cached value, or null if the key is not in this tier
+     */
+    @Nullable Value get(String key) {
+        Value value = segmentFor(key).get(key);
+        (value == null ? misses : hits).increment();
+        return value;
+    }
+
+    /**
+     * Stores a value. Values larger than a segment are not stored, but still replace the previous value.
+     *
+     * @param key The key
+     * @param value The value
+     */
+    void put(String key, Value value) {
+        segmentFor(key).put(key, value, false);
+    }
+
+    /**
+     * Stores a value unless the key is already in this tier. Used for values loaded from the wrapped caches, so that
+     * a value stored concurrently (by {@link #put(String, Value)}) is not replaced by an outdated one.
+     *
+     * @param key The key
+     * @param value The value
+     */
+    void putIfAbsent(String key, Value value) {
+        segmentFor(key).put(key, value, true);
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns a summary of the usage of this tier for logging.
+     *
+     * @return The number of hits, misses, entries, and the estimated size
+     */
+    String statistics() {
+        long entries = 0;
+        long bytes = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                entries += segment.entries.size();
+                bytes += segment.bytes;
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return "%d hits, %d misses, %d entries (%d of %d bytes)".formatted(hits(), misses(), entries, bytes, maxBytes);
+    }
+
+    private Segment segmentFor(String key) {
+        return segments[Math.floorMod(key.hashCode(), SEGMENTS)];
+    }
+
+    /** A least recently used map with a byte budget, guarded by its lock */
+    private static final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<String, Value> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final long maxBytes;
+        private long bytes;
+
+        Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        @Nullable Value get(String key) {
+            lock.lock();
+            try {
+                return entries.get(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(String key, Value value, boolean onlyIfAbsent) {
+            long size = value.size(key);
+            lock.lock();
+            try {
+                if (onlyIfAbsent && entries.containsKey(key)) {
+                    return;
+                }
+                Value old = size > maxBytes ? entries.remove(key) : entries.put(key, value);
+                bytes += (size > maxBytes ? 0 : size) - (old == null ? 0 : old.size(key));
+                Iterator<Map.Entry<String, Value>> eldest = entries.entrySet().iterator();
+                while (bytes > maxBytes && eldest.hasNext()) {
+                    Map.Entry<String, Value> entry = eldest.next();
+                    bytes -= entry.getValue().size(entry.getKey());
+                    eldest.remove();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.jspecify.annotations.Nullable;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A cache that serves recently used values from an in-memory {@link HotTier} and only asks the wrapped cache
+ * (usually a {@link RedisCache}) on a miss.
+ * <p>
+ * The tier stores the serialized values, so every {@link #get(CacheKey, Class)} returns a new object.
+ * {@link #containsKey(CacheKey)} loads the value into the tier, so that a following {@code get} of the same key is
+ * served from memory. With negative caching, keys that are missing in the wrapped cache are remembered as missing
+ * until they are stored through this cache. Values that other processes store in the meantime are not seen then.
+ * Values loaded from the wrapped cache (and the markers of missing keys) are only added to the tier if the key was not
+ * stored meanwhile, so a concurrent {@code put} is never overwritten by an outdated lookup.
+ * Bulk lookups only pass the keys that are not in the tier on to the wrapped cache, in a single bulk lookup.
+ */
+class HotTierCache implements Cache {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Cache cache;
+    private final HotTier tier;
+    private final String namespace;
+    private final boolean negativeCaching;
+
+    /**
+     * Creates a new cache with an in-memory tier.
+     *
+     * @param cache The wrapped cache
+     * @param tier The tier, possibly shared with other caches
+     * @param namespace The name of the cache, to distinguish its keys from the keys of other caches in the tier
+     * @param negativeCaching Whether keys that are not contained in the wrapped cache are remembered as missing
+     */
+    HotTierCache(Cache cache, HotTier tier, String namespace, boolean negativeCaching) {
+        this.cache = Objects.requireNonNull(cache);
+        this.tier = Objects.requireNonNull(tier);
+        this.namespace = namespace + "\u0000";
+        this.negativeCaching = negativeCaching;
+    }
+
+    @Override
+    public <T> @Nullable T get(CacheKey key, Class<T> clazz) {
+        return RedisCache.convert(mapper, lookup(key), clazz);
+    }
+
+    private @Nullable String lookup(CacheKey key) {
+        String tierKey = namespace + key.localKey();
+        HotTier.Value value = tier.get(tierKey);
+        if (value != null) {
+            return value.json();
+        }
+        String json = cache.get(key, String.class);
+        if (json != null || negativeCaching) {
+            tier.putIfAbsent(tierKey, json == null ? HotTier.Value.ABSENT : new HotTier.Value(json));
+        }
+        return json;
+    }
+
+    @Override
+    public <K extends CacheKey, T> Map<K, T> getAll(Collection<K> keys, Class<T> clazz) {
+        Map<K, T> values = HashMap.newHashMap(keys.size());
+        List<K> misses = new ArrayList<>();
+        for (K key : keys) {
+            HotTier.Value value = tier.get(namespace + key.localKey());
+            if (value == null) {
+                misses.add(key);
+            } else if (value.json() != null) {
+                values.put(key, RedisCache.convert(mapper, value.json(), clazz));
+            }
+        }
+        if (misses.isEmpty()) {
+            return values;
+        }
+        Map<K, String> loaded = cache.getAll(misses, String.class);
+        for (K key : misses) {
+            String json = loaded.get(key);
+            if (json != null || negativeCaching) {
+                tier.putIfAbsent(
+                        namespace + key.localKey(), json == null ? HotTier.Value.ABSENT : new HotTier.Value(json));
+            }
+            if (json != null) {
+                values.put(key, RedisCache.convert(mapper, json, clazz));
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void put(CacheKey key, String value) {
+        cache.put(key, value);
+        tier.put(namespace + key.localKey(), new HotTier.Value(value));
+    }
+
+    @Override
+    public <T> void put(CacheKey key, T value) {
+        put(key, serialize(Objects.requireNonNull(value)));
+    }
+
+    private String serialize(Object value) {
+        try {
+            return mapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not serialize object", e);
+        }
+    }
+
+    @Override
+    public void putAll(Map<? extends CacheKey, ?> values) {
+        Map<CacheKey, String> serialized = HashMap.newHashMap(values.size());
+        for (var entry : values.entrySet()) {
+            Object value = Objects.requireNonNull(entry.getValue());
+            serialized.put(entry.getKey(), value instanceof String string ? string : serialize(value));
+        }
+        cache.putAll(serialized);
+        for (var entry : serialized.entrySet()) {
+            tier.put(namespace + entry.getKey().localKey(), new HotTier.Value(entry.getValue()));
+        }
+    }
+
+    @Override
+    public void flush() {
+        cache.flush();
+    }
+
+    @Override
+    public void close() {
+        cache.close();
+    }
+
+    @Override
+    public boolean containsKey(CacheKey key) {
+        return lookup(key) != null;
+    }
+}
@@ -0,0 +1,184 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jspecify.annotations.Nullable;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Implements a local file-based cache for storing key-value pairs.
+ * This class provides a thread-safe implementation of a cache that persists its contents
+ * to a JSON file. It includes automatic flushing of changes when a certain threshold
+ * of modifications is reached. Reads and writes of entries do not block each other,
+ * only writing the file is serialized.
+ * <p>
+ * Every write serializes the complete cache. For large caches, consider the {@link LogLocalCache}.
+ */
+class JsonLocalCache implements LocalCache {
+    private final ObjectMapper mapper;
+
+    /**
+     * Maximum number of modifications before automatic flush.
+     */
+    private static final int MAX_DIRTY = 50;
+
+    /**
+     * Counter for unflushed modifications.
+     */
+    private final AtomicInteger dirty = new AtomicInteger();
+
+    /**
+     * Serializes the writes of the cache file.
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private final File cacheFile;
+
+    /**
+     * In-memory cache storage.
+     */
+    private Map<String, String> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new local cache instance.
+     * The cache will be initialized from the specified file if it exists,
+     * or a new file will be created.
+     *
+     * @param cacheFile The path to the cache file
+     */
+    JsonLocalCache(String cacheFile) {
+        this.cacheFile = new File(cacheFile);
+        mapper = new ObjectMapper();
+        createLocalStore();
+    }
+
+    /**
+     * Checks if the cache is ready for use.
+     * This method ensures that the cache file exists and is accessible.
+     *
+     * @return true if the cache is ready, false otherwise
+     * @throws UncheckedIOException If there are issues accessing the cache file
+     */
+    @Override
+    public boolean isReady() {
+        try {
+            return cacheFile.exists() || cacheFile.createNewFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Initializes the local cache store.
+     * If the cache file exists and is not empty, its contents are parsed from the file stream into memory,
+     * without reading the whole file into a string first.
+     * If the file is empty, it is deleted to ensure a clean state.
+     *
+     * @throws IllegalArgumentException If the cache file cannot be read
+     */
+    private void createLocalStore() {
+        if (cacheFile.exists()) {
+            boolean blank;
+            try (JsonParser parser = mapper.getFactory().createParser(cacheFile)) {
+                blank = parser.nextToken() == null;
+                if (!blank) {
+                    cache = mapper.readValue(parser, new TypeReference<ConcurrentHashMap<String, String>>() {});
+                }
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Could not read cache file (" + cacheFile.getName() + ")", e);
+            }
+            if (blank) {
+                cacheFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Writes the current cache contents to disk.
+     * This method uses a temporary file to ensure atomic writes and prevent data corruption.
+     * The modifications that were written are subtracted from the dirty counter after a successful write.
+     *
+     * @throws IllegalArgumentException If the cache file cannot be written
+     */
+    @Override
+    public void write() {
+        writeLock.lock();
+        try {
+            writeFile();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void writeFile() {
+        int written = dirty.get();
+        if (written == 0) {
+            return;
+        }
+
+        try {
+            File tempFile = new File(cacheFile.getAbsolutePath() + ".tmp.json");
+            mapper.writeValue(tempFile, cache);
+            Files.copy(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(tempFile.toPath());
+            dirty.addAndGet(-written);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not write cache file", e);
+        }
+    }
+
+    /**
+     * Retrieves a value from the cache.
+     *
+     * @param key The cache key to look up
+     * @return The cached value, or null if not found
+     */
+    @Override
+    public @Nullable String get(CacheKey key) {
+        return cache.get(key.localKey());
+    }
+
+    /**
+     * Stores a value in the cache.
+     * If the value is different from the existing value (if any), the dirty counter is incremented.
+     * If the dirty counter exceeds the maximum threshold, the cache is automatically flushed to disk,
+     * unless another thread is already writing it.
+     *
+     * @param key The cache key to store the value under
+     * @param value The value to store
+     */
+    @Override
+    public void put(CacheKey key, String value) {
+        String old = cache.put(key.localKey(), value);
+        if ((old == null || !old.equals(value)) && dirty.incrementAndGet() > MAX_DIRTY && writeLock.tryLock()) {
+            try {
+                writeFile();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns true if and only if this map contains a mapping for a key
+     *
+     * @param key The cache key to look up
+     * @return true if this map contains a mapping for the specified key
+     */
+    @Override
+    public boolean containsKey(CacheKey key) {
+        return cache.containsKey(key.localKey());
+    }
+}
@@ -0,0 +1,684 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A local cache that appends its entries to a log file instead of rewriting a JSON file.
+ * <p>
+ * File format (big endian):
+ * <ol>
+ *     <li>Magic number and format version (2 ints)</li>
+ *     <li>Records, each consisting of a CRC32 checksum of key and value (int), the lengths of the key and the value
+ *     in bytes (2 ints), the key (UTF-8), and the value (UTF-8)</li>
+ * </ol>
+ * Only the offsets of the records are kept in memory, the values are read on demand from a memory-mapped view of the
+ * file. If a key is stored more than once, the last record wins. A truncated record at the end of the file (e.g.,
+ * after a crash) is discarded. If the log does not exist yet, the entries of the JSON file of the cache
+ * (see {@link JsonLocalCache}) are imported.
+ * <p>
+ * On {@link #write()}, the offsets are saved to an index file next to the log ({@code <log>.index}). When opening the
+ * log, the offsets are loaded from this file and only the records appended afterward are scanned, so the startup time
+ * does not depend on the size of the values. The index file is ignored if it does not match the log, e.g., because
+ * the log was compacted or truncated after the index was saved.
+ * <p>
+ * Overwritten records are garbage. Once they make up more than half of the log, the log is compacted in the
+ * background: the live records are copied to a new file, which then atomically replaces the log.
+ * <p>
+ * Only one instance may write the log at a time: An exclusive lock of a lock file next to the log
+ * ({@code <log>.lock}, as the log itself is replaced by compactions) is held until the cache is {@link #close()
+ * closed}. If another instance (in this or another process) holds the lock, the log is opened read-only: It is
+ * neither truncated, appended to, nor compacted, and new values are discarded.
+ * <p>
+ * This class is thread-safe.
+ */
+final class LogLocalCache implements LocalCache {
+    private static final Logger logger = LoggerFactory.getLogger(LogLocalCache.class);
+    private static final int MAGIC = 0x4C434C47; // "LCLG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int RECORD_HEADER_SIZE = 3 * Integer.BYTES;
+    private static final int INDEX_MAGIC = 0x4C434958; // "LCIX"
+
+    /**
+     * Logs smaller than this are not compacted.
+     */
+    private static final long MIN_COMPACTION_SIZE = 1L << 20;
+
+    private static final ExecutorService COMPACTION = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("cache-compaction").daemon().factory());
+
+    /**
+     * Determines when appended records are forced to the storage device.
+     */
+    enum SyncPolicy {
+        /** Records are never forced explicitly, the operating system decides when to write them */
+        NEVER,
+        /** Records are forced when the cache is {@link LogLocalCache#write() written} (e.g., on flush) */
+        FLUSH,
+        /** Every record is forced when it is appended */
+        ALWAYS;
+
+        /**
+         * Parses a sync policy.
+         *
+         * @param name The name of the policy (case-insensitive)
+         * @return The policy
+         * @throws IllegalArgumentException If there is no policy with this name
+         */
+        static SyncPolicy of(String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown cache sync policy: " + name, e);
+            }
+        }
+    }
+
+    /** The offset of a record and the lengths of its key and value */
+    private record Entry(long offset, int keyLength, int valueLength) {
+        long size() {
+            return (long) RECORD_HEADER_SIZE + keyLength + valueLength;
+        }
+
+        Entry movedTo(long newOffset) {
+            return new Entry(newOffset, keyLength, valueLength);
+        }
+    }
+
+    private final Path logFile;
+    private final Path indexFile;
+    private final SyncPolicy syncPolicy;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    /** The channel of the lock file, whose lock is held while the log is open for writing */
+    private final FileChannel lockChannel;
+
+    /** Whether this instance holds the lock and may write the log */
+    private final boolean writable;
+
+    /**
+     * Guards the replacement of the file after a compaction. Reads hold the read lock, appends the monitor of this.
+     */
+    private final ReadWriteLock fileLock = new ReentrantReadWriteLock();
+
+    private volatile FileChannel channel;
+    private volatile Map<String, Entry> index = new ConcurrentHashMap<>();
+
+    /** Read-only view of the file, may not contain the most recently appended records */
+    private volatile @Nullable MappedByteBuffer mapped;
+
+    private final Object mapLock = new Object();
+
+    /** The end of the last record, guarded by the monitor of this */
+    private long size;
+
+    /** The number of bytes of overwritten records, guarded by the monitor of this */
+    private long garbage;
+
+    /** The offset of the last record or -1 if there is none, guarded by the monitor of this */
+    private long lastRecord = -1;
+
+    /** The size of the log when the index file was saved or -1 if it is outdated, guarded by the monitor of this */
+    private long indexedSize = -1;
+
+    /**
+     * Opens (or creates) a log cache.
+     *
+     * @param logFile The path to the log file
+     * @param jsonFile The path to the JSON file whose entries are imported if the log file does not exist yet
+     * @param syncPolicy When to force appended records to the storage device
+     * @throws UncheckedIOException If the files cannot be read or the log cannot be written
+     * @throws IllegalArgumentException If the log file is not a cache log or the JSON file is malformed
+     * @throws IllegalStateException If the log does not exist yet and another instance holds its lock
+     */
+    LogLocalCache(Path logFile, Path jsonFile, SyncPolicy syncPolicy) {
+        this.logFile = logFile;
+        this.indexFile = logFile.resolveSibling(logFile.getFileName() + ".index");
+        this.syncPolicy = syncPolicy;
+        try {
+            this.lockChannel = FileChannel.open(
+                    logFile.resolveSibling(logFile.getFileName() + ".lock"),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+            this.writable = tryLock(lockChannel);
+            if (!writable) {
+                logger.warn("Cache log {} is locked by another writer, opening it read-only", logFile);
+                if (Files.notExists(logFile)) {
+                    lockChannel.close();
+                    throw new IllegalStateException("Cache log " + logFile + " is being created by another writer");
+                }
+            }
+            if (Files.notExists(logFile)) {
+                create(logFile, jsonFile);
+            }
+            this.channel = writable
+                    ? FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(logFile, StandardOpenOption.READ);
+            this.size = scan(readIndexFile());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open cache log " + logFile, e);
+        }
+        logger.debug("Opened cache log {} with {} entries", logFile, index.size());
+        scheduleCompaction();
+    }
+
+    /**
+     * Tries to lock a file exclusively.
+     *
+     * @return true if the lock was acquired, false if another instance holds it
+     */
+    private static boolean tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock() != null;
+        } catch (OverlappingFileLockException e) {
+            // Locked by another instance in this process
+            return false;
+        }
+    }
+
+    /**
+     * Creates a new log with the entries of the JSON file (if it exists). The log is written to a temporary file
+     * first, so that an interrupted import is repeated on the next start.
+     */
+    private static void create(Path logFile, Path jsonFile) throws IOException {
+        Path tempFile = logFile.resolveSibling(logFile.getFileName() + ".tmp");
+        int imported = 0;
+        try (FileChannel target = FileChannel.open(
+                tempFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = writeFully(target, header(), 0);
+            if (Files.exists(jsonFile)) {
+                try (JsonParser parser = new ObjectMapper().getFactory().createParser(jsonFile.toFile())) {
+                    JsonToken token = parser.nextToken();
+                    if (token != null && token != JsonToken.START_OBJECT) {
+                        throw new IllegalArgumentException("Not a cache file: " + jsonFile);
+                    }
+                    while (token != null && parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String key = parser.currentName();
+                        if (parser.nextToken() != JsonToken.VALUE_STRING) {
+                            throw new IllegalArgumentException("Not a cache file: " + jsonFile);
+                        }
+                        position += writeFully(target, encode(key, parser.getText()), position);
+                        imported++;
+                    }
+                }
+            }
+            target.force(true);
+        }
+        Files.move(tempFile, logFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        if (imported > 0) {
+            logger.info("Imported {} entries of {} into cache log {}", imported, jsonFile, logFile);
+        }
+    }
+
+    /**
+     * Loads the offsets of the records from the index file, if it matches the log.
+     *
+     * @return The size of the log that is covered by the index file
+     */
+    private long readIndexFile() {
+        if (Files.notExists(indexFile)) {
+            return HEADER_SIZE;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            long indexed = input.readInt() == INDEX_MAGIC && input.readInt() == VERSION ? input.readLong() : -1;
+            long indexedGarbage = input.readLong();
+            long indexedLastRecord = input.readLong();
+            int lastChecksum = input.readInt();
+            int entries = input.readInt();
+            if (!matchesLog(indexed, indexedLastRecord, lastChecksum)) {
+                logger.info("Ignoring outdated index file {}", indexFile);
+                return HEADER_SIZE;
+            }
+            for (int i = 0; i < entries; i++) {
+                byte[] key = new byte[input.readInt()];
+                input.readFully(key);
+                long offset = input.readLong();
+                index.put(new String(key, StandardCharsets.UTF_8), new Entry(offset, key.length, input.readInt()));
+            }
+            garbage = indexedGarbage;
+            lastRecord = indexedLastRecord;
+            indexedSize = indexed;
+            return indexed;
+        } catch (IOException | NegativeArraySizeException e) {
+            logger.warn("Ignoring unreadable index file {}: {}", indexFile, e.getMessage());
+            index.clear();
+            return HEADER_SIZE;
+        }
+    }
+
+    /**
+     * Checks whether the log ends with the record that was the last one when the index file was saved.
+     */
+    private boolean matchesLog(long indexed, long indexedLastRecord, int lastChecksum) throws IOException {
+        if (indexed < HEADER_SIZE || indexed > channel.size()) {
+            return false;
+        }
+        if (indexedLastRecord < 0) {
+            return indexed == HEADER_SIZE;
+        }
+        if (indexedLastRecord + RECORD_HEADER_SIZE > indexed) {
+            return false;
+        }
+        ByteBuffer header = read(channel, indexedLastRecord, RECORD_HEADER_SIZE);
+        long end = indexedLastRecord + RECORD_HEADER_SIZE + (long) header.getInt(Integer.BYTES)
+                + header.getInt(2 * Integer.BYTES);
+        return header.getInt(0) == lastChecksum && end == indexed;
+    }
+
+    /**
+     * Reads the headers of the records starting at a position into the index. An incomplete record at the end of the
+     * log is only truncated if this instance holds the lock, as it may still be written by the holder otherwise.
+     *
+     * @param start The position of the first record to read
+     * @return The end of the last complete record
+     */
+    private long scan(long start) throws IOException {
+        long fileSize = channel.size();
+        long position = start;
+        try (DataInputStream input =
+                new DataInputStream(new BufferedInputStream(Files.newInputStream(logFile), 1 << 16))) {
+            if (fileSize < HEADER_SIZE || input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IllegalArgumentException("Not a cache log: " + logFile);
+            }
+            input.skipNBytes(start - HEADER_SIZE);
+            while (position + RECORD_HEADER_SIZE <= fileSize) {
+                input.readInt(); // checksum, verified when reading the value
+                Entry entry = new Entry(position, input.readInt(), input.readInt());
+                if (entry.keyLength() < 0 || entry.valueLength() < 0 || position + entry.size() > fileSize) {
+                    break;
+                }
+                String key = new String(input.readNBytes(entry.keyLength()), StandardCharsets.UTF_8);
+                input.skipNBytes(entry.valueLength());
+                Entry old = index.put(key, entry);
+                if (old != null) {
+                    garbage += old.size();
+                }
+                lastRecord = position;
+                position += entry.size();
+            }
+        }
+        if (position > start) {
+            logger.debug("Scanned {} bytes of cache log {} that were not indexed", position - start, logFile);
+        }
+        if (position < fileSize && writable) {
+            logger.warn("Discarding incomplete record at the end of cache log {}", logFile);
+            channel.truncate(position);
+        }
+        return position;
+    }
+
+    @Override
+    public boolean isReady() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Forces all appended records to the storage device, unless the sync policy is {@link SyncPolicy#NEVER},
+     * and saves the index file if records were appended since it was last saved. Does nothing if the log was opened
+     * read-only.
+     *
+     * @throws UncheckedIOException If the files cannot be written
+     */
+    @Override
+    public synchronized void write() {
+        if (!writable) {
+            return;
+        }
+        try {
+            if (syncPolicy != SyncPolicy.NEVER) {
+                channel.force(false);
+            }
+            if (indexedSize != size) {
+                writeIndexFile();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write cache log " + logFile, e);
+        }
+    }
+
+    /**
+     * Writes the log and closes it, which releases its lock. A running compaction is abandoned.
+     *
+     * @throws UncheckedIOException If the files cannot be written or closed
+     */
+    @Override
+    public synchronized void close() {
+        write();
+        try {
+            channel.close();
+            lockChannel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close cache log " + logFile, e);
+        }
+    }
+
+    /**
+     * Checks whether this instance holds the lock of the log, i.e., whether values can be stored.
+     *
+     * @return false if the log was opened read-only because another instance holds the lock
+     */
+    boolean isWritable() {
+        return writable;
+    }
+
+    /**
+     * Saves the index to a temporary file that then replaces the index file. Must hold the monitor of this.
+     */
+    private void writeIndexFile() throws IOException {
+        Path tempFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (DataOutputStream output =
+                new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            output.writeInt(INDEX_MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(size);
+            output.writeLong(garbage);
+            output.writeLong(lastRecord);
+            output.writeInt(lastRecord < 0 ? 0 : read(channel, lastRecord, Integer.BYTES).getInt());
+            output.writeInt(index.size());
+            for (var entry : index.entrySet()) {
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                output.writeInt(key.length);
+                output.write(key);
+                output.writeLong(entry.getValue().offset());
+                output.writeInt(entry.getValue().valueLength());
+            }
+        }
+        Files.move(tempFile, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        indexedSize = size;
+    }
+
+    /**
+     * Retrieves a value from the cache. Values whose checksum does not match are treated as missing.
+     *
+     * @param key The cache key to look up
+     * @return The cached value, or null if not found
+     * @throws UncheckedIOException If the file cannot be read
+     */
+    @Override
+    public @Nullable String get(CacheKey key) {
+        fileLock.readLock().lock();
+        try {
+            Entry entry = index.get(key.localKey());
+            return entry == null ? null : readValue(entry);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read cache log " + logFile, e);
+        } finally {
+            fileLock.readLock().unlock();
+        }
+    }
+
+    private @Nullable String readValue(Entry entry) throws IOException {
+        ByteBuffer record = view(entry.offset(), Math.toIntExact(entry.size()));
+        int checksum = record.getInt(0);
+        CRC32 crc = new CRC32();
+        crc.update(record.slice(RECORD_HEADER_SIZE, entry.keyLength() + entry.valueLength()));
+        if ((int) crc.getValue() != checksum) {
+            logger.warn("Ignoring corrupt record at offset {} of cache log {}", entry.offset(), logFile);
+            return null;
+        }
+        byte[] value = new byte[entry.valueLength()];
+        record.get(RECORD_HEADER_SIZE + entry.keyLength(), value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Appends a value to the log, unless it equals the current value of the key.
+     * Only the append itself is serialized, the record is encoded and compared beforehand.
+     * If the log was opened read-only, the value is discarded.
+     *
+     * @param key The cache key to store the value under
+     * @param value The value to store
+     * @throws UncheckedIOException If the file cannot be read or written
+     */
+    @Override
+    public void put(CacheKey key, String value) {
+        if (!writable) {
+            return;
+        }
+        String localKey = key.localKey();
+        ByteBuffer record = encode(localKey, value);
+        Entry current = index.get(localKey);
+        if (current != null && current.size() == record.remaining() && value.equals(get(key))) {
+            return;
+        }
+        append(localKey, record);
+    }
+
+    private synchronized void append(String localKey, ByteBuffer record) {
+        try {
+            int keyLength = record.getInt(Integer.BYTES);
+            int valueLength = record.getInt(2 * Integer.BYTES);
+            long offset = size;
+            size += writeFully(channel, record, offset);
+            if (syncPolicy == SyncPolicy.ALWAYS) {
+                channel.force(false);
+            }
+            Entry old = index.put(localKey, new Entry(offset, keyLength, valueLength));
+            lastRecord = offset;
+            if (old != null) {
+                garbage += old.size();
+                scheduleCompaction();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write cache log " + logFile, e);
+        }
+    }
+
+    @Override
+    public boolean containsKey(CacheKey key) {
+        return index.containsKey(key.localKey());
+    }
+
+    private synchronized void scheduleCompaction() {
+        if (writable
+                && size >= MIN_COMPACTION_SIZE
+                && 2 * garbage > size
+                && compacting.compareAndSet(false, true)) {
+            COMPACTION.execute(this::compact);
+        }
+    }
+
+    /**
+     * Copies the live records to a new file, which then replaces the log. The bulk of the records is copied
+     * without blocking appends; only the records appended meanwhile are copied while holding the monitor.
+     * The copies of keys that were overwritten meanwhile are superseded by these records, so they are the garbage
+     * of the new file. Must not run concurrently with another compaction of this log.
+     */
+    void compact() {
+        Path tempFile = logFile.resolveSibling(logFile.getFileName() + ".compact");
+        FileChannel target = null;
+        try {
+            Map<String, Entry> snapshot;
+            synchronized (this) {
+                snapshot = new HashMap<>(index);
+            }
+            target = FileChannel.open(
+                    tempFile,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            long position = writeFully(target, header(), 0);
+            Map<String, Entry> compacted = new ConcurrentHashMap<>();
+            long last = -1;
+            for (var entry : snapshot.entrySet()) {
+                compacted.put(entry.getKey(), entry.getValue().movedTo(position));
+                last = position;
+                position += copy(entry.getValue(), target, position);
+            }
+            synchronized (this) {
+                if (!channel.isOpen()) {
+                    throw new IOException("The cache log was closed");
+                }
+                long superseded = 0;
+                for (var entry : index.entrySet()) {
+                    Entry copied = snapshot.get(entry.getKey());
+                    if (!entry.getValue().equals(copied)) {
+                        if (copied != null) {
+                            superseded += copied.size();
+                        }
+                        compacted.put(entry.getKey(), entry.getValue().movedTo(position));
+                        last = position;
+                        position += copy(entry.getValue(), target, position);
+                    }
+                }
+                target.force(true);
+                Files.deleteIfExists(indexFile);
+                fileLock.writeLock().lock();
+                try {
+                    Files.move(
+                            tempFile, logFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    FileChannel old = channel;
+                    channel = target;
+                    target = null;
+                    index = compacted;
+                    mapped = null;
+                    logger.info("Compacted cache log {} from {} to {} bytes", logFile, size, position);
+                    size = position;
+                    garbage = superseded;
+                    lastRecord = last;
+                    indexedSize = -1;
+                    old.close();
+                } finally {
+                    fileLock.writeLock().unlock();
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not compact cache log {}: {}", logFile, e.getMessage());
+        } finally {
+            compacting.set(false);
+            if (target != null) {
+                closeAndDelete(target, tempFile);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes of overwritten records in the log.
+     *
+     * @return The size of the garbage
+     */
+    synchronized long garbage() {
+        return garbage;
+    }
+
+    /**
+     * Returns a view of a region of the file. The region is read from the memory-mapped view, which is extended if
+     * the region was appended after mapping the file. Regions beyond the largest mappable size are read with a
+     * positional read instead. Must hold the read lock or the monitor of this.
+     */
+    private ByteBuffer view(long offset, int length) throws IOException {
+        MappedByteBuffer current = mapped;
+        if (current == null || offset + length > current.capacity()) {
+            current = remap(offset + length);
+        }
+        if (current == null) {
+            return read(channel, offset, length);
+        }
+        return current.slice((int) offset, length);
+    }
+
+    private @Nullable MappedByteBuffer remap(long requiredSize) throws IOException {
+        synchronized (mapLock) {
+            MappedByteBuffer current = mapped;
+            if (current != null && requiredSize <= current.capacity()) {
+                return current;
+            }
+            long fileSize = channel.size();
+            if (fileSize > Integer.MAX_VALUE) {
+                return null;
+            }
+            current = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            mapped = current;
+            return current;
+        }
+    }
+
+    private long copy(Entry entry, FileChannel target, long position) throws IOException {
+        return writeFully(target, read(channel, entry.offset(), Math.toIntExact(entry.size())), position);
+    }
+
+    private static void closeAndDelete(FileChannel channel, Path file) {
+        try {
+            channel.close();
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Could not delete temporary file {}", file);
+        }
+    }
+
+    private static ByteBuffer header() {
+        return ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip();
+    }
+
+    private static ByteBuffer encode(String key, String value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(keyBytes);
+        crc.update(valueBytes);
+        return ByteBuffer.allocate(RECORD_HEADER_SIZE + keyBytes.length + valueBytes.length)
+                .putInt((int) crc.getValue())
+                .putInt(keyBytes.length)
+                .putInt(valueBytes.length)
+                .put(keyBytes)
+                .put(valueBytes)
+                .flip();
+    }
+
+    private ByteBuffer read(FileChannel source, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (source.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file " + logFile);
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Writes a buffer at a position of a file.
+     *
+     * @return The number of bytes written
+     */
+    private static int writeFully(FileChannel target, ByteBuffer buffer, long position) throws IOException {
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            target.write(buffer, position + length - buffer.remaining());
+        }
+        return length;
+    }
+}
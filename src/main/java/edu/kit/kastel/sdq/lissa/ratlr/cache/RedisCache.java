@@ -3,6 +3,8 @@ package edu.kit.kastel.sdq.lissa.ratlr.cache;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 
 import org.jspecify.annotations.Nullable;
 import org.slf4j.Logger;
@@ -13,6 +15,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import edu.kit.kastel.sdq.lissa.ratlr.utils.Environment;
 
+import redis.clients.jedis.AbstractPipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.UnifiedJedis;
 
 /**
@@ -25,9 +29,19 @@ import redis.clients.jedis.UnifiedJedis;
  * 1. Redis-only: When Redis is available and local cache is not configured
  * 2. Local-only: When Redis is unavailable and local cache is configured
  * 3. Hybrid: When both Redis and local cache are available (default)
+ * <p>
+ * The cache is thread-safe without a global lock: Requests to Redis are sent without holding any lock, and only
+ * the synchronization of a key between Redis and the local cache is guarded by one of {@value #LOCK_STRIPES} locks,
+ * selected by the hash of the key. {@link ReentrantLock}s are used, so that waiting virtual threads do not pin
+ * their carrier threads.
+ * <p>
+ * Bulk operations ({@link #getAll(Collection, Class)} and {@link #putAll(Map)}) are sent to Redis as pipelines of
+ * up to {@value #PIPELINE_BATCH_SIZE} commands, so that looking up many keys only costs a few round trips.
  */
 class RedisCache implements Cache {
     private static final Logger logger = LoggerFactory.getLogger(RedisCache.class);
+    private static final int LOCK_STRIPES = 64;
+    private static final int PIPELINE_BATCH_SIZE = 1000;
     private final ObjectMapper mapper;
 
     /**
@@ -38,10 +52,12 @@ class RedisCache implements Cache {
     /**
      * Redis client instance.
      */
-    private @Nullable UnifiedJedis jedis;
+    private final @Nullable UnifiedJedis jedis;
 
     private boolean replaceLocalCacheOnConflict;
 
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
     /**
      * Creates a new Redis cache instance with an optional local cache backup.
      *
@@ -49,13 +65,33 @@ class RedisCache implements Cache {
      * @throws IllegalArgumentException If neither Redis nor local cache can be initialized
      */
     RedisCache(@Nullable LocalCache localCache, boolean replaceLocalCacheOnConflict) {
+        this(localCache, replaceLocalCacheOnConflict, createRedisConnection());
+    }
+
+    /**
+     * Creates a new Redis cache instance that uses the given Redis client.
+     *
+     * @param localCache The local cache to use as backup, or null if no backup is needed
+     * @param replaceLocalCacheOnConflict Whether the Redis value replaces a different local value
+     * @param jedis The Redis client, or null if Redis is unavailable
+     * @throws IllegalArgumentException If neither Redis nor local cache is available
+     */
+    RedisCache(
+            @Nullable LocalCache localCache, boolean replaceLocalCacheOnConflict, @Nullable UnifiedJedis jedis) {
         this.localCache = localCache == null || !localCache.isReady() ? null : localCache;
         mapper = new ObjectMapper();
-        createRedisConnection();
+        this.jedis = jedis;
         if (jedis == null && this.localCache == null) {
             throw new IllegalArgumentException("Could not create cache");
         }
         this.replaceLocalCacheOnConflict = replaceLocalCacheOnConflict;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    private ReentrantLock lockFor(CacheKey key) {
+        return locks[Math.floorMod(key.localKey().hashCode(), LOCK_STRIPES)];
     }
 
     @Override
@@ -65,6 +101,16 @@ class RedisCache implements Cache {
         }
     }
 
+    @Override
+    public void close() {
+        if (localCache != null) {
+            localCache.close();
+        }
+        if (jedis != null) {
+            jedis.close();
+        }
+    }
+
     @Override
     public boolean containsKey(CacheKey key) {
         if (jedis != null && jedis.exists(key.toJsonKey())) {
@@ -77,19 +123,22 @@ class RedisCache implements Cache {
      * Establishes a connection to the Redis server.
      * The Redis URL can be configured through the REDIS_URL environment variable.
      * If the connection fails, the cache will fall back to using only the local cache.
+     *
+     * @return The Redis client, or null if the connection failed
      */
-    private void createRedisConnection() {
+    private static @Nullable UnifiedJedis createRedisConnection() {
         try {
             String redisUrl = "redis://localhost:6379";
             if (Environment.getenv("REDIS_URL") != null) {
                 redisUrl = Environment.getenv("REDIS_URL");
             }
-            jedis = new UnifiedJedis(redisUrl);
+            UnifiedJedis jedis = new UnifiedJedis(redisUrl);
             // Check if connection is working
             jedis.ping();
+            return jedis;
         } catch (Exception e) {
             logger.warn("Could not connect to Redis, using file cache instead");
-            jedis = null;
+            return null;
         }
     }
 
@@ -101,6 +150,8 @@ class RedisCache implements Cache {
      * If the value is found in Redis and the local cache is available, it will be synchronized to the local cache.
      * In case of a mismatch between Redis and local cache values, a warning is logged and the replacement strategy is
      * applied.
+     * A value is only copied to Redis if Redis does not contain the key yet, so that a concurrently stored value is
+     * not overwritten.
      *
      * @param <T> The type to deserialize the value to
      * @param key The cache key to look up
@@ -108,27 +159,126 @@ class RedisCache implements Cache {
      * @return The deserialized value, or null if not found
      */
     @Override
-    public synchronized <T> T get(CacheKey key, Class<T> clazz) {
+    public <T> T get(CacheKey key, Class<T> clazz) {
         String jsonData = jedis == null ? null : jedis.hget(key.toJsonKey(), "data");
-        if (localCache == null) {
-            return convert(jsonData, clazz);
-        }
-        String localData = localCache.get(key);
-        if (localData == null && jsonData != null) {
-            localCache.put(key, jsonData);
-        }
+        String localData = synchronizeLocalCache(key, jsonData);
         if (localData != null && jsonData == null) {
             jsonData = localData;
             if (jedis != null) {
-                jedis.hset(key.toJsonKey(), "data", jsonData);
+                jedis.hsetnx(key.toJsonKey(), "data", jsonData);
             }
         }
-        if (replaceLocalCacheOnConflict && jsonData != null && localData != null && !jsonData.equals(localData)) {
-            logger.info("Cache inconsistency detected for key {}, using Redis value and replacing local one", key);
-            localCache.put(key, jsonData);
+
+        return convert(mapper, jsonData, clazz);
+    }
+
+    /**
+     * Retrieves the values of several keys like {@link #get(CacheKey, Class)}, but looks up the keys in Redis with
+     * pipelined commands. Values that are only contained in the local cache are copied to Redis in a pipeline, too.
+     *
+     * @param <K> The type of the cache keys
+     * @param <T> The type to deserialize the values to
+     * @param keys The cache keys to look up
+     * @param clazz The class of the type to deserialize to
+     * @return The deserialized values of the keys that are contained in the cache
+     */
+    @Override
+    public <K extends CacheKey, T> Map<K, T> getAll(Collection<K> keys, Class<T> clazz) {
+        List<K> keyList = new ArrayList<>(keys);
+        List<@Nullable String> redisData = fetch(keyList);
+        Map<String, String> missingInRedis = new HashMap<>();
+        Map<K, T> values = HashMap.newHashMap(keyList.size());
+        for (int i = 0; i < keyList.size(); i++) {
+            K key = keyList.get(i);
+            String jsonData = redisData.get(i);
+            String localData = synchronizeLocalCache(key, jsonData);
+            if (localData != null && jsonData == null) {
+                jsonData = localData;
+                missingInRedis.put(key.toJsonKey(), localData);
+            }
+            T value = convert(mapper, jsonData, clazz);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        if (jedis != null && !missingInRedis.isEmpty()) {
+            pipelined(
+                    missingInRedis.entrySet(),
+                    (pipeline, entry) -> pipeline.hsetnx(entry.getKey(), "data", entry.getValue()));
         }
+        return values;
+    }
 
-        return convert(jsonData, clazz);
+    /**
+     * Looks up the values of keys in Redis with pipelined commands.
+     *
+     * @return The values in the order of the keys, null for keys that are not contained (or if Redis is unavailable)
+     */
+    private List<@Nullable String> fetch(List<? extends CacheKey> keys) {
+        List<@Nullable String> values = new ArrayList<>(keys.size());
+        if (jedis == null) {
+            for (int i = 0; i < keys.size(); i++) {
+                values.add(null);
+            }
+            return values;
+        }
+        List<Response<String>> responses = new ArrayList<>(keys.size());
+        pipelined(keys, (pipeline, key) -> responses.add(pipeline.hget(key.toJsonKey(), "data")));
+        for (Response<String> response : responses) {
+            values.add(response.get());
+        }
+        return values;
+    }
+
+    /**
+     * Sends a command for each element to Redis, in pipelines of up to {@value #PIPELINE_BATCH_SIZE} commands.
+     */
+    private <E> void pipelined(Collection<E> elements, BiConsumer<AbstractPipeline, E> command) {
+        Iterator<E> iterator = elements.iterator();
+        while (iterator.hasNext()) {
+            try (AbstractPipeline pipeline = Objects.requireNonNull(jedis).pipelined()) {
+                for (int i = 0; i < PIPELINE_BATCH_SIZE && iterator.hasNext(); i++) {
+                    command.accept(pipeline, iterator.next());
+                }
+                pipeline.sync();
+            }
+        }
+    }
+
+    /**
+     * Synchronizes the local cache with the value of a key in Redis: A value that is only contained in Redis is
+     * copied to the local cache, and in case of a conflict, the replacement strategy is applied.
+     * <p>
+     * The value of Redis is read before the lock is acquired, so a value stored meanwhile may already be in the local
+     * cache. Therefore, Redis is read again under the lock before the local value is replaced.
+     *
+     * @param key The cache key
+     * @param jsonData The value of the key in Redis, or null if Redis does not contain the key
+     * @return The value of the key in the local cache before the synchronization, or null if it did not exist
+     */
+    private @Nullable String synchronizeLocalCache(CacheKey key, @Nullable String jsonData) {
+        if (localCache == null) {
+            return null;
+        }
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            String localData = localCache.get(key);
+            if (localData == null && jsonData != null) {
+                localCache.put(key, jsonData);
+            }
+            if (replaceLocalCacheOnConflict && jsonData != null && localData != null && !jsonData.equals(localData)) {
+                String currentData = Objects.requireNonNull(jedis).hget(key.toJsonKey(), "data");
+                if (currentData != null && !currentData.equals(localData)) {
+                    logger.info(
+                            "Cache inconsistency detected for key {}, using Redis value and replacing local one", key);
+                    localCache.put(key, currentData);
+                }
+            }
+            return localData;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -136,13 +286,14 @@ class RedisCache implements Cache {
      * If the target type is String, the JSON string is returned as is.
      *
      * @param <T> The type to convert to
+     * @param mapper The mapper that deserializes the JSON string
      * @param jsonData The JSON string to convert
      * @param clazz The class of the target type
      * @return The converted object, or null if jsonData is null
      * @throws IllegalArgumentException If the JSON cannot be deserialized to the target type
      */
     @SuppressWarnings("unchecked")
-    private <T> @Nullable T convert(@Nullable String jsonData, Class<T> clazz) {
+    static <T> @Nullable T convert(ObjectMapper mapper, @Nullable String jsonData, Class<T> clazz) {
         if (jsonData == null) {
             return null;
         }
@@ -160,20 +311,56 @@ class RedisCache implements Cache {
     /**
      * Stores a string value in the cache.
      * The value is stored in both Redis (if available) and the local cache (if configured).
-     * When storing in Redis, a timestamp is also recorded.
+     * When storing in Redis, a timestamp is also recorded (with the same command).
      *
      * @param key The cache key to store the value under
      * @param value The string value to store
      */
     @Override
-    public synchronized void put(CacheKey key, String value) {
+    public void put(CacheKey key, String value) {
         if (jedis != null) {
-            String jsonKey = key.toJsonKey();
-            jedis.hset(jsonKey, "data", value);
-            jedis.hset(jsonKey, "timestamp", String.valueOf(Instant.now().getEpochSecond()));
+            jedis.hset(key.toJsonKey(), redisFields(value));
+        }
+        putLocal(key, value);
+    }
+
+    /**
+     * Stores several values like {@link #put(CacheKey, String)} and {@link #put(CacheKey, Object)}, but sends them
+     * to Redis with pipelined commands.
+     *
+     * @param values The values to store by their cache keys
+     * @throws IllegalArgumentException If a value cannot be serialized to JSON
+     */
+    @Override
+    public void putAll(Map<? extends CacheKey, ?> values) {
+        Map<CacheKey, String> serialized = HashMap.newHashMap(values.size());
+        for (var entry : values.entrySet()) {
+            Object value = Objects.requireNonNull(entry.getValue());
+            serialized.put(entry.getKey(), value instanceof String string ? string : serialize(value));
         }
+        if (jedis != null) {
+            pipelined(
+                    serialized.entrySet(),
+                    (pipeline, entry) -> pipeline.hset(entry.getKey().toJsonKey(), redisFields(entry.getValue())));
+        }
+        for (var entry : serialized.entrySet()) {
+            putLocal(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static Map<String, String> redisFields(String value) {
+        return Map.of("data", value, "timestamp", String.valueOf(Instant.now().getEpochSecond()));
+    }
+
+    private void putLocal(CacheKey key, String value) {
         if (localCache != null) {
-            localCache.put(key, value);
+            ReentrantLock lock = lockFor(key);
+            lock.lock();
+            try {
+                localCache.put(key, value);
+            } finally {
+                lock.unlock();
+            }
         }
     }
 
@@ -188,9 +375,13 @@ class RedisCache implements Cache {
      * @throws NullPointerException If value is null
      */
     @Override
-    public synchronized <T> void put(CacheKey key, T value) {
+    public <T> void put(CacheKey key, T value) {
+        put(key, serialize(Objects.requireNonNull(value)));
+    }
+
+    private String serialize(Object value) {
         try {
-            put(key, mapper.writeValueAsString(Objects.requireNonNull(value)));
+            return mapper.writeValueAsString(value);
         } catch (JsonProcessingException e) {
             throw new IllegalArgumentException("Could not serialize object", e);
         }
@@ -11,6 +11,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
@@ -40,8 +41,29 @@ public abstract class Classifier {
      */
     public static final String CONFIG_NAME_SEPARATOR = "_";
 
+    /**
+     * Classifier argument that enables the streaming mode by setting the capacity of its task queue.
+     * See {@link #classify(SourceElementStore, TargetElementStore)}.
+     */
+    public static final String STREAMING_QUEUE_SIZE_KEY = "streaming_queue_size";
+
+    /**
+     * Number of source elements whose candidates are retrieved at once in the streaming mode.
+     */
+    private static final int STREAMING_RETRIEVAL_BATCH_SIZE = 16;
+
+    /**
+     * Marks the end of the task queue in the streaming mode.
+     */
+    private static final Pair<Element, Element> END_OF_TASKS = new Pair<>(null, null);
+
     protected final Logger logger = LoggerFactory.getLogger(this.getClass());
     protected final int threads;
+
+    /**
+     * Capacity of the task queue in the streaming mode, or 0 if the streaming mode is disabled.
+     */
+    protected final int streamingQueueSize;
     /**
      * The shared context store for pipeline components.
      * Available to all subclasses for accessing shared context.
@@ -55,23 +77,174 @@ public abstract class Classifier {
      * @param contextStore The shared context store for pipeline components
      */
     protected Classifier(int threads, ContextStore contextStore) {
+        this(threads, 0, contextStore);
+    }
+
+    /**
+     * Creates a new classifier with the specified number of threads, streaming queue size and context store.
+     *
+     * @param threads The number of threads to use for parallel processing
+     * @param streamingQueueSize The capacity of the task queue in the streaming mode, 0 disables the streaming mode
+     * @param contextStore The shared context store for pipeline components
+     * @throws IllegalArgumentException If the streaming queue size is negative
+     */
+    protected Classifier(int threads, int streamingQueueSize, ContextStore contextStore) {
+        if (streamingQueueSize < 0) {
+            throw new IllegalArgumentException("The streaming queue size must not be negative.");
+        }
         this.threads = Math.max(1, threads);
+        this.streamingQueueSize = streamingQueueSize;
         this.contextStore = Objects.requireNonNull(contextStore);
     }
 
+    /**
+     * Reads the capacity of the task queue in the streaming mode from the {@value #STREAMING_QUEUE_SIZE_KEY} argument.
+     *
+     * @param configuration The module configuration of the classifier
+     * @return The capacity of the task queue, 0 (the default) if the streaming mode is disabled
+     */
+    protected static int streamingQueueSize(ModuleConfiguration configuration) {
+        return configuration.argumentAsInt(STREAMING_QUEUE_SIZE_KEY, 0);
+    }
+
     /**
      * Classifies trace links between source and target elements.
      * This method can process the classification either sequentially or in parallel
      * depending on the number of threads configured.
      *
+     * <p>
+     * If the streaming mode is enabled ({@value #STREAMING_QUEUE_SIZE_KEY} &gt; 0) and more than one thread is
+     * configured, the candidates are not retrieved upfront. Instead, the candidates of a few source elements at a
+     * time are pushed into a bounded queue that the classification workers consume concurrently.
+     * Thus, the first classifications start right away and the number of pending tasks is bounded by the queue size.
+     *
      * @param sourceStore The store containing source elements
      * @param targetStore The store containing target elements
      * @return A list of classification results
      */
     public List<ClassificationResult> classify(SourceElementStore sourceStore, TargetElementStore targetStore) {
+        if (streamingQueueSize > 0 && threads > 1) {
+            return streamingClassify(sourceStore, targetStore);
+        }
         return classify(createClassificationTasks(sourceStore, targetStore));
     }
 
+    /**
+     * Retrieves the candidates of the source elements and classifies them concurrently.
+     * Retrieval blocks while the task queue is full, so it never gets ahead of the classification workers
+     * by more than {@link #streamingQueueSize} tasks. The tasks of each retrieved batch of sources are looked up with
+     * {@link #classifyCached(List)} first, so only the tasks that are not cached are queued.
+     *
+     * @param sourceStore The store containing source elements
+     * @param targetStore The store containing target elements
+     * @return A list of classification results
+     */
+    private List<ClassificationResult> streamingClassify(
+            SourceElementStore sourceStore, TargetElementStore targetStore) {
+        BlockingQueue<Pair<Element, Element>> taskQueue = new ArrayBlockingQueue<>(streamingQueueSize);
+        ConcurrentLinkedQueue<ClassificationResult> results = new ConcurrentLinkedQueue<>();
+        AtomicInteger activeWorkers = new AtomicInteger(threads);
+
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = Thread.ofVirtual().start(new Runnable() {
+                private final Classifier copy = copyOf();
+
+                @Override
+                public void run() {
+                    try {
+                        Pair<Element, Element> pair;
+                        while ((pair = taskQueue.take()) != END_OF_TASKS) {
+                            var result = copy.classify(pair.first(), pair.second());
+                            logger.debug(
+                                    "Classified (S) {} with {}: {}",
+                                    pair.first().getIdentifier(),
+                                    pair.second().getIdentifier(),
+                                    result);
+                            result.ifPresent(results::add);
+                        }
+                    } catch (InterruptedException e) {
+                        logger.error("Worker thread interrupted.", e);
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        activeWorkers.decrementAndGet();
+                    }
+                }
+            });
+        }
+
+        int tasks = 0;
+        int cached = 0;
+        try {
+            var sources = sourceStore.getAllElements(true);
+            for (int from = 0; from < sources.size(); from += STREAMING_RETRIEVAL_BATCH_SIZE) {
+                var batch = sources.subList(from, Math.min(sources.size(), from + STREAMING_RETRIEVAL_BATCH_SIZE));
+                var targetCandidatesPerSource = targetStore.findSimilarBatch(batch);
+                List<Pair<Element, Element>> batchTasks = new ArrayList<>();
+                for (int i = 0; i < batch.size(); i++) {
+                    Element source = batch.get(i).first();
+                    for (Element target : targetCandidatesPerSource.get(i)) {
+                        batchTasks.add(new Pair<>(source, target));
+                    }
+                }
+                var cachedResults = classifyCached(batchTasks);
+                for (var task : batchTasks) {
+                    tasks++;
+                    var result = cachedResults.get(task);
+                    if (result != null) {
+                        result.ifPresent(results::add);
+                    } else if (!enqueue(taskQueue, task, activeWorkers)) {
+                        throw new IllegalStateException(
+                                "All classification workers terminated before all tasks were classified.");
+                    }
+                }
+                cached += cachedResults.size();
+            }
+        } finally {
+            for (int i = 0; i < threads; i++) {
+                if (!enqueue(taskQueue, END_OF_TASKS, activeWorkers)) {
+                    break;
+                }
+            }
+        }
+
+        logger.debug(
+                "Retrieved all {} tasks ({} found in the cache), waiting for classification to finish.", tasks, cached);
+
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                logger.error("Worker thread interrupted.", e);
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        List<ClassificationResult> resultList = new ArrayList<>(results);
+        logger.info("Finished streaming classification of {} tasks with {} results.", tasks, resultList.size());
+        return resultList;
+    }
+
+    /**
+     * Puts a task into the queue, waiting while the queue is full.
+     *
+     * @return false if the task could not be enqueued because no worker is left to consume it
+     */
+    private static boolean enqueue(
+            BlockingQueue<Pair<Element, Element>> taskQueue, Pair<Element, Element> task, AtomicInteger activeWorkers) {
+        try {
+            while (!taskQueue.offer(task, 100, TimeUnit.MILLISECONDS)) {
+                if (activeWorkers.get() == 0) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the classification workers.", e);
+        }
+    }
+
     @NotNull
     private List<ClassificationResult> classify(List<Pair<Element, Element>> tasks) {
         if (threads <= 1) {
@@ -82,14 +255,25 @@ public abstract class Classifier {
 
     /**
      * Performs parallel classification of trace links using virtual threads.
-     * Each thread processes tasks from a shared queue and adds results to a concurrent collection.
+     * The results of cached tasks are looked up at once with {@link #classifyCached(List)} first.
+     * Each thread processes the remaining tasks from a shared queue and adds results to a concurrent collection.
      *
      * @param tasks The list of element pairs to classify
      * @return A list of classification results
      */
     protected final List<ClassificationResult> parallelClassify(List<Pair<Element, Element>> tasks) {
         ConcurrentLinkedQueue<ClassificationResult> results = new ConcurrentLinkedQueue<>();
-        ConcurrentLinkedQueue<Pair<Element, Element>> taskQueue = new ConcurrentLinkedQueue<>(tasks);
+        ConcurrentLinkedQueue<Pair<Element, Element>> taskQueue = new ConcurrentLinkedQueue<>();
+        var cachedResults = classifyCached(tasks);
+        for (var task : tasks) {
+            var result = cachedResults.get(task);
+            if (result == null) {
+                taskQueue.add(task);
+            } else {
+                result.ifPresent(results::add);
+            }
+        }
+        logger.debug("Found {} of {} tasks in the cache.", tasks.size() - taskQueue.size(), tasks.size());
 
         Thread[] workers = new Thread[threads];
         for (int i = 0; i < threads; i++) {
@@ -133,15 +317,20 @@ public abstract class Classifier {
 
     /**
      * Performs sequential classification of trace links.
-     * Each element pair is processed one at a time in the current thread.
+     * The results of cached tasks are looked up at once with {@link #classifyCached(List)} first.
+     * Each remaining element pair is processed one at a time in the current thread.
      *
      * @param tasks The list of element pairs to classify
      * @return A list of classification results
      */
     private List<ClassificationResult> sequentialClassify(List<Pair<Element, Element>> tasks) {
         List<ClassificationResult> results = new ArrayList<>();
+        var cachedResults = classifyCached(tasks);
         for (var task : tasks) {
-            var result = classify(task.first(), task.second());
+            var result = cachedResults.get(task);
+            if (result == null) {
+                result = classify(task.first(), task.second());
+            }
             logger.debug(
                     "Classified {} with {}: {}",
                     task.first().getIdentifier(),
@@ -188,6 +377,20 @@ public abstract class Classifier {
      */
     protected abstract Optional<ClassificationResult> classify(Element source, Element target);
 
+    /**
+     * Looks up the results of classification tasks that are already cached, so that classifiers can query their cache
+     * for many tasks at once (e.g., with a single pipelined request) instead of once per task.
+     * Tasks without a result in the returned map are classified with {@link #classify(Element, Element)}.
+     * The default implementation does not look up any task.
+     *
+     * @param tasks The element pairs to classify
+     * @return The results of the cached tasks, an empty optional if a cached task is not a trace link
+     */
+    protected Map<Pair<Element, Element>, Optional<ClassificationResult>> classifyCached(
+            List<Pair<Element, Element>> tasks) {
+        return Map.of();
+    }
+
     /**
      * Creates a copy of this classifier instance.
      * This method is used to create thread-local copies for parallel processing.
@@ -207,6 +410,8 @@ public abstract class Classifier {
     /**
      * Creates a list of classification tasks from source and target element stores.
      * Each task represents a pair of elements to be classified.
+     * The candidates of all sources are retrieved in one batch. The tasks are ordered by source (in store order)
+     * and then by similarity, exactly like when retrieving the candidates one source after another.
      *
      * @param sourceStore The store containing source elements
      * @param targetStore The store containing target elements
@@ -214,12 +419,14 @@ public abstract class Classifier {
      */
     protected static List<Pair<Element, Element>> createClassificationTasks(
             SourceElementStore sourceStore, TargetElementStore targetStore) {
-        List<Pair<Element, Element>> tasks = new ArrayList<>();
+        var sources = sourceStore.getAllElements(true);
+        var targetCandidatesPerSource = targetStore.findSimilarBatch(sources);
 
-        for (var source : sourceStore.getAllElements(true)) {
-            var targetCandidates = targetStore.findSimilar(source);
-            for (Element target : targetCandidates) {
-                tasks.add(new Pair<>(source.first(), target));
+        List<Pair<Element, Element>> tasks = new ArrayList<>();
+        for (int i = 0; i < sources.size(); i++) {
+            Element source = sources.get(i).first();
+            for (Element target : targetCandidatesPerSource.get(i)) {
+                tasks.add(new Pair<>(source, target));
             }
         }
         return tasks;
@@ -17,6 +17,7 @@ import edu.kit.kastel.sdq.lissa.ratlr.cache.ClassifierCacheKey;
 import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
 import edu.kit.kastel.sdq.lissa.ratlr.context.ContextStore;
 import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
 
 import dev.langchain4j.data.message.*;
 import dev.langchain4j.model.chat.ChatModel;
@@ -65,7 +66,7 @@ public class ReasoningClassifier extends Classifier {
      * @param contextStore The shared context store for pipeline components
      */
     public ReasoningClassifier(ModuleConfiguration configuration, ContextStore contextStore) {
-        super(ChatLanguageModelProvider.threads(configuration), contextStore);
+        super(ChatLanguageModelProvider.threads(configuration), streamingQueueSize(configuration), contextStore);
         this.provider = new ChatLanguageModelProvider(configuration);
         this.cache = CacheManager.getDefaultInstance().getCache(this, provider.getCacheParameters());
         this.prompt = configuration.argumentAsStringByEnumIndex(
@@ -132,12 +133,7 @@ public class ReasoningClassifier extends Classifier {
      */
     @Override
     protected final Optional<ClassificationResult> classify(Element source, Element target) {
-        var targetToConsider = target;
-        if (useOriginalArtifacts) {
-            while (targetToConsider.getParent() != null) {
-                targetToConsider = targetToConsider.getParent();
-            }
-        }
+        var targetToConsider = targetToConsider(target);
 
         var sourceToConsider = source;
         /* TODO Maybe reactivate the sourceToConsider in the future ..
@@ -149,9 +145,47 @@ public class ReasoningClassifier extends Classifier {
         */
 
         String llmResponse = classifyIntern(sourceToConsider, targetToConsider);
-        boolean isRelated = isRelated(llmResponse);
-        if (isRelated) {
-            return Optional.of(ClassificationResult.of(source, targetToConsider));
+        return toResult(source, targetToConsider, llmResponse);
+    }
+
+    /**
+     * Looks up the cached responses of all tasks with a single bulk lookup.
+     *
+     * @param tasks The element pairs to classify
+     * @return The results of the tasks whose responses are cached
+     */
+    @Override
+    protected Map<Pair<Element, Element>, Optional<ClassificationResult>> classifyCached(
+            List<Pair<Element, Element>> tasks) {
+        Map<Pair<Element, Element>, ClassifierCacheKey> keys = HashMap.newHashMap(tasks.size());
+        for (var task : tasks) {
+            keys.put(task, cacheKey(messages(task.first(), targetToConsider(task.second()))));
+        }
+        Map<ClassifierCacheKey, String> responses = cache.getAll(keys.values(), String.class);
+        Map<Pair<Element, Element>, Optional<ClassificationResult>> results = HashMap.newHashMap(responses.size());
+        for (var entry : keys.entrySet()) {
+            String response = responses.get(entry.getValue());
+            if (response != null) {
+                var task = entry.getKey();
+                results.put(task, toResult(task.first(), targetToConsider(task.second()), response));
+            }
+        }
+        return results;
+    }
+
+    private Element targetToConsider(Element target) {
+        var targetToConsider = target;
+        if (useOriginalArtifacts) {
+            while (targetToConsider.getParent() != null) {
+                targetToConsider = targetToConsider.getParent();
+            }
+        }
+        return targetToConsider;
+    }
+
+    private Optional<ClassificationResult> toResult(Element source, Element target, String llmResponse) {
+        if (isRelated(llmResponse)) {
+            return Optional.of(ClassificationResult.of(source, target));
         }
         return Optional.empty();
     }
@@ -184,24 +218,8 @@ public class ReasoningClassifier extends Classifier {
      * @return The language model's response
      */
     private String classifyIntern(Element source, Element target) {
-        List<ChatMessage> messages = new ArrayList<>();
-        if (useSystemMessage)
-            messages.add(new SystemMessage(
-                    "Your job is to determine if there is a traceability link between two artifacts of a system."));
-
-        String request = prompt.replace("{source_type}", source.getType())
-                .replace("{source_content}", source.getContent())
-                .replace("{target_type}", target.getType())
-                .replace("{target_content}", target.getContent());
-        messages.add(new UserMessage(request));
-
-        String messageString = getRepresentation(messages);
-        ClassifierCacheKey cacheKey = ClassifierCacheKey.of(
-                provider.modelName(),
-                provider.seed(),
-                provider.temperature(),
-                ClassifierCacheKey.Mode.CHAT,
-                messageString);
+        List<ChatMessage> messages = messages(source, target);
+        ClassifierCacheKey cacheKey = cacheKey(messages);
 
         String cachedResponse = cache.get(cacheKey, String.class);
         if (cachedResponse != null) {
@@ -219,6 +237,29 @@ public class ReasoningClassifier extends Classifier {
         }
     }
 
+    private List<ChatMessage> messages(Element source, Element target) {
+        List<ChatMessage> messages = new ArrayList<>();
+        if (useSystemMessage)
+            messages.add(new SystemMessage(
+                    "Your job is to determine if there is a traceability link between two artifacts of a system."));
+
+        String request = prompt.replace("{source_type}", source.getType())
+                .replace("{source_content}", source.getContent())
+                .replace("{target_type}", target.getType())
+                .replace("{target_content}", target.getContent());
+        messages.add(new UserMessage(request));
+        return messages;
+    }
+
+    private ClassifierCacheKey cacheKey(List<ChatMessage> messages) {
+        return ClassifierCacheKey.of(
+                provider.modelName(),
+                provider.seed(),
+                provider.temperature(),
+                ClassifierCacheKey.Mode.CHAT,
+                getRepresentation(messages));
+    }
+
     private String getRepresentation(List<ChatMessage> messages) {
         List<String> messageStrings =
                 messages.stream().map(this::getRepresentation).toList();
@@ -2,6 +2,7 @@
 package edu.kit.kastel.sdq.lissa.ratlr.classifier;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -11,6 +12,7 @@ import edu.kit.kastel.sdq.lissa.ratlr.cache.ClassifierCacheKey;
 import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
 import edu.kit.kastel.sdq.lissa.ratlr.context.ContextStore;
 import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
 
 import dev.langchain4j.model.chat.ChatModel;
 
@@ -69,7 +71,7 @@ public class SimpleClassifier extends Classifier {
      * @param contextStore The shared context store for pipeline components
      */
     public SimpleClassifier(ModuleConfiguration configuration, ContextStore contextStore) {
-        super(ChatLanguageModelProvider.threads(configuration), contextStore);
+        super(ChatLanguageModelProvider.threads(configuration), streamingQueueSize(configuration), contextStore);
         this.provider = new ChatLanguageModelProvider(configuration);
         this.template = configuration.argumentAsString(PROMPT_TEMPLATE_KEY, DEFAULT_TEMPLATE);
         this.cache = CacheManager.getDefaultInstance().getCache(this, provider.getCacheParameters());
@@ -128,8 +130,35 @@ public class SimpleClassifier extends Classifier {
      */
     @Override
     protected final Optional<ClassificationResult> classify(Element source, Element target) {
-        String llmResponse = classifyIntern(source, target);
+        return toResult(source, target, classifyIntern(source, target));
+    }
 
+    /**
+     * Looks up the cached responses of all tasks with a single bulk lookup.
+     *
+     * @param tasks The element pairs to classify
+     * @return The results of the tasks whose responses are cached
+     */
+    @Override
+    protected Map<Pair<Element, Element>, Optional<ClassificationResult>> classifyCached(
+            List<Pair<Element, Element>> tasks) {
+        Map<Pair<Element, Element>, ClassifierCacheKey> keys = HashMap.newHashMap(tasks.size());
+        for (var task : tasks) {
+            keys.put(task, cacheKey(request(task.first(), task.second())));
+        }
+        Map<ClassifierCacheKey, String> responses = cache.getAll(keys.values(), String.class);
+        Map<Pair<Element, Element>, Optional<ClassificationResult>> results = HashMap.newHashMap(responses.size());
+        for (var entry : keys.entrySet()) {
+            String response = responses.get(entry.getValue());
+            if (response != null) {
+                var task = entry.getKey();
+                results.put(task, toResult(task.first(), task.second(), response));
+            }
+        }
+        return results;
+    }
+
+    private Optional<ClassificationResult> toResult(Element source, Element target, String llmResponse) {
         String thinkEnd = "</think>";
         if (llmResponse.startsWith("<think>") && llmResponse.contains(thinkEnd)) {
             // Omit the thinking of models like deepseek-r1
@@ -155,13 +184,8 @@ public class SimpleClassifier extends Classifier {
      * @return The language model's response
      */
     private String classifyIntern(Element source, Element target) {
-        String request = template.replace("{source_type}", source.getType())
-                .replace("{source_content}", source.getContent())
-                .replace("{target_type}", target.getType())
-                .replace("{target_content}", target.getContent());
-
-        ClassifierCacheKey cacheKey = ClassifierCacheKey.of(
-                provider.modelName(), provider.seed(), provider.temperature(), ClassifierCacheKey.Mode.CHAT, request);
+        String request = request(source, target);
+        ClassifierCacheKey cacheKey = cacheKey(request);
         String cachedResponse = cache.get(cacheKey, String.class);
         if (cachedResponse != null) {
             return cachedResponse;
@@ -176,4 +200,16 @@ public class SimpleClassifier extends Classifier {
             return response;
         }
     }
+
+    private String request(Element source, Element target) {
+        return template.replace("{source_type}", source.getType())
+                .replace("{source_content}", source.getContent())
+                .replace("{target_type}", target.getType())
+                .replace("{target_content}", target.getContent());
+    }
+
+    private ClassifierCacheKey cacheKey(String request) {
+        return ClassifierCacheKey.of(
+                provider.modelName(), provider.seed(), provider.temperature(), ClassifierCacheKey.Mode.CHAT, request);
+    }
 }
@@ -3,15 +3,14 @@ package edu.kit.kastel.sdq.lissa.ratlr.elementstore;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.jspecify.annotations.Nullable;
 
 import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
 import edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy.RetrievalStrategy;
 import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.ElementIndex;
 import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
 
 /**
@@ -29,16 +28,26 @@ import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
 public class ElementStore {
 
     /**
-     * Maps element identifiers to their corresponding elements and embeddings.
-     * Used by LiSSA to maintain the relationship between elements and their vector representations.
+     * Interns all elements into dense int ids, element {@code i} belongs to row {@code i} of {@link #embeddings}.
+     * Used by LiSSA to maintain the relationship between elements and their vector representations
+     * as well as the hierarchy of the elements.
      */
-    private final Map<String, Pair<Element, float[]>> idToElementWithEmbedding;
+    private ElementIndex index;
 
     /**
-     * List of all elements and their embeddings.
-     * Used by LiSSA to maintain the order and full set of elements for processing.
+     * The embeddings of all elements, packed into one contiguous matrix.
      */
-    private final List<Pair<Element, float[]>> elementsWithEmbedding;
+    private EmbeddingMatrix embeddings;
+
+    /**
+     * The elements marked for comparison, element {@code i} belongs to row {@code i} of {@link #comparableEmbeddings}.
+     */
+    private List<Element> comparableElements;
+
+    /**
+     * A view of {@link #embeddings} that only contains the rows of {@link #comparableElements}.
+     */
+    private EmbeddingMatrix comparableEmbeddings;
 
     /**
      * Creates a new element store for the LiSSA framework.
@@ -55,8 +64,10 @@ public class ElementStore {
                     "The element store is created in source store mode, but the retrieval strategy is not set to \"custom\". This is likely a configuration error as source stores do not use retrieval strategies.");
         }
 
-        elementsWithEmbedding = new ArrayList<>();
-        idToElementWithEmbedding = new HashMap<>();
+        index = ElementIndex.empty();
+        embeddings = EmbeddingMatrix.empty();
+        comparableElements = List.of();
+        comparableEmbeddings = EmbeddingMatrix.empty();
     }
 
     /**
@@ -68,44 +79,108 @@ public class ElementStore {
      *                          For source stores, this should be null.
      */
     public ElementStore(List<Pair<Element, float[]>> content, RetrievalStrategy retrievalStrategy) {
+        index = ElementIndex.empty();
+        embeddings = EmbeddingMatrix.empty();
+        comparableElements = List.of();
+        comparableEmbeddings = EmbeddingMatrix.empty();
 
-        elementsWithEmbedding = new ArrayList<>();
-        idToElementWithEmbedding = new HashMap<>();
-        List<Element> elements = new ArrayList<>();
-        List<float[]> embeddings = new ArrayList<>();
-        for (var pair : content) {
-            var element = pair.first();
-            var embedding = pair.second();
-            elements.add(element);
-            embeddings.add(Arrays.copyOf(embedding, embedding.length));
-        }
-        setup(elements, embeddings);
+        // The embeddings are copied into the contiguous matrix during setup
+        initialize(
+                content.stream().map(Pair::first).toList(),
+                EmbeddingMatrix.of(content.stream().map(Pair::second).toList()));
+    }
+
+    /**
+     * Creates a new element store with the provided elements and an existing matrix of their embeddings.
+     * The matrix is used as it is, without copying the vectors.
+     *
+     * @param elements List of elements to store
+     * @param embeddings The embeddings, row {@code i} belongs to {@code elements.get(i)}
+     * @throws IllegalArgumentException If the number of elements and embeddings don't match
+     */
+    protected ElementStore(List<Element> elements, EmbeddingMatrix embeddings) {
+        index = ElementIndex.empty();
+        this.embeddings = EmbeddingMatrix.empty();
+        comparableElements = List.of();
+        comparableEmbeddings = EmbeddingMatrix.empty();
+
+        initialize(elements, embeddings);
+    }
+
+    /**
+     * Initializes the element store with elements and their embeddings for LiSSA's processing.
+     * The embeddings are copied into a single contiguous {@link EmbeddingMatrix}.
+     *
+     * @param elements List of elements to store
+     * @param embeddings List of embeddings corresponding to the elements
+     * @throws IllegalStateException If the store is already initialized
+     * @throws IllegalArgumentException If the number of elements and embeddings don't match
+     *                                  or the embeddings differ in their number of dimensions
+     */
+    public final void setup(List<Element> elements, List<float[]> embeddings) {
+        setup(elements, embeddings, false);
     }
 
     /**
      * Initializes the element store with elements and their embeddings for LiSSA's processing.
+     * The embeddings are copied into a single contiguous {@link EmbeddingMatrix}, optionally in half precision
+     * to halve its memory (see {@link EmbeddingMatrix#ofHalfPrecision(List)}).
      *
      * @param elements List of elements to store
      * @param embeddings List of embeddings corresponding to the elements
+     * @param halfPrecision Whether the embeddings are stored in half precision
+     * @throws IllegalStateException If the store is already initialized
+     * @throws IllegalArgumentException If the number of elements and embeddings don't match
+     *                                  or the embeddings differ in their number of dimensions
+     */
+    public final void setup(List<Element> elements, List<float[]> embeddings, boolean halfPrecision) {
+        if (elements.size() != embeddings.size()) {
+            throw new IllegalArgumentException("The number of elements and embeddings must be equal.");
+        }
+        setup(elements, halfPrecision ? EmbeddingMatrix.ofHalfPrecision(embeddings) : EmbeddingMatrix.of(embeddings));
+    }
+
+    /**
+     * Initializes the element store with elements and an existing matrix of their embeddings, e.g., one that is
+     * mapped from a {@link PersistentVectorIndex}. The matrix is used as it is, without copying the vectors.
+     *
+     * @param elements List of elements to store
+     * @param embeddings The embeddings, row {@code i} belongs to {@code elements.get(i)}
      * @throws IllegalStateException If the store is already initialized
      * @throws IllegalArgumentException If the number of elements and embeddings don't match
      */
-    public void setup(List<Element> elements, List<float[]> embeddings) {
-        if (!elementsWithEmbedding.isEmpty() || !idToElementWithEmbedding.isEmpty()) {
+    public void setup(List<Element> elements, EmbeddingMatrix embeddings) {
+        initialize(elements, embeddings);
+    }
+
+    /**
+     * Initializes the store. Unlike {@link #setup(List, EmbeddingMatrix)}, this cannot be overridden, so it is safe
+     * to call from the constructor.
+     */
+    private void initialize(List<Element> elements, EmbeddingMatrix embeddings) {
+        if (index.size() != 0) {
             throw new IllegalStateException("The element store is already set up.");
         }
 
-        if (elements.size() != embeddings.size()) {
+        if (elements.size() != embeddings.rows()) {
             throw new IllegalArgumentException("The number of elements and embeddings must be equal.");
         }
 
-        for (int i = 0; i < elements.size(); i++) {
-            var element = elements.get(i);
-            var embedding = embeddings.get(i);
-            var pair = new Pair<>(element, embedding);
-            elementsWithEmbedding.add(pair);
-            idToElementWithEmbedding.put(element.getIdentifier(), pair);
+        this.embeddings = embeddings;
+        this.index = ElementIndex.of(elements);
+
+        List<Element> comparable = new ArrayList<>();
+        int[] comparableRows = new int[index.size()];
+        for (int row = 0; row < index.size(); row++) {
+            if (index.isCompare(row)) {
+                comparableRows[comparable.size()] = row;
+                comparable.add(index.element(row));
+            }
         }
+        this.comparableElements = List.copyOf(comparable);
+        this.comparableEmbeddings = comparable.size() == index.size()
+                ? this.embeddings
+                : this.embeddings.select(Arrays.copyOf(comparableRows, comparable.size()));
     }
 
     /**
@@ -116,29 +191,50 @@ public class ElementStore {
      * @return A pair containing the element and its embedding, or null if not found
      */
     public @Nullable Pair<Element, float[]> getById(String id) {
-        var element = idToElementWithEmbedding.get(id);
-        if (element == null) {
+        int row = index.indexOf(id);
+        if (row == ElementIndex.NO_ELEMENT) {
             return null;
         }
-        return new Pair<>(element.first(), Arrays.copyOf(element.second(), element.second().length));
+        return new Pair<>(index.element(row), embeddings.copyOfRow(row));
     }
 
     /**
      * Retrieves all elements that have a specific parent element.
      * Available in both source and target store modes for LiSSA's hierarchical analysis.
+     * If the parent is part of the store, this only visits its children. Otherwise, all elements are scanned.
      *
      * @param parentId The identifier of the parent element
      * @return List of pairs containing elements and their embeddings
      */
     public List<Pair<Element, float[]>> getElementsByParentId(String parentId) {
-        List<Pair<Element, float[]>> elements = new ArrayList<>();
-        for (Pair<Element, float[]> element : elementsWithEmbedding) {
-            if (element.first().getParent() != null
-                    && element.first().getParent().getIdentifier().equals(parentId)) {
-                elements.add(new Pair<>(element.first(), Arrays.copyOf(element.second(), element.second().length)));
+        int parent = index.indexOf(parentId);
+        if (parent != ElementIndex.NO_ELEMENT) {
+            List<Pair<Element, float[]>> children = new ArrayList<>(index.childCount(parent));
+            for (int child : index.children(parent)) {
+                children.add(new Pair<>(index.element(child), embeddings.copyOfRow(child)));
+            }
+            return children;
+        }
+
+        // The parent is not part of the store, so its children are not in the index
+        List<Pair<Element, float[]>> children = new ArrayList<>();
+        for (int row = 0; row < index.size(); row++) {
+            Element element = index.element(row);
+            if (element.getParent() != null && element.getParent().getIdentifier().equals(parentId)) {
+                children.add(new Pair<>(element, embeddings.copyOfRow(row)));
             }
         }
-        return elements;
+        return children;
+    }
+
+    /**
+     * Returns the dense int ids of the elements of this store.
+     * The id of an element is also its row in the embeddings of the store.
+     *
+     * @return The index of all elements of this store
+     */
+    public ElementIndex getElementIndex() {
+        return index;
     }
 
     /**
@@ -146,19 +242,40 @@ public class ElementStore {
      * Available in both source and target store modes for LiSSA's internal processing.
      *
      * @param onlyCompare If true, only returns elements marked for comparison
-     * @return List of pairs containing elements and their embeddings
+     * @return List of pairs containing elements and (copies of) their embeddings
      */
     protected List<Pair<Element, float[]>> getAllElementsIntern(boolean onlyCompare) {
-        List<Pair<Element, float[]>> elements = new ArrayList<>();
-        for (Pair<Element, float[]> element : elementsWithEmbedding) {
-            if (!onlyCompare || element.first().isCompare()) {
-                elements.add(new Pair<>(element.first(), Arrays.copyOf(element.second(), element.second().length)));
-            }
+        List<Element> selectedElements = onlyCompare ? comparableElements : index.elements();
+        EmbeddingMatrix selectedEmbeddings = onlyCompare ? comparableEmbeddings : embeddings;
+        List<Pair<Element, float[]>> result = new ArrayList<>(selectedElements.size());
+        for (int row = 0; row < selectedElements.size(); row++) {
+            result.add(new Pair<>(selectedElements.get(row), selectedEmbeddings.copyOfRow(row)));
         }
-        return elements;
+        return result;
+    }
+
+    /**
+     * Internal method to retrieve all elements without their embeddings.
+     *
+     * @param onlyCompare If true, only returns elements marked for comparison
+     * @return An unmodifiable list of elements
+     */
+    protected List<Element> getElementsIntern(boolean onlyCompare) {
+        return onlyCompare ? comparableElements : index.elements();
+    }
+
+    /**
+     * Internal method to retrieve the embeddings of all elements without copying them.
+     * Row {@code i} of the matrix belongs to element {@code i} of {@link #getElementsIntern(boolean)}.
+     *
+     * @param onlyCompare If true, only returns the embeddings of elements marked for comparison
+     * @return A read-only matrix of embeddings
+     */
+    protected EmbeddingMatrix getEmbeddingsIntern(boolean onlyCompare) {
+        return onlyCompare ? comparableEmbeddings : embeddings;
     }
 
     protected int size() {
-        return elementsWithEmbedding.size();
+        return index.size();
     }
 }
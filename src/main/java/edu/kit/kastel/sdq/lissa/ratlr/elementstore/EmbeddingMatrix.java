@@ -0,0 +1,486 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * An immutable, contiguous storage for the embeddings of an {@link ElementStore}.
+ * All vectors are packed row-major into {@code float[]} chunks of up to 1 GiB and addressed by their int row id,
+ * which avoids one array object (and header) per element and keeps the vectors close together in memory
+ * for the linear scans performed by the retrieval strategies. Chunks contain whole rows, so the matrix is not limited
+ * by the maximum size of an array.
+ * <p>
+ * Rows are never handed out as mutable arrays. Callers either
+ * <ul>
+ *     <li>request a {@link #copyOfRow(int) copy} of a row,</li>
+ *     <li>request a {@link #row(int) read-only buffer view} of a row, or</li>
+ *     <li>evaluate a {@link RowFunction} directly on the backing storage via {@link #applyToRow(int, RowFunction)}.</li>
+ * </ul>
+ * A matrix can be narrowed to a subset of its rows via {@link #select(int[])}.
+ * The resulting matrix shares the backing storage with this matrix and does not copy any vectors.
+ * <p>
+ * A matrix created by {@link #ofHalfPrecision(List)} stores the values as IEEE 754 half-precision floats
+ * ({@code short} bits), which halves the memory of the vectors. Row functions are evaluated on the half-precision
+ * storage via {@link RowFunction#applyHalf(short[], int, int)}, which converts the values on the fly.
+ * <p>
+ * A matrix created by {@link #mapped(FloatBuffer[], int, int)} or {@link #mappedHalfPrecision(ShortBuffer[], int, int)}
+ * reads the vectors from memory-mapped chunks of a file (see {@link PersistentVectorIndex}) and does not hold them on
+ * the heap. Row functions are evaluated on a per-thread copy of the row.
+ */
+public final class EmbeddingMatrix {
+    private static final EmbeddingMatrix EMPTY =
+            new EmbeddingMatrix(new float[0][], null, null, null, 1, 0, 0, null);
+
+    /**
+     * The maximum number of values of a chunk on the heap, i.e., 1 GiB of single-precision values.
+     */
+    private static final int MAX_CHUNK_VALUES = 1 << 28;
+
+    /**
+     * Row-major storage of all vectors in chunks of {@link #rowsPerChunk} rows each, empty if the matrix stores
+     * half-precision or mapped values.
+     */
+    private final float[][] data;
+
+    /**
+     * Row-major storage of all vectors as half-precision floats in chunks of {@link #rowsPerChunk} rows each,
+     * empty if the matrix maps half-precision values, or null if the matrix stores single-precision values.
+     */
+    private final short @Nullable [][] halfData;
+
+    /**
+     * Row-major storage of all vectors in memory-mapped chunks of {@link #rowsPerChunk} rows each, or null if the
+     * vectors are stored on the heap. Only absolute (thread-safe) operations are used on the buffers.
+     */
+    private final FloatBuffer @Nullable [] chunks;
+
+    /**
+     * Row-major storage of all vectors as half-precision floats in memory-mapped chunks of {@link #rowsPerChunk} rows
+     * each, or null if the vectors are not mapped in half precision. Only absolute operations are used on the buffers.
+     */
+    private final ShortBuffer @Nullable [] halfChunks;
+
+    /**
+     * The number of rows in each chunk of {@link #data}, {@link #halfData}, {@link #chunks}, or {@link #halfChunks}
+     * (except for the last one).
+     */
+    private final int rowsPerChunk;
+
+    /**
+     * Per-thread buffer that mapped rows are copied into to evaluate row functions.
+     */
+    private final @Nullable ThreadLocal<float[]> rowBuffer;
+
+    /**
+     * Per-thread buffer that mapped half-precision rows are copied into to evaluate row functions.
+     */
+    private final @Nullable ThreadLocal<short[]> halfRowBuffer;
+
+    /**
+     * The number of dimensions of each vector.
+     */
+    private final int dimensions;
+
+    /**
+     * The number of (logical) rows of this matrix.
+     */
+    private final int rows;
+
+    /**
+     * Maps logical rows to physical rows of the backing storage, or null if both are identical.
+     */
+    private final int @Nullable [] rowMapping;
+
+    private EmbeddingMatrix(
+            float[][] data,
+            short @Nullable [][] halfData,
+            FloatBuffer @Nullable [] chunks,
+            ShortBuffer @Nullable [] halfChunks,
+            int rowsPerChunk,
+            int dimensions,
+            int rows,
+            int @Nullable [] rowMapping) {
+        this.data = data;
+        this.halfData = halfData;
+        this.chunks = chunks;
+        this.halfChunks = halfChunks;
+        this.rowsPerChunk = rowsPerChunk;
+        this.rowBuffer = chunks == null ? null : ThreadLocal.withInitial(() -> new float[dimensions]);
+        this.halfRowBuffer = halfChunks == null ? null : ThreadLocal.withInitial(() -> new short[dimensions]);
+        this.dimensions = dimensions;
+        this.rows = rows;
+        this.rowMapping = rowMapping;
+    }
+
+    /**
+     * Returns an empty matrix without any rows.
+     *
+     * @return An empty matrix
+     */
+    public static EmbeddingMatrix empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Packs the given vectors into a new matrix. The vectors are copied, so later modifications
+     * of the given arrays do not affect the matrix.
+     *
+     * @param vectors The vectors to store, row {@code i} of the matrix corresponds to {@code vectors.get(i)}
+     * @return A new matrix containing the given vectors
+     * @throws IllegalArgumentException If the vectors do not all have the same number of dimensions
+     */
+    public static EmbeddingMatrix of(List<float[]> vectors) {
+        return of(vectors, MAX_CHUNK_VALUES);
+    }
+
+    /**
+     * Packs the given vectors into a new matrix with chunks of at most {@code maxChunkValues} values (but at least
+     * one row).
+     */
+    static EmbeddingMatrix of(List<float[]> vectors, int maxChunkValues) {
+        if (vectors.isEmpty()) {
+            return EMPTY;
+        }
+
+        int dimensions = dimensions(vectors);
+        int rowsPerChunk = rowsPerChunk(vectors.size(), dimensions, maxChunkValues);
+        float[][] data = new float[chunkCount(vectors.size(), rowsPerChunk)][];
+        for (int chunk = 0; chunk < data.length; chunk++) {
+            data[chunk] = new float[chunkRows(vectors.size(), rowsPerChunk, chunk) * dimensions];
+        }
+        for (int row = 0; row < vectors.size(); row++) {
+            System.arraycopy(
+                    vectors.get(row), 0, data[row / rowsPerChunk], (row % rowsPerChunk) * dimensions, dimensions);
+        }
+        return new EmbeddingMatrix(data, null, null, null, rowsPerChunk, dimensions, vectors.size(), null);
+    }
+
+    /**
+     * Packs the given vectors into a new matrix that stores the values in half precision.
+     * Values are rounded to the nearest half-precision value.
+     *
+     * @param vectors The vectors to store, row {@code i} of the matrix corresponds to {@code vectors.get(i)}
+     * @return A new half-precision matrix containing the given vectors
+     * @throws IllegalArgumentException If the vectors do not all have the same number of dimensions
+     */
+    public static EmbeddingMatrix ofHalfPrecision(List<float[]> vectors) {
+        return ofHalfPrecision(vectors, MAX_CHUNK_VALUES);
+    }
+
+    /**
+     * Packs the given vectors into a new half-precision matrix with chunks of at most {@code maxChunkValues} values
+     * (but at least one row).
+     */
+    static EmbeddingMatrix ofHalfPrecision(List<float[]> vectors, int maxChunkValues) {
+        if (vectors.isEmpty()) {
+            return new EmbeddingMatrix(new float[0][], new short[0][], null, null, 1, 0, 0, null);
+        }
+
+        int dimensions = dimensions(vectors);
+        int rowsPerChunk = rowsPerChunk(vectors.size(), dimensions, maxChunkValues);
+        short[][] halfData = new short[chunkCount(vectors.size(), rowsPerChunk)][];
+        for (int chunk = 0; chunk < halfData.length; chunk++) {
+            halfData[chunk] = new short[chunkRows(vectors.size(), rowsPerChunk, chunk) * dimensions];
+        }
+        for (int row = 0; row < vectors.size(); row++) {
+            float[] vector = vectors.get(row);
+            short[] chunk = halfData[row / rowsPerChunk];
+            int offset = (row % rowsPerChunk) * dimensions;
+            for (int i = 0; i < dimensions; i++) {
+                chunk[offset + i] = Float.floatToFloat16(vector[i]);
+            }
+        }
+        return new EmbeddingMatrix(
+                new float[0][], halfData, null, null, rowsPerChunk, dimensions, vectors.size(), null);
+    }
+
+    /**
+     * Creates a matrix that reads its vectors from memory-mapped chunks instead of copying them to the heap.
+     * Chunk {@code i} contains rows {@code [i * rowsPerChunk, (i + 1) * rowsPerChunk)}, row-major, so the number of
+     * rows is determined by the sizes of the chunks. The buffers must not be modified afterward.
+     *
+     * @param chunks The chunks of the vectors
+     * @param rowsPerChunk The number of rows of every chunk but the last one
+     * @param dimensions The number of dimensions of each vector
+     * @return A new matrix backed by the chunks
+     * @throws IllegalArgumentException If a chunk does not contain the expected number of values
+     */
+    public static EmbeddingMatrix mapped(FloatBuffer[] chunks, int rowsPerChunk, int dimensions) {
+        if (chunks.length == 0) {
+            return EMPTY;
+        }
+        int rows = mappedRows(chunks, rowsPerChunk, dimensions);
+        return new EmbeddingMatrix(new float[0][], null, chunks.clone(), null, rowsPerChunk, dimensions, rows, null);
+    }
+
+    /**
+     * Creates a half-precision matrix that reads its vectors from memory-mapped chunks of IEEE 754 half-precision
+     * floats ({@code short} bits) instead of copying them to the heap. The chunks are laid out as described in
+     * {@link #mapped(FloatBuffer[], int, int)}. The buffers must not be modified afterward.
+     *
+     * @param chunks The chunks of the vectors
+     * @param rowsPerChunk The number of rows of every chunk but the last one
+     * @param dimensions The number of dimensions of each vector
+     * @return A new half-precision matrix backed by the chunks
+     * @throws IllegalArgumentException If a chunk does not contain the expected number of values
+     */
+    public static EmbeddingMatrix mappedHalfPrecision(ShortBuffer[] chunks, int rowsPerChunk, int dimensions) {
+        if (chunks.length == 0) {
+            return ofHalfPrecision(List.of());
+        }
+        int rows = mappedRows(chunks, rowsPerChunk, dimensions);
+        return new EmbeddingMatrix(
+                new float[0][], new short[0][], null, chunks.clone(), rowsPerChunk, dimensions, rows, null);
+    }
+
+    private static int mappedRows(Buffer[] chunks, int rowsPerChunk, int dimensions) {
+        if (dimensions <= 0 || rowsPerChunk <= 0) {
+            throw new IllegalArgumentException("The dimensions and rows per chunk must be positive.");
+        }
+        long rows = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            Buffer chunk = chunks[i];
+            boolean last = i == chunks.length - 1;
+            if (chunk.capacity() % dimensions != 0
+                    || (!last && chunk.capacity() != (long) rowsPerChunk * dimensions)
+                    || chunk.capacity() > (long) rowsPerChunk * dimensions) {
+                throw new IllegalArgumentException("Chunk " + i + " does not contain whole rows of the matrix.");
+            }
+            rows += chunk.capacity() / dimensions;
+        }
+        return Math.toIntExact(rows);
+    }
+
+    private static int rowsPerChunk(int rows, int dimensions, int maxChunkValues) {
+        return Math.max(1, Math.min(rows, maxChunkValues / dimensions));
+    }
+
+    private static int chunkCount(int rows, int rowsPerChunk) {
+        return (rows + rowsPerChunk - 1) / rowsPerChunk;
+    }
+
+    private static int chunkRows(int rows, int rowsPerChunk, int chunk) {
+        return Math.min(rowsPerChunk, rows - chunk * rowsPerChunk);
+    }
+
+    private static int dimensions(List<float[]> vectors) {
+        int dimensions = vectors.getFirst().length;
+        for (int row = 0; row < vectors.size(); row++) {
+            if (vectors.get(row).length != dimensions) {
+                throw new IllegalArgumentException("All embeddings must have the same number of dimensions. Expected "
+                        + dimensions + " but got " + vectors.get(row).length + " for row " + row + ".");
+            }
+        }
+        return dimensions;
+    }
+
+    /**
+     * Creates a matrix that only contains the given rows of this matrix.
+     * Row {@code i} of the resulting matrix corresponds to row {@code rows[i]} of this matrix.
+     * The backing storage is shared, no vectors are copied.
+     *
+     * @param selectedRows The rows of this matrix to select
+     * @return A matrix view of the selected rows
+     * @throws IndexOutOfBoundsException If any of the rows does not exist in this matrix
+     */
+    public EmbeddingMatrix select(int[] selectedRows) {
+        int[] mapping = new int[selectedRows.length];
+        for (int i = 0; i < selectedRows.length; i++) {
+            mapping[i] = physicalRow(selectedRows[i]);
+        }
+        return new EmbeddingMatrix(
+                data, halfData, chunks, halfChunks, rowsPerChunk, dimensions, mapping.length, mapping);
+    }
+
+    /**
+     * Returns the number of rows (vectors) in this matrix.
+     *
+     * @return The number of rows
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Returns the number of dimensions of the vectors in this matrix.
+     *
+     * @return The number of dimensions, 0 if the matrix is empty
+     */
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Returns whether the values are stored in half precision.
+     *
+     * @return true if the matrix was created by {@link #ofHalfPrecision(List)} or
+     *         {@link #mappedHalfPrecision(ShortBuffer[], int, int)}
+     */
+    public boolean isHalfPrecision() {
+        return halfData != null;
+    }
+
+    /**
+     * Returns whether the vectors are read from memory-mapped chunks instead of being stored on the heap.
+     *
+     * @return true if the matrix was created by {@link #mapped(FloatBuffer[], int, int)} or
+     *         {@link #mappedHalfPrecision(ShortBuffer[], int, int)}
+     */
+    public boolean isMapped() {
+        return chunks != null || halfChunks != null;
+    }
+
+    /**
+     * Returns the number of bytes that a row occupies in the backing storage.
+     *
+     * @return The size of a row in bytes
+     */
+    public int bytesPerRow() {
+        return dimensions * (halfData == null ? Float.BYTES : Short.BYTES);
+    }
+
+    /**
+     * Returns a copy of the vector stored in the given row.
+     *
+     * @param row The row to copy
+     * @return A new array containing the vector
+     * @throws IndexOutOfBoundsException If the row does not exist
+     */
+    public float[] copyOfRow(int row) {
+        if (chunks != null) {
+            float[] vector = new float[dimensions];
+            copyMappedRow(row, vector);
+            return vector;
+        }
+        if (halfChunks != null) {
+            short[] vector = new short[dimensions];
+            copyMappedRow(row, vector);
+            return toFloats(vector, 0, dimensions);
+        }
+        int physicalRow = physicalRow(row);
+        int offset = offset(physicalRow);
+        if (halfData != null) {
+            return toFloats(halfData[physicalRow / rowsPerChunk], offset, dimensions);
+        }
+        return Arrays.copyOfRange(data[physicalRow / rowsPerChunk], offset, offset + dimensions);
+    }
+
+    /**
+     * Returns a read-only view of the vector stored in the given row.
+     *
+     * @param row The row to view
+     * @return A read-only buffer whose position 0 is the first component of the vector
+     * @throws IndexOutOfBoundsException If the row does not exist
+     */
+    public FloatBuffer row(int row) {
+        if (halfData != null) {
+            return FloatBuffer.wrap(copyOfRow(row)).asReadOnlyBuffer();
+        }
+        int physicalRow = physicalRow(row);
+        if (chunks != null) {
+            return chunks[physicalRow / rowsPerChunk].slice(offset(physicalRow), dimensions).asReadOnlyBuffer();
+        }
+        return FloatBuffer.wrap(data[physicalRow / rowsPerChunk], offset(physicalRow), dimensions)
+                .slice()
+                .asReadOnlyBuffer();
+    }
+
+    /**
+     * Evaluates the given function on a row without copying it.
+     * The function must not modify the passed array.
+     *
+     * @param row The row to evaluate the function on
+     * @param function The function to evaluate
+     * @return The result of the function
+     * @throws IndexOutOfBoundsException If the row does not exist
+     */
+    public double applyToRow(int row, RowFunction function) {
+        if (rowBuffer != null) {
+            float[] vector = rowBuffer.get();
+            copyMappedRow(row, vector);
+            return function.apply(vector, 0, dimensions);
+        }
+        if (halfRowBuffer != null) {
+            short[] vector = halfRowBuffer.get();
+            copyMappedRow(row, vector);
+            return function.applyHalf(vector, 0, dimensions);
+        }
+        int physicalRow = physicalRow(row);
+        if (halfData != null) {
+            return function.applyHalf(halfData[physicalRow / rowsPerChunk], offset(physicalRow), dimensions);
+        }
+        return function.apply(data[physicalRow / rowsPerChunk], offset(physicalRow), dimensions);
+    }
+
+    private static float[] toFloats(short[] halfData, int offset, int length) {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = Float.float16ToFloat(halfData[offset + i]);
+        }
+        return values;
+    }
+
+    private void copyMappedRow(int row, float[] destination) {
+        int physicalRow = physicalRow(row);
+        Objects.requireNonNull(chunks)[physicalRow / rowsPerChunk].get(
+                offset(physicalRow), destination, 0, dimensions);
+    }
+
+    private void copyMappedRow(int row, short[] destination) {
+        int physicalRow = physicalRow(row);
+        Objects.requireNonNull(halfChunks)[physicalRow / rowsPerChunk].get(
+                offset(physicalRow), destination, 0, dimensions);
+    }
+
+    /**
+     * Returns the offset of a physical row within its chunk.
+     */
+    private int offset(int physicalRow) {
+        return (physicalRow % rowsPerChunk) * dimensions;
+    }
+
+    private int physicalRow(int row) {
+        if (row < 0 || row >= rows) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of bounds for " + rows + " rows");
+        }
+        return rowMapping == null ? row : rowMapping[row];
+    }
+
+    /**
+     * A function that is evaluated on a single row of the backing storage of an {@link EmbeddingMatrix}.
+     */
+    @FunctionalInterface
+    public interface RowFunction {
+        /**
+         * Evaluates the function on the vector {@code data[offset .. offset + length)}.
+         * Implementations must not modify the array.
+         *
+         * @param data The chunk of the backing storage of the matrix that contains the vector
+         * @param offset The offset of the first component of the vector
+         * @param length The number of dimensions of the vector
+         * @return The result of the function
+         */
+        double apply(float[] data, int offset, int length);
+
+        /**
+         * Evaluates the function on the half-precision vector {@code data[offset .. offset + length)}.
+         * By default, the vector is converted to single precision and passed to {@link #apply(float[], int, int)}.
+         * Implementations must not modify the array.
+         *
+         * @param data The chunk of the half-precision backing storage of the matrix that contains the vector
+         * @param offset The offset of the first component of the vector
+         * @param length The number of dimensions of the vector
+         * @return The result of the function
+         */
+        default double applyHalf(short[] data, int offset, int length) {
+            return apply(toFloats(data, offset, length), 0, length);
+        }
+    }
+}
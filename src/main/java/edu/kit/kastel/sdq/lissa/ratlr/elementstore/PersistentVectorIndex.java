@@ -0,0 +1,376 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+
+/**
+ * Persists the embeddings of the elements of a store in a compact binary file that is memory-mapped on later runs.
+ * The vectors are mapped in chunks, so files larger than 2 GiB are supported, and are never copied to the heap.
+ * <p>
+ * The file name is derived from a hash of the embedding model and all elements (identifier, type, content,
+ * granularity, parent, and compare flag). Thus, a file is only reused if neither the model nor the corpus changed,
+ * and concurrent processes evaluating the same corpus share the same file (and the OS page cache).
+ * <p>
+ * File format (little endian):
+ * <ol>
+ *     <li>Magic number and format version (2 ints)</li>
+ *     <li>Number of elements, number of dimensions, and bytes per value (4 for single, 2 for half precision)
+ *     (3 ints)</li>
+ *     <li>For each element: identifier, parent identifier (length -1 if absent), granularity (int), and compare flag
+ *     (byte). Strings are stored as UTF-8 prefixed with their length in bytes (int).</li>
+ *     <li>Padding to a multiple of 4 bytes</li>
+ *     <li>All vectors, row-major as floats or IEEE 754 half-precision floats</li>
+ * </ol>
+ * The stored identifiers, parents, granularities, and compare flags are checked against the elements when loading.
+ */
+public final class PersistentVectorIndex {
+    /**
+     * Name of the directory (inside the cache directory) that contains the index files.
+     */
+    public static final String DIRECTORY_NAME = "vector-index";
+
+    private static final Logger logger = LoggerFactory.getLogger(PersistentVectorIndex.class);
+    private static final int MAGIC = 0x4C564958; // "LVIX"
+    private static final int VERSION = 2;
+    private static final String FILE_ENDING = ".vectors";
+
+    /**
+     * Maximum size of a mapped chunk of vectors, as a buffer cannot be larger than 2 GiB.
+     */
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+
+    /**
+     * Size of the buffer the vectors are written through.
+     */
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    private final Path directory;
+    private final int maxChunkBytes;
+
+    /**
+     * Creates a new index that stores its files in the given directory.
+     *
+     * @param directory The directory of the index files, created if it does not exist
+     */
+    public PersistentVectorIndex(Path directory) {
+        this(directory, MAX_CHUNK_BYTES);
+    }
+
+    /**
+     * Creates a new index that maps the vectors in chunks of at most the given size.
+     *
+     * @param directory The directory of the index files, created if it does not exist
+     * @param maxChunkBytes The maximum size of a mapped chunk in bytes
+     */
+    PersistentVectorIndex(Path directory, int maxChunkBytes) {
+        this.directory = Objects.requireNonNull(directory);
+        this.maxChunkBytes = maxChunkBytes;
+    }
+
+    /**
+     * Loads the embeddings of the elements from the index file for the model and elements.
+     * If there is no such file (or it cannot be read), the embeddings are calculated and written to a new file.
+     * <p>
+     * The returned matrix reads the vectors from the memory-mapped file (in chunks of up to 1 GiB), so they are not
+     * copied to the heap. Only if the file cannot be written, the calculated embeddings are kept on the heap.
+     *
+     * @param modelIdentifier Identifies the embedding model and all of its options that affect the vectors
+     * @param elements The elements to get the embeddings for
+     * @param calculator Calculates the embeddings of the elements if they are not persisted
+     * @return The embeddings, row {@code i} belongs to {@code elements.get(i)}
+     */
+    public EmbeddingMatrix loadOrCalculate(
+            String modelIdentifier, List<Element> elements, Function<List<Element>, List<float[]>> calculator) {
+        return loadOrCalculate(modelIdentifier, elements, calculator, false);
+    }
+
+    /**
+     * Loads the embeddings of the elements from the index file for the model and elements, optionally in half
+     * precision. A half-precision index stores two bytes per value and is mapped as a half-precision matrix
+     * (see {@link EmbeddingMatrix#mappedHalfPrecision(ShortBuffer[], int, int)}).
+     *
+     * @param modelIdentifier Identifies the embedding model and all of its options that affect the vectors
+     * @param elements The elements to get the embeddings for
+     * @param calculator Calculates the embeddings of the elements if they are not persisted
+     * @param halfPrecision Whether the vectors are stored in half precision
+     * @return The embeddings, row {@code i} belongs to {@code elements.get(i)}
+     * @see #loadOrCalculate(String, List, Function)
+     */
+    public EmbeddingMatrix loadOrCalculate(
+            String modelIdentifier,
+            List<Element> elements,
+            Function<List<Element>, List<float[]>> calculator,
+            boolean halfPrecision) {
+        Path file = directory.resolve(hash(modelIdentifier, elements) + FILE_ENDING);
+        int bytesPerValue = halfPrecision ? Short.BYTES : Float.BYTES;
+
+        Optional<EmbeddingMatrix> persisted = load(file, elements, bytesPerValue);
+        if (persisted.isPresent()) {
+            logger.info("Loaded {} embeddings from vector index {}", elements.size(), file);
+            return persisted.get();
+        }
+
+        List<float[]> embeddings = calculator.apply(elements);
+        try {
+            write(file, elements, embeddings, bytesPerValue);
+            logger.info("Wrote {} embeddings to vector index {}", elements.size(), file);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Could not write vector index {}: {}", file, e.getMessage());
+            return onHeap(embeddings, halfPrecision);
+        }
+        return load(file, elements, bytesPerValue).orElseGet(() -> onHeap(embeddings, halfPrecision));
+    }
+
+    private static EmbeddingMatrix onHeap(List<float[]> embeddings, boolean halfPrecision) {
+        return halfPrecision ? EmbeddingMatrix.ofHalfPrecision(embeddings) : EmbeddingMatrix.of(embeddings);
+    }
+
+    private Optional<EmbeddingMatrix> load(Path file, List<Element> elements, int bytesPerValue) {
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The header is read from a mapping of (at most) the first 2 GiB, the vectors are mapped in chunks
+            MappedByteBuffer header = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), Integer.MAX_VALUE));
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            int dimensions = readHeader(header, elements, bytesPerValue);
+            if (dimensions < 0) {
+                return Optional.empty();
+            }
+            long vectorsStart = align((long) header.position());
+            long bytesPerRow = (long) dimensions * bytesPerValue;
+            if (channel.size() != vectorsStart + elements.size() * bytesPerRow) {
+                logger.warn("Vector index {} has an unexpected size", file);
+                return Optional.empty();
+            }
+            if (elements.isEmpty()) {
+                return Optional.of(onHeap(List.of(), bytesPerValue == Short.BYTES));
+            }
+            return Optional.of(mapVectors(channel, vectorsStart, elements.size(), dimensions, bytesPerValue));
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            logger.warn("Could not read vector index {}: {}", file, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private EmbeddingMatrix mapVectors(
+            FileChannel channel, long vectorsStart, int rows, int dimensions, int bytesPerValue) throws IOException {
+        long bytesPerRow = (long) dimensions * bytesPerValue;
+        int rowsPerChunk = (int) Math.max(1, Math.min(rows, maxChunkBytes / bytesPerRow));
+        if (bytesPerRow * rowsPerChunk > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A vector of " + dimensions + " dimensions cannot be mapped.");
+        }
+        ByteBuffer[] chunks = new ByteBuffer[(rows + rowsPerChunk - 1) / rowsPerChunk];
+        for (int i = 0; i < chunks.length; i++) {
+            int chunkRows = Math.min(rowsPerChunk, rows - i * rowsPerChunk);
+            chunks[i] = channel.map(
+                            FileChannel.MapMode.READ_ONLY,
+                            vectorsStart + i * rowsPerChunk * bytesPerRow,
+                            chunkRows * bytesPerRow)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (bytesPerValue == Short.BYTES) {
+            ShortBuffer[] halfChunks = new ShortBuffer[chunks.length];
+            for (int i = 0; i < chunks.length; i++) {
+                halfChunks[i] = chunks[i].asShortBuffer();
+            }
+            return EmbeddingMatrix.mappedHalfPrecision(halfChunks, rowsPerChunk, dimensions);
+        }
+        FloatBuffer[] floatChunks = new FloatBuffer[chunks.length];
+        for (int i = 0; i < chunks.length; i++) {
+            floatChunks[i] = chunks[i].asFloatBuffer();
+        }
+        return EmbeddingMatrix.mapped(floatChunks, rowsPerChunk, dimensions);
+    }
+
+    /**
+     * Reads and checks the header of an index file.
+     *
+     * @return The number of dimensions, or -1 if the header does not belong to the elements or the precision
+     */
+    private static int readHeader(ByteBuffer buffer, List<Element> elements, int bytesPerValue) {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            logger.warn("Vector index has an unknown format");
+            return -1;
+        }
+        int count = buffer.getInt();
+        int dimensions = buffer.getInt();
+        int storedBytesPerValue = buffer.getInt();
+        if (storedBytesPerValue != bytesPerValue) {
+            logger.warn("Vector index stores {} instead of {} bytes per value", storedBytesPerValue, bytesPerValue);
+            return -1;
+        }
+        if (count != elements.size()) {
+            logger.warn("Vector index contains {} instead of {} elements", count, elements.size());
+            return -1;
+        }
+        if (dimensions <= 0 && count > 0) {
+            logger.warn("Vector index has invalid dimensions {}", dimensions);
+            return -1;
+        }
+
+        for (Element element : elements) {
+            boolean matches = Objects.equals(element.getIdentifier(), readString(buffer))
+                    && Objects.equals(element.getParentId(), readString(buffer))
+                    && element.getGranularity() == buffer.getInt()
+                    && element.isCompare() == (buffer.get() != 0);
+            if (!matches) {
+                logger.warn("Vector index does not match element {}", element.getIdentifier());
+                return -1;
+            }
+        }
+        return dimensions;
+    }
+
+    private static void write(Path file, List<Element> elements, List<float[]> embeddings, int bytesPerValue)
+            throws IOException {
+        if (elements.size() != embeddings.size()) {
+            throw new IllegalArgumentException("The number of elements and embeddings must be equal.");
+        }
+        int dimensions = embeddings.isEmpty() ? 0 : embeddings.getFirst().length;
+        for (float[] embedding : embeddings) {
+            if (embedding.length != dimensions) {
+                throw new IllegalArgumentException("All embeddings must have the same number of dimensions.");
+            }
+        }
+
+        List<byte @Nullable []> identifiers = new ArrayList<>(elements.size() * 2);
+        long headerSize = 5L * Integer.BYTES;
+        for (Element element : elements) {
+            byte[] identifier = element.getIdentifier().getBytes(StandardCharsets.UTF_8);
+            byte @Nullable [] parentId =
+                    element.getParentId() == null ? null : element.getParentId().getBytes(StandardCharsets.UTF_8);
+            identifiers.add(identifier);
+            identifiers.add(parentId);
+            headerSize += 3L * Integer.BYTES + 1 + identifier.length + (parentId == null ? 0 : parentId.length);
+        }
+        if (align(headerSize) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The header of the vector index would be too large.");
+        }
+
+        ByteBuffer header = ByteBuffer.allocate((int) align(headerSize)).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(elements.size()).putInt(dimensions).putInt(bytesPerValue);
+        for (int i = 0; i < elements.size(); i++) {
+            writeString(header, identifiers.get(2 * i));
+            writeString(header, identifiers.get(2 * i + 1));
+            header.putInt(elements.get(i).getGranularity());
+            header.put((byte) (elements.get(i).isCompare() ? 1 : 0));
+        }
+        header.rewind();
+
+        // Write to a temporary file first, so concurrent processes never see a partially written index
+        Files.createDirectories(directoryOf(file));
+        Path temporaryFile = Files.createTempFile(directoryOf(file), file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+                writeFully(channel, header);
+                // The vectors are written through a small buffer, so the file may be larger than the heap
+                ByteBuffer buffer = ByteBuffer.allocate(Math.max(WRITE_BUFFER_BYTES, dimensions * bytesPerValue))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                for (float[] embedding : embeddings) {
+                    if (buffer.remaining() < dimensions * bytesPerValue) {
+                        writeFully(channel, buffer.flip());
+                        buffer.clear();
+                    }
+                    for (float value : embedding) {
+                        if (bytesPerValue == Short.BYTES) {
+                            buffer.putShort(Float.floatToFloat16(value));
+                        } else {
+                            buffer.putFloat(value);
+                        }
+                    }
+                }
+                writeFully(channel, buffer.flip());
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static Path directoryOf(Path file) {
+        return file.toAbsolutePath().getParent();
+    }
+
+    private static @Nullable String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(ByteBuffer buffer, byte @Nullable [] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static long align(long position) {
+        return (position + Float.BYTES - 1) / Float.BYTES * Float.BYTES;
+    }
+
+    private static String hash(String modelIdentifier, List<Element> elements) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        update(digest, modelIdentifier);
+        for (Element element : elements) {
+            update(digest, element.getIdentifier());
+            update(digest, element.getType());
+            update(digest, element.getContent());
+            update(digest, String.valueOf(element.getGranularity()));
+            update(digest, String.valueOf(element.getParentId()));
+            update(digest, String.valueOf(element.isCompare()));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        // Prefix with the length, so that different splits of the same characters result in different hashes
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+}
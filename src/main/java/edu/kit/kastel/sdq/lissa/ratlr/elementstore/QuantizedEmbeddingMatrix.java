@@ -0,0 +1,151 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore;
+
+/**
+ * An immutable, int8-quantized copy of an {@link EmbeddingMatrix}.
+ * Each value is stored in a single byte, so the matrix needs a quarter of the memory (and memory bandwidth)
+ * of the full-precision matrix.
+ * <p>
+ * Every vector is quantized with its own scale and offset (its minimum value): value {@code v} is stored as
+ * {@code round((v - offset) / scale) - 128}, so that the 256 codes span the range of the vector.
+ * Dot products with a full-precision query are computed directly on the codes:
+ * {@code q · v ≈ offset * sum(q) + scale * (q · codes + 128 * sum(q))}.
+ * The results are approximations and should be rescored with the full-precision vectors where exact values matter.
+ * <p>
+ * The codes are stored in chunks of up to 1 GiB, so the matrix is not limited by the maximum size of an array.
+ */
+public final class QuantizedEmbeddingMatrix {
+    private static final int CODE_OFFSET = 128;
+    private static final int MAX_CODE = 255;
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+
+    /**
+     * The codes of all rows, row-major in chunks of {@link #rowsPerChunk} rows.
+     */
+    private final byte[][] codes;
+
+    private final int rowsPerChunk;
+    private final float[] scales;
+    private final float[] offsets;
+    private final double[] norms;
+    private final int dimensions;
+
+    private QuantizedEmbeddingMatrix(
+            byte[][] codes, int rowsPerChunk, float[] scales, float[] offsets, double[] norms, int dimensions) {
+        this.codes = codes;
+        this.rowsPerChunk = rowsPerChunk;
+        this.scales = scales;
+        this.offsets = offsets;
+        this.norms = norms;
+        this.dimensions = dimensions;
+    }
+
+    /**
+     * Quantizes all rows of a matrix.
+     *
+     * @param matrix The full-precision matrix
+     * @return The quantized matrix, row {@code i} corresponds to row {@code i} of the given matrix
+     */
+    public static QuantizedEmbeddingMatrix of(EmbeddingMatrix matrix) {
+        int rows = matrix.rows();
+        int dimensions = matrix.dimensions();
+        int rowsPerChunk = Math.max(1, Math.min(rows, MAX_CHUNK_BYTES / Math.max(1, dimensions)));
+        byte[][] codes = new byte[(rows + rowsPerChunk - 1) / rowsPerChunk][];
+        for (int chunk = 0; chunk < codes.length; chunk++) {
+            codes[chunk] = new byte[Math.min(rowsPerChunk, rows - chunk * rowsPerChunk) * dimensions];
+        }
+        float[] scales = new float[rows];
+        float[] offsets = new float[rows];
+        double[] norms = new double[rows];
+
+        for (int row = 0; row < rows; row++) {
+            byte[] chunk = codes[row / rowsPerChunk];
+            int target = (row % rowsPerChunk) * dimensions;
+            float[] vector = matrix.copyOfRow(row);
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            for (float value : vector) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            float scale = max > min ? (max - min) / MAX_CODE : 0f;
+            scales[row] = scale;
+            offsets[row] = dimensions == 0 ? 0f : min;
+
+            double norm = 0.0;
+            for (int i = 0; i < dimensions; i++) {
+                int code = scale == 0f ? 0 : Math.round((vector[i] - min) / scale);
+                code = Math.clamp(code, 0, MAX_CODE);
+                chunk[target + i] = (byte) (code - CODE_OFFSET);
+                double dequantized = min + (double) scale * code;
+                norm += dequantized * dequantized;
+            }
+            norms[row] = Math.sqrt(norm);
+        }
+        return new QuantizedEmbeddingMatrix(codes, rowsPerChunk, scales, offsets, norms, dimensions);
+    }
+
+    /**
+     * Returns the number of rows of this matrix.
+     *
+     * @return The number of rows
+     */
+    public int rows() {
+        return scales.length;
+    }
+
+    /**
+     * Returns the number of dimensions of each row.
+     *
+     * @return The number of dimensions
+     */
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Returns the norm of the dequantized vector of a row.
+     *
+     * @param row The row
+     * @return The euclidean norm of the row
+     */
+    public double norm(int row) {
+        return norms[row];
+    }
+
+    /**
+     * Computes the approximate dot product of a full-precision query with a row.
+     *
+     * @param row The row
+     * @param query The query vector with {@link #dimensions()} values
+     * @param querySum The sum of all values of the query vector
+     * @param codeProduct Computes the dot product of the query and the codes of the row, e.g., with SIMD instructions
+     * @return The dot product of the query with the dequantized row
+     * @throws IllegalArgumentException If the length of the query does not match the dimensions of the matrix
+     */
+    public double dotProduct(int row, float[] query, double querySum, CodeProduct codeProduct) {
+        if (query.length != dimensions) {
+            throw new IllegalArgumentException("The length of the query vector and the element vector must be equal.");
+        }
+        double product =
+                codeProduct.dotProduct(query, codes[row / rowsPerChunk], (row % rowsPerChunk) * dimensions);
+        return offsets[row] * querySum + scales[row] * (product + CODE_OFFSET * querySum);
+    }
+
+    /**
+     * Computes the dot product of a query and the codes of a row of a {@link QuantizedEmbeddingMatrix}.
+     */
+    @FunctionalInterface
+    public interface CodeProduct {
+        /**
+         * Computes the dot product of {@code query} and {@code codes[offset .. offset + query.length)}.
+         * Implementations must not modify the arrays.
+         *
+         * @param query The query vector
+         * @param codes The codes of the chunk of rows that contains the row
+         * @param offset The offset of the first code of the row
+         * @return The dot product
+         */
+        double dotProduct(float[] query, byte[] codes, int offset);
+    }
+}
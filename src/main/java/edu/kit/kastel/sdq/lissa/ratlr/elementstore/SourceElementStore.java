@@ -35,7 +35,7 @@ public class SourceElementStore extends ElementStore {
      * @return List of all elements
      */
     public List<Element> getAllElements() {
-        return getAllElementsIntern(false).stream().map(Pair::first).toList();
+        return getElementsIntern(false);
     }
 
     /**
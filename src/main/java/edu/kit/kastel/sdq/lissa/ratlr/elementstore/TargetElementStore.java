@@ -7,8 +7,11 @@ import java.util.List;
 import org.jetbrains.annotations.NotNull;
 
 import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy.CosineSimilarity;
 import edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy.RetrievalStrategy;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy.SimilaritySearch;
 import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.ElementIndex;
 import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
 import org.jspecify.annotations.Nullable;
 
@@ -28,14 +31,68 @@ public class TargetElementStore extends ElementStore {
      */
     private @Nullable final RetrievalStrategy retrievalStrategy;
 
+    /**
+     * The search prepared by the {@link #retrievalStrategy} for the elements of this store.
+     * Null until the store is set up.
+     */
+    private @Nullable SimilaritySearch similaritySearch;
+
+    /**
+     * Whether the embeddings of this store should be persisted in a {@link PersistentVectorIndex}.
+     * Enabled by default for a quantized {@link CosineSimilarity} search, which only reads the full-precision vectors
+     * for rescoring, so that they are mapped from the index instead of being kept on the heap.
+     */
+    private final boolean persistentIndex;
+
     public TargetElementStore(ModuleConfiguration moduleConfiguration) {
         super(moduleConfiguration, true);
         this.retrievalStrategy = RetrievalStrategy.createStrategy(moduleConfiguration);
+        boolean quantized = retrievalStrategy instanceof CosineSimilarity cosineSimilarity
+                && cosineSimilarity.isQuantized();
+        this.persistentIndex = moduleConfiguration.argumentAsBoolean("persistent_index", quantized);
     }
 
     public TargetElementStore(List<Pair<Element, float[]>> content, @NotNull RetrievalStrategy retrievalStrategy) {
         super(content, retrievalStrategy);
         this.retrievalStrategy = retrievalStrategy;
+        this.persistentIndex = false;
+        prepareSimilaritySearch();
+    }
+
+    private TargetElementStore(
+            List<Element> elements, EmbeddingMatrix embeddings, @NotNull RetrievalStrategy retrievalStrategy) {
+        super(elements, embeddings);
+        this.retrievalStrategy = retrievalStrategy;
+        this.persistentIndex = false;
+        prepareSimilaritySearch();
+    }
+
+    /**
+     * Checks whether the embeddings of this store should be loaded from (and persisted in) a
+     * {@link PersistentVectorIndex} instead of being calculated on every run.
+     *
+     * @return true if the {@code persistent_index} argument of the store is set
+     */
+    public boolean usesPersistentIndex() {
+        return persistentIndex;
+    }
+
+    /**
+     * Initializes the store and lets the retrieval strategy prepare its search (e.g., build its index) once.
+     *
+     * @param elements List of elements to store
+     * @param embeddings The embeddings, row {@code i} belongs to {@code elements.get(i)}
+     * @throws IllegalStateException If the store is already initialized
+     * @throws IllegalArgumentException If the number of elements and embeddings don't match
+     */
+    @Override
+    public void setup(List<Element> elements, EmbeddingMatrix embeddings) {
+        super.setup(elements, embeddings);
+        prepareSimilaritySearch();
+    }
+
+    private void prepareSimilaritySearch() {
+        this.similaritySearch = retrievalStrategy.prepare(getElementsIntern(true), getEmbeddingsIntern(true));
     }
 
     /**
@@ -54,24 +111,30 @@ public class TargetElementStore extends ElementStore {
      * @return List of all elements
      */
     public List<Element> getAllElements() {
-        return getAllElementsIntern(false).stream().map(Pair::first).toList();
+        return getElementsIntern(false);
     }
 
     /**
      * Retrieves a subset of this target store that corresponds to the source store.
      * This method finds all elements in this target store that are similar to the elements in the source store.
+     * The embeddings of the new store are a {@link EmbeddingMatrix#select(int[]) view} of the embeddings of this
+     * store, so they keep their backing storage (e.g., mapped or half precision) and are not copied.
      *
      * @param sourceStore The training source element store
      * @return A new ElementStore containing only the target elements that correspond to the source elements
      */
     public TargetElementStore reduceTargetElementStore(SourceElementStore sourceStore) {
-        List<Pair<Element, float[]>> reducedTargetElements = new ArrayList<>();
-        for (var element : sourceStore.getAllElements(true)) {
-            for (Element candidate : this.findSimilar(element)) {
-                reducedTargetElements.add(this.getById(candidate.getIdentifier()));
-            }
+        List<Element> reducedElements = new ArrayList<>();
+        for (List<Element> candidates : this.findSimilarBatch(sourceStore.getAllElements(true))) {
+            reducedElements.addAll(candidates);
         }
-        return new TargetElementStore(reducedTargetElements, this.retrievalStrategy);
+        ElementIndex index = getElementIndex();
+        int[] reducedRows = new int[reducedElements.size()];
+        for (int i = 0; i < reducedRows.length; i++) {
+            reducedRows[i] = index.indexOf(reducedElements.get(i).getIdentifier());
+        }
+        return new TargetElementStore(
+                reducedElements, getEmbeddingsIntern(false).select(reducedRows), this.retrievalStrategy);
     }
 
     /**
@@ -92,6 +155,41 @@ public class TargetElementStore extends ElementStore {
      * @return List of pairs containing similar elements and their similarity scores
      */
     public List<Pair<Element, Float>> findSimilarWithDistances(Pair<Element, float[]> query) {
-        return retrievalStrategy.findSimilarElements(query, getAllElementsIntern(true));
+        if (similaritySearch == null) {
+            // Store is not set up yet, so there is nothing to find
+            return List.of();
+        }
+        return similaritySearch.findSimilar(query);
+    }
+
+    /**
+     * Finds elements similar to each of the given queries at once.
+     * This is equivalent to calling {@link #findSimilar(Pair)} for each query, but lets the retrieval strategy
+     * process all queries in a single pass over the store.
+     *
+     * @param queries The elements and vectors to find similar elements for
+     * @return For each query (in the same order), the list of similar elements, sorted by similarity
+     */
+    public final List<List<Element>> findSimilarBatch(List<Pair<Element, float[]>> queries) {
+        List<List<Element>> results = new ArrayList<>(queries.size());
+        for (List<Pair<Element, Float>> similarElements : findSimilarBatchWithDistances(queries)) {
+            results.add(similarElements.stream().map(Pair::first).toList());
+        }
+        return results;
+    }
+
+    /**
+     * Finds elements similar to each of the given queries at once, including their similarity scores.
+     *
+     * @param queries The elements and vectors to find similar elements for
+     * @return For each query (in the same order), pairs of similar elements and their similarity scores
+     * @see #findSimilarBatch(List)
+     */
+    public List<List<Pair<Element, Float>>> findSimilarBatchWithDistances(List<Pair<Element, float[]>> queries) {
+        if (similaritySearch == null) {
+            // Store is not set up yet, so there is nothing to find
+            return queries.stream().<List<Pair<Element, Float>>>map(query -> List.of()).toList();
+        }
+        return similaritySearch.findSimilarBatch(queries);
     }
 }
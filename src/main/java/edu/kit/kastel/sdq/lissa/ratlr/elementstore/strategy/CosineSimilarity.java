@@ -3,8 +3,16 @@ package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.EmbeddingMatrix;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.QuantizedEmbeddingMatrix;
 import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
 import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
 
@@ -13,6 +21,22 @@ import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
  * vectors of elements in the store. This strategy is used for finding similar elements
  * based on their vector embeddings.
  * It supports a configurable maximum number of results to return.
+ * <p>
+ * When prepared for a store, the norms of all element vectors are computed once and the most similar elements
+ * are selected with a bounded heap instead of sorting all similarities.
+ * With the {@code pre_normalize} argument, all vectors are normalized once instead, so that the similarity
+ * becomes a plain dot product. This is faster, but the similarities may differ in the last bits
+ * from the ones computed without normalization.
+ * <p>
+ * With the {@code quantization} argument set to {@value #INT8_QUANTIZATION}, the queries are compared with an
+ * int8-{@link QuantizedEmbeddingMatrix quantized} copy of the vectors. The best
+ * {@code max_results * rescore_factor} candidates of this approximate search are rescored with the full-precision
+ * vectors, so the returned similarities are exact, but the most similar elements may occasionally be missed.
+ * The full-precision vectors are only read for rescoring; to keep them off the heap, the target store maps them from
+ * its {@link edu.kit.kastel.sdq.lissa.ratlr.elementstore.PersistentVectorIndex} by default.
+ * <p>
+ * The dot products are computed with the {@link DotProductKernel#fastest() fastest available kernel}, which uses SIMD
+ * instructions if the JVM is started with {@code --add-modules jdk.incubator.vector}.
  */
 public class CosineSimilarity implements RetrievalStrategy {
     /**
@@ -21,49 +45,442 @@ public class CosineSimilarity implements RetrievalStrategy {
      */
     public static final String MAX_RESULTS_INFINITY_ARGUMENT = "infinity";
 
+    /**
+     * Value of the {@code quantization} argument that enables the search on int8-quantized vectors.
+     */
+    public static final String INT8_QUANTIZATION = "int8";
+
+    private static final String NO_QUANTIZATION = "none";
+
+    private static final DotProductKernel KERNEL = DotProductKernel.fastest();
+
+    private static final Logger logger = LoggerFactory.getLogger(CosineSimilarity.class);
+
     private final int maxResults;
+    private final boolean preNormalize;
+    private final boolean quantize;
+    private final int rescoreFactor;
 
     public CosineSimilarity(ModuleConfiguration configuration) {
+        this.maxResults = maxResults(configuration);
+        this.preNormalize = configuration.argumentAsBoolean("pre_normalize", false);
+
+        String quantization = configuration.argumentAsString("quantization", NO_QUANTIZATION);
+        if (!quantization.equalsIgnoreCase(NO_QUANTIZATION) && !quantization.equalsIgnoreCase(INT8_QUANTIZATION)) {
+            throw new IllegalArgumentException("Unknown quantization: " + quantization);
+        }
+        this.quantize = quantization.equalsIgnoreCase(INT8_QUANTIZATION);
+        this.rescoreFactor = configuration.argumentAsInt("rescore_factor", 4);
+        if (rescoreFactor < 1) {
+            throw new IllegalArgumentException("The rescore factor must be greater than 0.");
+        }
+        if (quantize && preNormalize) {
+            throw new IllegalArgumentException("Quantization cannot be combined with pre_normalize.");
+        }
+    }
+
+    /**
+     * Reads the maximum number of results from the {@code max_results} argument of the configuration.
+     *
+     * @param configuration The configuration of the retrieval strategy
+     * @return The maximum number of results, {@link Integer#MAX_VALUE} for {@value #MAX_RESULTS_INFINITY_ARGUMENT}
+     * @throws IllegalArgumentException If the maximum number of results is less than 1
+     */
+    static int maxResults(ModuleConfiguration configuration) {
         final String maxResultsKey = "max_results";
         boolean isInfinity = configuration.hasArgument(maxResultsKey)
                 && configuration.argumentAsString(maxResultsKey).equalsIgnoreCase(MAX_RESULTS_INFINITY_ARGUMENT);
 
         if (isInfinity) {
-            this.maxResults = Integer.MAX_VALUE;
-        } else {
-            this.maxResults = configuration.argumentAsInt(maxResultsKey, 10);
-            if (maxResults < 1) {
-                throw new IllegalArgumentException("The maximum number of results must be greater than 0.");
-            }
+            return Integer.MAX_VALUE;
         }
+        int maxResults = configuration.argumentAsInt(maxResultsKey, 10);
+        if (maxResults < 1) {
+            throw new IllegalArgumentException("The maximum number of results must be greater than 0.");
+        }
+        return maxResults;
+    }
+
+    /**
+     * Checks whether the queries are compared with int8-quantized vectors.
+     *
+     * @return true if the {@code quantization} argument is {@value #INT8_QUANTIZATION}
+     */
+    public boolean isQuantized() {
+        return quantize;
     }
 
     @Override
     public List<Pair<Element, Float>> findSimilarElements(
             Pair<Element, float[]> query, List<Pair<Element, float[]>> allElementsInStore) {
-        List<Pair<Element, Float>> similarElements = new ArrayList<>();
-        for (var element : allElementsInStore) {
-            float[] elementVector = element.second();
-            float similarity = cosineSimilarity(query.second(), elementVector);
-            similarElements.add(new Pair<>(element.first(), similarity));
+        float[] queryVector = query.second();
+        double queryNorm = norm(queryVector, 0, queryVector.length);
+
+        TopKSelector selector = new TopKSelector(Math.min(maxResults, allElementsInStore.size()));
+        for (int row = 0; row < allElementsInStore.size(); row++) {
+            float[] elementVector = allElementsInStore.get(row).second();
+            checkDimensions(queryVector, elementVector.length);
+            double elementNorm = norm(elementVector, 0, elementVector.length);
+            selector.offer(row, cosineSimilarity(dotProduct(queryVector, elementVector, 0), queryNorm, elementNorm));
         }
-        similarElements.sort((a, b) -> Float.compare(b.second(), a.second()));
-        return similarElements.subList(0, Math.min(maxResults, similarElements.size()));
+        return mostSimilar(selector, row -> allElementsInStore.get(row).first());
     }
 
-    private float cosineSimilarity(float[] queryVector, float[] elementVector) {
-        if (queryVector.length != elementVector.length) {
+    @Override
+    public List<Pair<Element, Float>> findSimilarElements(
+            Pair<Element, float[]> query, List<Element> elements, EmbeddingMatrix embeddings) {
+        return prepare(elements, embeddings).findSimilar(query);
+    }
+
+    @Override
+    public SimilaritySearch prepare(List<Element> elements, EmbeddingMatrix embeddings) {
+        if (elements.size() != embeddings.rows()) {
+            throw new IllegalArgumentException("The number of elements and embeddings must be equal.");
+        }
+        if (quantize) {
+            return new QuantizedSearch(elements, embeddings);
+        }
+        return preNormalize
+                ? new NormalizedSearch(elements, embeddings)
+                : new CosineSearch(elements, embeddings);
+    }
+
+    private static List<Pair<Element, Float>> mostSimilar(TopKSelector selector, IntFunction<Element> elementOfRow) {
+        selector.sortBestFirst();
+        List<Pair<Element, Float>> similarElements = new ArrayList<>(selector.size());
+        for (int i = 0; i < selector.size(); i++) {
+            similarElements.add(new Pair<>(elementOfRow.apply(selector.row(i)), selector.score(i)));
+        }
+        return similarElements;
+    }
+
+    private static void checkDimensions(float[] queryVector, int length) {
+        if (queryVector.length != length) {
             throw new IllegalArgumentException("The length of the query vector and the element vector must be equal.");
         }
+    }
+
+    private static double dotProduct(float[] queryVector, float[] data, int offset) {
+        return KERNEL.dotProduct(queryVector, data, offset);
+    }
+
+    private static double sum(float[] vector) {
+        double sum = 0.0;
+        for (float value : vector) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    private static double norm(float[] data, int offset, int length) {
+        double norm = 0.0;
+        for (int i = 0; i < length; i++) {
+            norm += Math.pow(data[offset + i], 2);
+        }
+        return Math.sqrt(norm);
+    }
+
+    private static float cosineSimilarity(double dotProduct, double queryNorm, double elementNorm) {
+        return (float) (dotProduct / (queryNorm * elementNorm));
+    }
+
+    /**
+     * A query vector prepared for a search. Evaluated on a row, it yields the dot product with the query.
+     * The sum of the vector is only needed for the search on quantized vectors and is 0 otherwise.
+     */
+    private record PreparedQuery(float[] vector, double norm, double sum) implements EmbeddingMatrix.RowFunction {
+        @Override
+        public double apply(float[] data, int offset, int length) {
+            return dotProduct(vector, data, offset);
+        }
+
+        @Override
+        public double applyHalf(short[] data, int offset, int length) {
+            return KERNEL.dotProduct(vector, data, offset);
+        }
+    }
+
+    /**
+     * Base class of the exhaustive searches that compare each query with every row of a matrix.
+     * <p>
+     * A batch of queries is compared with the matrix block-wise: A block of queries is compared with a block of rows
+     * that fits into the CPU cache before moving on to the next block of rows. Blocks of queries are processed in
+     * parallel in the common fork-join pool. Each similarity is computed exactly like for a single query,
+     * so the results of {@link #findSimilarBatch(List)} and {@link #findSimilar(Pair)} are identical.
+     */
+    private abstract class MatrixSearch implements SimilaritySearch {
+        /**
+         * Number of queries that are compared with a block of rows at once.
+         */
+        private static final int QUERY_BLOCK_SIZE = 32;
+
+        /**
+         * Size of a block of rows in bytes, chosen to fit into the L2 cache.
+         */
+        private static final int ROW_BLOCK_BYTES = 256 * 1024;
+
+        protected final List<Element> elements;
+
+        protected MatrixSearch(List<Element> elements) {
+            this.elements = elements;
+        }
+
+        /**
+         * Returns the number of dimensions of the vectors the queries are compared with.
+         */
+        protected abstract int dimensions();
+
+        /**
+         * Returns the number of bytes used to store a row, which determines the size of the row blocks.
+         */
+        protected abstract int bytesPerRow();
+
+        /**
+         * Prepares the vector of a query for the comparison with the rows.
+         */
+        protected abstract PreparedQuery prepare(float[] queryVector);
+
+        /**
+         * Computes the similarity of a query and a row.
+         */
+        protected abstract float similarity(PreparedQuery query, int row);
+
+        /**
+         * Returns the number of most similar rows that are selected per query by the comparison with all rows.
+         */
+        protected int candidates() {
+            return Math.min(maxResults, elements.size());
+        }
+
+        /**
+         * Creates the result of a query from the most similar rows selected by the comparison with all rows.
+         */
+        protected List<Pair<Element, Float>> result(PreparedQuery query, TopKSelector selector) {
+            return mostSimilar(selector, elements::get);
+        }
+
+        @Override
+        public List<Pair<Element, Float>> findSimilar(Pair<Element, float[]> query) {
+            PreparedQuery preparedQuery = prepareChecked(query.second());
+            TopKSelector selector = new TopKSelector(candidates());
+            compare(new PreparedQuery[] {preparedQuery}, new TopKSelector[] {selector}, 0, 1, 0, elements.size());
+            return result(preparedQuery, selector);
+        }
 
-        double dotProduct = 0.0;
-        double normA = 0.0;
-        double normB = 0.0;
-        for (int i = 0; i < queryVector.length; i++) {
-            dotProduct += queryVector[i] * elementVector[i];
-            normA += Math.pow(queryVector[i], 2);
-            normB += Math.pow(elementVector[i], 2);
+        @Override
+        public List<List<Pair<Element, Float>>> findSimilarBatch(List<Pair<Element, float[]>> queries) {
+            PreparedQuery[] preparedQueries = new PreparedQuery[queries.size()];
+            TopKSelector[] selectors = new TopKSelector[queries.size()];
+            for (int i = 0; i < queries.size(); i++) {
+                preparedQueries[i] = prepareChecked(queries.get(i).second());
+                selectors[i] = new TopKSelector(candidates());
+            }
+
+            ForkJoinPool.commonPool().invoke(new QueryBlockTask(preparedQueries, selectors, 0, queries.size()));
+
+            List<List<Pair<Element, Float>>> results = new ArrayList<>(queries.size());
+            for (int i = 0; i < queries.size(); i++) {
+                results.add(result(preparedQueries[i], selectors[i]));
+            }
+            return results;
+        }
+
+        private PreparedQuery prepareChecked(float[] queryVector) {
+            if (!elements.isEmpty()) {
+                checkDimensions(queryVector, dimensions());
+            }
+            return prepare(queryVector);
+        }
+
+        /**
+         * Compares the queries {@code [fromQuery, toQuery)} with the rows {@code [fromRow, toRow)} block-wise.
+         */
+        private void compare(
+                PreparedQuery[] queries, TopKSelector[] selectors, int fromQuery, int toQuery, int fromRow, int toRow) {
+            int rowBlockSize = Math.max(1, ROW_BLOCK_BYTES / Math.max(1, bytesPerRow()));
+            for (int rowBlock = fromRow; rowBlock < toRow; rowBlock += rowBlockSize) {
+                int rowBlockEnd = Math.min(toRow, rowBlock + rowBlockSize);
+                for (int q = fromQuery; q < toQuery; q++) {
+                    PreparedQuery query = queries[q];
+                    TopKSelector selector = selectors[q];
+                    for (int row = rowBlock; row < rowBlockEnd; row++) {
+                        selector.offer(row, similarity(query, row));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Splits the queries into blocks of {@link #QUERY_BLOCK_SIZE} that are processed in parallel.
+         */
+        private final class QueryBlockTask extends RecursiveAction {
+            private final transient PreparedQuery[] queries;
+            private final transient TopKSelector[] selectors;
+            private final int fromQuery;
+            private final int toQuery;
+
+            private QueryBlockTask(PreparedQuery[] queries, TopKSelector[] selectors, int fromQuery, int toQuery) {
+                this.queries = queries;
+                this.selectors = selectors;
+                this.fromQuery = fromQuery;
+                this.toQuery = toQuery;
+            }
+
+            @Override
+            protected void compute() {
+                if (toQuery - fromQuery <= QUERY_BLOCK_SIZE) {
+                    compare(queries, selectors, fromQuery, toQuery, 0, elements.size());
+                    return;
+                }
+                int middle = (fromQuery + toQuery) >>> 1;
+                invokeAll(
+                        new QueryBlockTask(queries, selectors, fromQuery, middle),
+                        new QueryBlockTask(queries, selectors, middle, toQuery));
+            }
+        }
+    }
+
+    /**
+     * Search that computes the norms of the element vectors once.
+     */
+    private final class CosineSearch extends MatrixSearch {
+        private final EmbeddingMatrix embeddings;
+        private final double[] norms;
+
+        private CosineSearch(List<Element> elements, EmbeddingMatrix embeddings) {
+            super(elements);
+            this.embeddings = embeddings;
+            this.norms = new double[elements.size()];
+            for (int row = 0; row < norms.length; row++) {
+                norms[row] = embeddings.applyToRow(row, CosineSimilarity::norm);
+            }
+        }
+
+        @Override
+        protected int dimensions() {
+            return embeddings.dimensions();
+        }
+
+        @Override
+        protected int bytesPerRow() {
+            return embeddings.bytesPerRow();
+        }
+
+        @Override
+        protected PreparedQuery prepare(float[] queryVector) {
+            return new PreparedQuery(queryVector, norm(queryVector, 0, queryVector.length), 0.0);
+        }
+
+        @Override
+        protected float similarity(PreparedQuery query, int row) {
+            return cosineSimilarity(embeddings.applyToRow(row, query), query.norm(), norms[row]);
+        }
+    }
+
+    /**
+     * Search on normalized copies of the element vectors, so that the similarity is a dot product.
+     */
+    private final class NormalizedSearch extends MatrixSearch {
+        private final EmbeddingMatrix normalizedEmbeddings;
+
+        private NormalizedSearch(List<Element> elements, EmbeddingMatrix embeddings) {
+            super(elements);
+            List<float[]> normalizedVectors = new ArrayList<>(embeddings.rows());
+            for (int row = 0; row < embeddings.rows(); row++) {
+                normalizedVectors.add(normalize(embeddings.copyOfRow(row)));
+            }
+            this.normalizedEmbeddings = embeddings.isHalfPrecision()
+                    ? EmbeddingMatrix.ofHalfPrecision(normalizedVectors)
+                    : EmbeddingMatrix.of(normalizedVectors);
+        }
+
+        @Override
+        protected int dimensions() {
+            return normalizedEmbeddings.dimensions();
+        }
+
+        @Override
+        protected int bytesPerRow() {
+            return normalizedEmbeddings.bytesPerRow();
+        }
+
+        @Override
+        protected PreparedQuery prepare(float[] queryVector) {
+            return new PreparedQuery(normalize(queryVector.clone()), 1.0, 0.0);
+        }
+
+        @Override
+        protected float similarity(PreparedQuery query, int row) {
+            return (float) normalizedEmbeddings.applyToRow(row, query);
+        }
+
+        private static float[] normalize(float[] vector) {
+            double norm = norm(vector, 0, vector.length);
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = (float) (vector[i] / norm);
+            }
+            return vector;
+        }
+    }
+
+    /**
+     * Search on int8-quantized copies of the element vectors. The candidates of the approximate search are rescored
+     * with the full-precision vectors of the store, computing the similarity exactly like {@link CosineSearch}.
+     * <p>
+     * The search only keeps a reference to the full-precision matrix of the store. If that matrix is
+     * {@link EmbeddingMatrix#isMapped() mapped}, only the codes are kept on the heap.
+     */
+    private final class QuantizedSearch extends MatrixSearch {
+        private final EmbeddingMatrix embeddings;
+        private final QuantizedEmbeddingMatrix quantizedEmbeddings;
+
+        private QuantizedSearch(List<Element> elements, EmbeddingMatrix embeddings) {
+            super(elements);
+            if (!embeddings.isMapped() && !elements.isEmpty()) {
+                logger.warn(
+                        "The full-precision vectors of the quantized search are kept on the heap, enable the "
+                                + "persistent_index of the target store to map them from disk instead.");
+            }
+            this.embeddings = embeddings;
+            this.quantizedEmbeddings = QuantizedEmbeddingMatrix.of(embeddings);
+        }
+
+        @Override
+        protected int dimensions() {
+            return quantizedEmbeddings.dimensions();
+        }
+
+        @Override
+        protected int bytesPerRow() {
+            return quantizedEmbeddings.dimensions();
+        }
+
+        @Override
+        protected PreparedQuery prepare(float[] queryVector) {
+            return new PreparedQuery(queryVector, norm(queryVector, 0, queryVector.length), sum(queryVector));
+        }
+
+        @Override
+        protected float similarity(PreparedQuery query, int row) {
+            double dotProduct = quantizedEmbeddings.dotProduct(row, query.vector(), query.sum(), KERNEL::dotProduct);
+            return cosineSimilarity(dotProduct, query.norm(), quantizedEmbeddings.norm(row));
+        }
+
+        @Override
+        protected int candidates() {
+            long candidates = (long) maxResults * rescoreFactor;
+            return (int) Math.min(candidates, elements.size());
+        }
+
+        @Override
+        protected List<Pair<Element, Float>> result(PreparedQuery query, TopKSelector candidates) {
+            TopKSelector selector = new TopKSelector(Math.min(maxResults, candidates.size()));
+            for (int i = 0; i < candidates.size(); i++) {
+                int row = candidates.row(i);
+                double elementNorm = embeddings.applyToRow(row, CosineSimilarity::norm);
+                selector.offer(row, cosineSimilarity(embeddings.applyToRow(row, query), query.norm(), elementNorm));
+            }
+            return mostSimilar(selector, elements::get);
         }
-        return (float) (dotProduct / (Math.sqrt(normA) * Math.sqrt(normB)));
     }
 }
@@ -0,0 +1,116 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Computes the dot product of a query vector and a vector stored in a larger array, e.g., the backing storage of an
+ * {@link edu.kit.kastel.sdq.lissa.ratlr.elementstore.EmbeddingMatrix EmbeddingMatrix}.
+ * This is the innermost loop of all similarity searches.
+ * <p>
+ * All kernels multiply the components in {@code float} and sum the products in {@code double}.
+ * They only differ in the order in which the products are summed.
+ */
+interface DotProductKernel {
+    /**
+     * Computes the dot product of {@code query} and {@code data[offset .. offset + query.length)}.
+     *
+     * @param query The query vector
+     * @param data The array containing the other vector
+     * @param offset The offset of the first component of the other vector
+     * @return The dot product
+     */
+    double dotProduct(float[] query, float[] data, int offset);
+
+    /**
+     * Computes the dot product of {@code query} and the half-precision vector {@code data[offset .. offset +
+     * query.length)}. The values are converted to single precision on the fly and the products are summed in index
+     * order.
+     *
+     * @param query The query vector
+     * @param data The array containing the other vector as half-precision floats
+     * @param offset The offset of the first component of the other vector
+     * @return The dot product
+     */
+    default double dotProduct(float[] query, short[] data, int offset) {
+        double dotProduct = 0.0;
+        for (int i = 0; i < query.length; i++) {
+            dotProduct += query[i] * Float.float16ToFloat(data[offset + i]);
+        }
+        return dotProduct;
+    }
+
+    /**
+     * Computes the dot product of {@code query} and the int8 codes {@code data[offset .. offset + query.length)},
+     * e.g., of a {@link edu.kit.kastel.sdq.lissa.ratlr.elementstore.QuantizedEmbeddingMatrix
+     * QuantizedEmbeddingMatrix}. The codes are converted to single precision and the products are summed in index
+     * order.
+     *
+     * @param query The query vector
+     * @param data The array containing the codes of the other vector
+     * @param offset The offset of the first code of the other vector
+     * @return The dot product
+     */
+    default double dotProduct(float[] query, byte[] data, int offset) {
+        double dotProduct = 0.0;
+        for (int i = 0; i < query.length; i++) {
+            dotProduct += query[i] * data[offset + i];
+        }
+        return dotProduct;
+    }
+
+    /**
+     * Returns the fastest kernel available in the running JVM.
+     * The SIMD kernel requires the {@code jdk.incubator.vector} module, which has to be enabled with
+     * {@code --add-modules jdk.incubator.vector}. Otherwise, the scalar kernel is used.
+     *
+     * @return The fastest available kernel
+     */
+    static DotProductKernel fastest() {
+        return Holder.FASTEST;
+    }
+
+    /**
+     * Returns the scalar kernel that sums the products in index order.
+     *
+     * @return The scalar kernel
+     */
+    static DotProductKernel scalar() {
+        return ScalarDotProductKernel.INSTANCE;
+    }
+
+    /**
+     * Lazily selects the fastest kernel once.
+     */
+    final class Holder {
+        private static final Logger logger = LoggerFactory.getLogger(DotProductKernel.class);
+        private static final String VECTOR_KERNEL_CLASS = DotProductKernel.class.getPackageName()
+                + ".VectorDotProductKernel";
+        private static final DotProductKernel FASTEST = select();
+
+        private Holder() {
+            throw new IllegalAccessError("Utility class");
+        }
+
+        private static DotProductKernel select() {
+            if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+                logger.info("Vector API not enabled (--add-modules jdk.incubator.vector), using scalar similarity kernel");
+                return scalar();
+            }
+            // Only load the SIMD kernel if the module is present, as it links against the module. It is loaded
+            // reflectively, so that the other classes can be compiled without the incubating module.
+            DotProductKernel kernel;
+            try {
+                kernel = (DotProductKernel) Class.forName(VECTOR_KERNEL_CLASS)
+                        .getDeclaredConstructor()
+                        .newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                logger.warn("Could not load SIMD similarity kernel, using scalar similarity kernel", e);
+                return scalar();
+            }
+            logger.info("Using SIMD similarity kernel ({})", kernel);
+            return kernel;
+        }
+    }
+}
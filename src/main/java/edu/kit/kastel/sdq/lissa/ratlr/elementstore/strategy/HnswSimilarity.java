@@ -0,0 +1,346 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.EmbeddingMatrix;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
+
+/**
+ * A retrieval strategy that performs an approximate nearest neighbor search based on cosine similarity
+ * using a Hierarchical Navigable Small World (HNSW) graph.
+ * <p>
+ * The graph is built once per target store in {@link #prepare(List, EmbeddingMatrix)}. Afterward, each query only
+ * visits a small part of the store instead of scanning all elements. The returned similarity scores are exact
+ * cosine similarities, only the set of returned elements is approximate.
+ * <p>
+ * Configuration arguments:
+ * <ul>
+ *     <li>{@code max_results}: Maximum number of results to return (default: 10, or {@value CosineSimilarity#MAX_RESULTS_INFINITY_ARGUMENT})</li>
+ *     <li>{@code m}: Maximum number of connections per element and layer, layer 0 allows twice as many (default: 16)</li>
+ *     <li>{@code ef_construction}: Size of the candidate list while building the graph (default: 200)</li>
+ *     <li>{@code ef_search}: Size of the candidate list while searching, at least {@code max_results} is used (default: 50)</li>
+ *     <li>{@code seed}: Seed for the random layer assignment, making the graph reproducible (default: 42)</li>
+ * </ul>
+ * If {@code max_results} is at least the number of elements in the store, an exact search is performed.
+ */
+public class HnswSimilarity implements RetrievalStrategy {
+    private static final Logger logger = LoggerFactory.getLogger(HnswSimilarity.class);
+    private static final DotProductKernel KERNEL = DotProductKernel.fastest();
+
+    /**
+     * Orders candidates by descending similarity. Ties are broken by the row, so results are deterministic.
+     */
+    private static final Comparator<Candidate> BEST_FIRST = Comparator.comparingDouble(Candidate::similarity)
+            .reversed()
+            .thenComparingInt(Candidate::row);
+
+    private final int maxResults;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final long seed;
+
+    public HnswSimilarity(ModuleConfiguration configuration) {
+        this.maxResults = CosineSimilarity.maxResults(configuration);
+        this.m = configuration.argumentAsInt("m", 16);
+        this.efConstruction = configuration.argumentAsInt("ef_construction", 200);
+        this.efSearch = configuration.argumentAsInt("ef_search", 50);
+        this.seed = configuration.argumentAsInt("seed", 42);
+
+        if (m < 2) {
+            throw new IllegalArgumentException("The maximum number of connections (m) must be at least 2.");
+        }
+        if (efConstruction < 1 || efSearch < 1) {
+            throw new IllegalArgumentException("ef_construction and ef_search must be greater than 0.");
+        }
+    }
+
+    @Override
+    public List<Pair<Element, Float>> findSimilarElements(
+            Pair<Element, float[]> query, List<Pair<Element, float[]>> allElementsInStore) {
+        List<Element> elements = allElementsInStore.stream().map(Pair::first).toList();
+        EmbeddingMatrix embeddings = EmbeddingMatrix.of(
+                allElementsInStore.stream().map(Pair::second).toList());
+        return findSimilarElements(query, elements, embeddings);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This builds a new graph for every call. Use {@link #prepare(List, EmbeddingMatrix)} to search repeatedly.
+     */
+    @Override
+    public List<Pair<Element, Float>> findSimilarElements(
+            Pair<Element, float[]> query, List<Element> elements, EmbeddingMatrix embeddings) {
+        return prepare(elements, embeddings).findSimilar(query);
+    }
+
+    /**
+     * Builds the HNSW graph for the given elements.
+     *
+     * @param elements The elements to search in
+     * @param embeddings The embeddings of the elements, row {@code i} belongs to {@code elements.get(i)}
+     * @return A search over the given elements backed by the graph
+     */
+    @Override
+    public SimilaritySearch prepare(List<Element> elements, EmbeddingMatrix embeddings) {
+        long start = System.currentTimeMillis();
+        Graph graph = new Graph(elements, embeddings);
+        logger.debug(
+                "Built HNSW graph for {} elements in {} ms", elements.size(), System.currentTimeMillis() - start);
+        return graph;
+    }
+
+    private static double norm(float[] data, int offset, int length) {
+        double norm = 0.0;
+        for (int i = 0; i < length; i++) {
+            norm += Math.pow(data[offset + i], 2);
+        }
+        return Math.sqrt(norm);
+    }
+
+    /**
+     * A vector whose similarity to the rows of the graph is computed. Evaluated on a row, it yields the dot product.
+     */
+    private record Query(float[] vector, double norm) implements EmbeddingMatrix.RowFunction {
+        @Override
+        public double apply(float[] data, int offset, int length) {
+            return KERNEL.dotProduct(vector, data, offset);
+        }
+
+        @Override
+        public double applyHalf(short[] data, int offset, int length) {
+            return KERNEL.dotProduct(vector, data, offset);
+        }
+    }
+
+    private record Candidate(int row, double similarity) {}
+
+    /**
+     * The layered graph over the rows of an {@link EmbeddingMatrix}. It is only modified during construction,
+     * so concurrent searches are safe.
+     */
+    private final class Graph implements SimilaritySearch {
+        private final List<Element> elements;
+        private final EmbeddingMatrix embeddings;
+        private final double[] norms;
+
+        /**
+         * {@code neighbors[row][layer]} contains the first {@code neighborCounts[row][layer]} neighbors of a row.
+         */
+        private final int[][][] neighbors;
+
+        private final int[][] neighborCounts;
+        private int entryPoint = -1;
+        private int topLayer = -1;
+
+        private Graph(List<Element> elements, EmbeddingMatrix embeddings) {
+            if (elements.size() != embeddings.rows()) {
+                throw new IllegalArgumentException("The number of elements and embeddings must be equal.");
+            }
+            this.elements = elements;
+            this.embeddings = embeddings;
+            this.norms = new double[elements.size()];
+            this.neighbors = new int[elements.size()][][];
+            this.neighborCounts = new int[elements.size()][];
+
+            for (int row = 0; row < norms.length; row++) {
+                norms[row] = embeddings.applyToRow(row, HnswSimilarity::norm);
+            }
+
+            Random random = new Random(seed);
+            double levelMultiplier = 1 / Math.log(m);
+            for (int row = 0; row < norms.length; row++) {
+                int layer = (int) Math.floor(-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+                insert(row, layer);
+            }
+        }
+
+        @Override
+        public List<Pair<Element, Float>> findSimilar(Pair<Element, float[]> query) {
+            if (elements.isEmpty()) {
+                return new ArrayList<>();
+            }
+            if (query.second().length != embeddings.dimensions()) {
+                throw new IllegalArgumentException(
+                        "The length of the query vector and the element vector must be equal.");
+            }
+
+            float[] vector = query.second();
+            Query preparedQuery = new Query(vector, norm(vector, 0, vector.length));
+
+            List<Candidate> candidates;
+            if (maxResults >= elements.size()) {
+                candidates = new ArrayList<>(elements.size());
+                for (int row = 0; row < elements.size(); row++) {
+                    candidates.add(new Candidate(row, similarity(preparedQuery, row)));
+                }
+                candidates.sort(BEST_FIRST);
+            } else {
+                int current = entryPoint;
+                for (int layer = topLayer; layer > 0; layer--) {
+                    current = greedySearch(preparedQuery, current, layer);
+                }
+                candidates = searchLayer(preparedQuery, current, Math.max(efSearch, maxResults), 0);
+            }
+
+            List<Pair<Element, Float>> similarElements = new ArrayList<>(Math.min(maxResults, candidates.size()));
+            for (int i = 0; i < Math.min(maxResults, candidates.size()); i++) {
+                Candidate candidate = candidates.get(i);
+                similarElements.add(new Pair<>(elements.get(candidate.row()), (float) candidate.similarity()));
+            }
+            return similarElements;
+        }
+
+        /**
+         * Searches for the queries in parallel using the common fork-join pool, as the graph is not modified after
+         * it was built.
+         */
+        @Override
+        public List<List<Pair<Element, Float>>> findSimilarBatch(List<Pair<Element, float[]>> queries) {
+            // The parallel stream is ordered, so the results keep the order of the queries
+            return queries.parallelStream().map(this::findSimilar).toList();
+        }
+
+        private void insert(int row, int layer) {
+            neighbors[row] = new int[layer + 1][];
+            neighborCounts[row] = new int[layer + 1];
+            for (int l = 0; l <= layer; l++) {
+                neighbors[row][l] = new int[maxConnections(l)];
+            }
+
+            if (entryPoint < 0) {
+                entryPoint = row;
+                topLayer = layer;
+                return;
+            }
+
+            Query query = new Query(embeddings.copyOfRow(row), norms[row]);
+            int current = entryPoint;
+            for (int l = topLayer; l > layer; l--) {
+                current = greedySearch(query, current, l);
+            }
+            for (int l = Math.min(layer, topLayer); l >= 0; l--) {
+                List<Candidate> nearest = searchLayer(query, current, efConstruction, l);
+                for (int i = 0; i < Math.min(m, nearest.size()); i++) {
+                    int neighbor = nearest.get(i).row();
+                    neighbors[row][l][neighborCounts[row][l]++] = neighbor;
+                    addNeighbor(neighbor, row, l);
+                }
+                current = nearest.getFirst().row();
+            }
+
+            if (layer > topLayer) {
+                entryPoint = row;
+                topLayer = layer;
+            }
+        }
+
+        /**
+         * Adds a neighbor to a row. If the row already has the maximum number of neighbors,
+         * only the most similar ones are kept.
+         */
+        private void addNeighbor(int row, int neighbor, int layer) {
+            int[] rowNeighbors = neighbors[row][layer];
+            int count = neighborCounts[row][layer];
+            if (count < rowNeighbors.length) {
+                rowNeighbors[count] = neighbor;
+                neighborCounts[row][layer]++;
+                return;
+            }
+
+            Query query = new Query(embeddings.copyOfRow(row), norms[row]);
+            List<Candidate> candidates = new ArrayList<>(count + 1);
+            for (int i = 0; i < count; i++) {
+                candidates.add(new Candidate(rowNeighbors[i], similarity(query, rowNeighbors[i])));
+            }
+            candidates.add(new Candidate(neighbor, similarity(query, neighbor)));
+            candidates.sort(BEST_FIRST);
+            for (int i = 0; i < rowNeighbors.length; i++) {
+                rowNeighbors[i] = candidates.get(i).row();
+            }
+        }
+
+        /**
+         * Moves from the start row to the most similar neighbor as long as this improves the similarity.
+         */
+        private int greedySearch(Query query, int start, int layer) {
+            Candidate current = new Candidate(start, similarity(query, start));
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int[] currentNeighbors = neighbors[current.row()][layer];
+                for (int i = 0; i < neighborCounts[current.row()][layer]; i++) {
+                    Candidate candidate = new Candidate(currentNeighbors[i], similarity(query, currentNeighbors[i]));
+                    if (BEST_FIRST.compare(candidate, current) < 0) {
+                        current = candidate;
+                        changed = true;
+                    }
+                }
+            }
+            return current.row();
+        }
+
+        /**
+         * Searches the given layer for the {@code ef} rows most similar to the query, starting at the given row.
+         *
+         * @return The found rows, most similar first
+         */
+        private List<Candidate> searchLayer(Query query, int start, int ef, int layer) {
+            BitSet visited = new BitSet();
+            visited.set(start);
+            Candidate first = new Candidate(start, similarity(query, start));
+
+            PriorityQueue<Candidate> candidates = new PriorityQueue<>(BEST_FIRST);
+            PriorityQueue<Candidate> results = new PriorityQueue<>(BEST_FIRST.reversed());
+            candidates.add(first);
+            results.add(first);
+
+            while (!candidates.isEmpty()) {
+                Candidate closest = candidates.poll();
+                if (results.size() >= ef && BEST_FIRST.compare(closest, results.peek()) > 0) {
+                    break;
+                }
+                int[] closestNeighbors = neighbors[closest.row()][layer];
+                for (int i = 0; i < neighborCounts[closest.row()][layer]; i++) {
+                    int neighbor = closestNeighbors[i];
+                    if (visited.get(neighbor)) {
+                        continue;
+                    }
+                    visited.set(neighbor);
+                    Candidate candidate = new Candidate(neighbor, similarity(query, neighbor));
+                    if (results.size() < ef || BEST_FIRST.compare(candidate, results.peek()) < 0) {
+                        candidates.add(candidate);
+                        results.add(candidate);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+
+            List<Candidate> nearest = new ArrayList<>(results);
+            nearest.sort(BEST_FIRST);
+            return nearest;
+        }
+
+        private double similarity(Query query, int row) {
+            return embeddings.applyToRow(row, query) / (query.norm() * norms[row]);
+        }
+
+        private int maxConnections(int layer) {
+            return layer == 0 ? 2 * m : m;
+        }
+    }
+}
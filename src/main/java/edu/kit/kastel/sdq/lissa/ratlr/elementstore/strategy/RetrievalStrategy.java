@@ -1,12 +1,14 @@
 /* Licensed under MIT 2025. */
 package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.EmbeddingMatrix;
 import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
 import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
 
@@ -16,9 +18,43 @@ public interface RetrievalStrategy {
     List<Pair<Element, Float>> findSimilarElements(
             Pair<Element, float[]> query, List<Pair<Element, float[]>> allElementsInStore);
 
+    /**
+     * Finds the elements most similar to the query within elements whose embeddings are stored in a contiguous matrix.
+     * The default implementation copies every row and delegates to {@link #findSimilarElements(Pair, List)}.
+     * Strategies should override this method to work on the matrix directly.
+     *
+     * @param query The element and vector to find similar elements for
+     * @param elements The elements to search in
+     * @param embeddings The embeddings of the elements, row {@code i} belongs to {@code elements.get(i)}
+     * @return List of pairs containing similar elements and their similarity scores, sorted by similarity
+     */
+    default List<Pair<Element, Float>> findSimilarElements(
+            Pair<Element, float[]> query, List<Element> elements, EmbeddingMatrix embeddings) {
+        List<Pair<Element, float[]>> allElementsInStore = new ArrayList<>(elements.size());
+        for (int row = 0; row < elements.size(); row++) {
+            allElementsInStore.add(new Pair<>(elements.get(row), embeddings.copyOfRow(row)));
+        }
+        return findSimilarElements(query, allElementsInStore);
+    }
+
+    /**
+     * Prepares this strategy for repeated searches in a fixed set of elements.
+     * This is called once when a target store is set up, so strategies can build their index structures here.
+     * The default implementation does not precompute anything and delegates every search to
+     * {@link #findSimilarElements(Pair, List, EmbeddingMatrix)}.
+     *
+     * @param elements The elements to search in
+     * @param embeddings The embeddings of the elements, row {@code i} belongs to {@code elements.get(i)}
+     * @return A search over the given elements
+     */
+    default SimilaritySearch prepare(List<Element> elements, EmbeddingMatrix embeddings) {
+        return query -> findSimilarElements(query, elements, embeddings);
+    }
+
     static RetrievalStrategy createStrategy(ModuleConfiguration configuration) {
         return switch (configuration.name()) {
             case "cosine_similarity" -> new CosineSimilarity(configuration);
+            case "hnsw" -> new HnswSimilarity(configuration);
             case "custom" -> {
                 logger.warn("For backwards compatibility: Using cosine similarity as default retrieval strategy.");
                 yield new CosineSimilarity(configuration);
@@ -0,0 +1,25 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
+
+/**
+ * Dot product kernel that sums the products in index order.
+ */
+final class ScalarDotProductKernel implements DotProductKernel {
+    static final ScalarDotProductKernel INSTANCE = new ScalarDotProductKernel();
+
+    private ScalarDotProductKernel() {}
+
+    @Override
+    public double dotProduct(float[] query, float[] data, int offset) {
+        double dotProduct = 0.0;
+        for (int i = 0; i < query.length; i++) {
+            dotProduct += query[i] * data[offset + i];
+        }
+        return dotProduct;
+    }
+
+    @Override
+    public String toString() {
+        return "scalar";
+    }
+}
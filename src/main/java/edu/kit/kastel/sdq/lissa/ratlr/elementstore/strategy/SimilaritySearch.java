@@ -0,0 +1,43 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
+
+/**
+ * A similarity search over a fixed set of elements, created by {@link RetrievalStrategy#prepare}.
+ * Implementations may hold precomputed data (e.g., an index) for the elements they search in.
+ * <p>
+ * Searches are not required to be thread-safe: the default {@link #findSimilarBatch(List)} searches one query after
+ * another, so custom {@link RetrievalStrategy} implementations are never called concurrently through it.
+ * Built-in searches whose state is read-only after preparation override it to search in parallel.
+ */
+@FunctionalInterface
+public interface SimilaritySearch {
+    /**
+     * Finds the elements most similar to the query.
+     *
+     * @param query The element and vector to find similar elements for
+     * @return List of pairs containing similar elements and their similarity scores, sorted by similarity
+     */
+    List<Pair<Element, Float>> findSimilar(Pair<Element, float[]> query);
+
+    /**
+     * Finds the elements most similar to each of the queries.
+     * The default implementation searches for the queries sequentially.
+     * Implementations may override this to share work between the queries or to search them in parallel.
+     *
+     * @param queries The elements and vectors to find similar elements for
+     * @return For each query (in the same order), the similar elements and their similarity scores, sorted by similarity
+     */
+    default List<List<Pair<Element, Float>>> findSimilarBatch(List<Pair<Element, float[]>> queries) {
+        List<List<Pair<Element, Float>>> results = new ArrayList<>(queries.size());
+        for (Pair<Element, float[]> query : queries) {
+            results.add(findSimilar(query));
+        }
+        return results;
+    }
+}
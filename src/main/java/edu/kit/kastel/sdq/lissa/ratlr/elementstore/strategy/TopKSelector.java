@@ -0,0 +1,117 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
+
+/**
+ * Selects the rows with the highest scores using a fixed-size binary min-heap on primitive arrays.
+ * This avoids sorting (and boxing) all scores when only the best {@code k} are needed.
+ * <p>
+ * Scores are compared with {@link Float#compare(float, float)}. Ties are broken by the row, with lower rows ranking
+ * higher. Thus, the selection is identical to the first {@code k} rows of a stable descending sort of all scores
+ * in row order.
+ */
+final class TopKSelector {
+    private final int[] rows;
+    private final float[] scores;
+    private int size;
+
+    /**
+     * Creates a selector for the best {@code k} rows.
+     *
+     * @param k The maximum number of rows to select, must not be negative
+     */
+    TopKSelector(int k) {
+        this.rows = new int[k];
+        this.scores = new float[k];
+    }
+
+    /**
+     * Offers a row with its score. The row is kept if it is among the best {@code k} rows offered so far.
+     *
+     * @param row The row
+     * @param score The score of the row
+     */
+    void offer(int row, float score) {
+        if (size < rows.length) {
+            rows[size] = row;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (size > 0 && isWorse(rows[0], scores[0], row, score)) {
+            rows[0] = row;
+            scores[0] = score;
+            siftDown(0, size);
+        }
+    }
+
+    /**
+     * Returns the number of selected rows.
+     *
+     * @return The number of selected rows
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Sorts the selected rows, best first. Afterward, {@link #row(int)} and {@link #score(int)} return the
+     * selected rows in that order. No more rows may be offered after sorting.
+     */
+    void sortBestFirst() {
+        // Heap sort on the min-heap moves the worst remaining row to the end in each step
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    int row(int index) {
+        return rows[index];
+    }
+
+    float score(int index) {
+        return scores[index];
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!isWorse(rows[index], scores[index], rows[parent], scores[parent])) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index, int heapSize) {
+        while (true) {
+            int worst = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < heapSize && isWorse(rows[left], scores[left], rows[worst], scores[worst])) {
+                worst = left;
+            }
+            if (right < heapSize && isWorse(rows[right], scores[right], rows[worst], scores[worst])) {
+                worst = right;
+            }
+            if (worst == index) {
+                return;
+            }
+            swap(index, worst);
+            index = worst;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int row = rows[i];
+        rows[i] = rows[j];
+        rows[j] = row;
+        float score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+
+    private static boolean isWorse(int row, float score, int otherRow, float otherScore) {
+        int comparison = Float.compare(score, otherScore);
+        return comparison < 0 || (comparison == 0 && row > otherRow);
+    }
+}
@@ -0,0 +1,86 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
+
+import org.jspecify.annotations.Nullable;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Dot product kernel based on the Vector API ({@code jdk.incubator.vector}).
+ * The products are computed in {@code float} lanes exactly like in the {@link ScalarDotProductKernel}.
+ * They are widened and summed in {@code double} lanes, so only the summation order differs from the scalar kernel.
+ * <p>
+ * Do not reference this class unless the {@code jdk.incubator.vector} module is present, see
+ * {@link DotProductKernel#fastest()}.
+ */
+final class VectorDotProductKernel implements DotProductKernel {
+    private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Double> DOUBLE_SPECIES =
+            VectorSpecies.of(double.class, FLOAT_SPECIES.vectorShape());
+    /**
+     * Species of int8 codes with as many lanes as {@link #FLOAT_SPECIES}, or null if there is no such shape (for
+     * float vectors of less than 256 bits), in which case the codes are multiplied by the scalar default.
+     */
+    private static final @Nullable VectorSpecies<Byte> BYTE_SPECIES = FLOAT_SPECIES.length() * Byte.SIZE >= 64
+            ? VectorSpecies.of(byte.class, VectorShape.forBitSize(FLOAT_SPECIES.length() * Byte.SIZE))
+            : null;
+
+    @Override
+    public double dotProduct(float[] query, float[] data, int offset) {
+        int length = query.length;
+        int upperBound = FLOAT_SPECIES.loopBound(length);
+
+        // Two accumulators, one for the lower and one for the upper half of the float lanes
+        DoubleVector lower = DoubleVector.zero(DOUBLE_SPECIES);
+        DoubleVector upper = DoubleVector.zero(DOUBLE_SPECIES);
+        int i = 0;
+        for (; i < upperBound; i += FLOAT_SPECIES.length()) {
+            FloatVector products = FloatVector.fromArray(FLOAT_SPECIES, query, i)
+                    .mul(FloatVector.fromArray(FLOAT_SPECIES, data, offset + i));
+            lower = lower.add(products.convertShape(VectorOperators.F2D, DOUBLE_SPECIES, 0));
+            upper = upper.add(products.convertShape(VectorOperators.F2D, DOUBLE_SPECIES, 1));
+        }
+
+        double dotProduct = lower.add(upper).reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            dotProduct += query[i] * data[offset + i];
+        }
+        return dotProduct;
+    }
+
+    @Override
+    public double dotProduct(float[] query, byte[] data, int offset) {
+        if (BYTE_SPECIES == null) {
+            return DotProductKernel.super.dotProduct(query, data, offset);
+        }
+        int length = query.length;
+        int upperBound = FLOAT_SPECIES.loopBound(length);
+
+        DoubleVector lower = DoubleVector.zero(DOUBLE_SPECIES);
+        DoubleVector upper = DoubleVector.zero(DOUBLE_SPECIES);
+        int i = 0;
+        for (; i < upperBound; i += FLOAT_SPECIES.length()) {
+            FloatVector codes = (FloatVector) ByteVector.fromArray(BYTE_SPECIES, data, offset + i)
+                    .convertShape(VectorOperators.B2F, FLOAT_SPECIES, 0);
+            FloatVector products = FloatVector.fromArray(FLOAT_SPECIES, query, i).mul(codes);
+            lower = lower.add(products.convertShape(VectorOperators.F2D, DOUBLE_SPECIES, 0));
+            upper = upper.add(products.convertShape(VectorOperators.F2D, DOUBLE_SPECIES, 1));
+        }
+
+        double dotProduct = lower.add(upper).reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            dotProduct += query[i] * data[offset + i];
+        }
+        return dotProduct;
+    }
+
+    @Override
+    public String toString() {
+        return "vector, " + FLOAT_SPECIES.length() + " float lanes";
+    }
+}
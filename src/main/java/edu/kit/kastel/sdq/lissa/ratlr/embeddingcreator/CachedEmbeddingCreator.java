@@ -3,21 +3,29 @@ package edu.kit.kastel.sdq.lissa.ratlr.embeddingcreator;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import org.jspecify.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.knuddels.jtokkit.Encodings;
 import com.knuddels.jtokkit.api.Encoding;
 import com.knuddels.jtokkit.api.EncodingRegistry;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.knuddels.jtokkit.api.IntArrayList;
 
 import edu.kit.kastel.sdq.lissa.ratlr.cache.Cache;
 import edu.kit.kastel.sdq.lissa.ratlr.cache.CacheManager;
 import edu.kit.kastel.sdq.lissa.ratlr.cache.ClassifierCacheKey;
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
 import edu.kit.kastel.sdq.lissa.ratlr.context.ContextStore;
 import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
 import edu.kit.kastel.sdq.lissa.ratlr.utils.Futures;
 
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 
 /**
@@ -26,6 +34,7 @@ import dev.langchain4j.model.embedding.EmbeddingModel;
  * <ul>
  *     <li>Multi-threaded embedding generation</li>
  *     <li>Automatic caching of embeddings to improve performance</li>
+ *     <li>Batching of multiple contents into one request to the embedding model</li>
  *     <li>Handling of long texts through token length management</li>
  *     <li>Fallback mechanisms for failed embedding generation</li>
  * </ul>
@@ -33,20 +42,53 @@ import dev.langchain4j.model.embedding.EmbeddingModel;
  * The class uses a cache to store previously generated embeddings and implements
  * a sophisticated mechanism to handle texts that exceed the maximum token length
  * of the underlying embedding model.
+ * <p>
+ * The cache is consulted for all elements first. Only the elements without a cached embedding are sent to the
+ * embedding model, grouped into batches of at most {@code batch_size} elements and {@code max_tokens_per_batch}
+ * tokens. The default batch size of 1 sends one request per element. With {@code length_bucketing}, the batches are
+ * formed from elements of similar token length to reduce the padding of local models.
+ * <p>
+ * Elements with identical content share one embedding, and a content that is being embedded by one thread is never
+ * requested again by another thread at the same time.
+ * <p>
+ * With multiple threads, each thread uses its own instance of the embedding model and pulls pending batches
+ * one at a time. The number of requests sent at the same time can be limited further with
+ * {@code max_concurrent_requests}, which must not exceed the number of threads.
  */
 abstract class CachedEmbeddingCreator extends EmbeddingCreator {
-    // TODO Handle Token Length better .. 8192 is the length for ada
-    private static final int MAX_TOKEN_LENGTH = 8000;
+    /** Default maximum number of tokens of a content, 8192 is the length for ada */
+    private static final int DEFAULT_MAX_TOKENS = 8000;
+
+    /** Default maximum number of tokens of all contents in one batch */
+    private static final int DEFAULT_MAX_TOKENS_PER_BATCH = 100_000;
+
+    /** Default number of retries of a request that was rejected because of the rate limit of the provider */
+    private static final int DEFAULT_RATE_LIMIT_RETRIES = 5;
 
-    private static final Logger STATIC_LOGGER = LoggerFactory.getLogger(CachedEmbeddingCreator.class);
     protected final Logger logger = LoggerFactory.getLogger(this.getClass());
     private final Cache cache;
     private final EmbeddingModel embeddingModel;
     private final String rawNameOfModel;
+    private final String[] params;
     private final int threads;
+    private final RequestLimiter limiter;
+    private final int batchSize;
+    private final int maxTokensPerBatch;
+    private final boolean lengthBucketing;
+    private final int maxTokens;
+    private final ChunkPooling chunkPooling;
+    private final boolean halfPrecision;
+    private volatile @Nullable Encoding encoding;
+
+    /**
+     * The contents (by local cache key) that are currently embedded by a call of
+     * {@link #calculateEmbeddings(List)}, so that concurrent calls do not request the same content again.
+     */
+    private final ConcurrentMap<String, CompletableFuture<float[]>> inFlight = new ConcurrentHashMap<>();
 
     /**
      * Creates a new cached embedding creator with the specified model and thread count.
+     * Each element is sent to the embedding model in a separate request.
      *
      * @param contextStore The shared context store for pipeline components
      * @param model The name of the embedding model to use
@@ -54,11 +96,116 @@ abstract class CachedEmbeddingCreator extends EmbeddingCreator {
      * @param params Additional parameters for the embedding model
      */
     protected CachedEmbeddingCreator(ContextStore contextStore, String model, int threads, String... params) {
+        this(
+                contextStore,
+                model,
+                threads,
+                new Options(
+                        threads,
+                        false,
+                        0,
+                        0,
+                        DEFAULT_RATE_LIMIT_RETRIES,
+                        1,
+                        DEFAULT_MAX_TOKENS_PER_BATCH,
+                        false,
+                        DEFAULT_MAX_TOKENS,
+                        ChunkPooling.NONE,
+                        false,
+                        false),
+                params);
+    }
+
+    /**
+     * Creates a new cached embedding creator with the specified model and thread count.
+     * The batching and concurrency of requests is read from the configuration:
+     * <ul>
+     *     <li>{@code max_concurrent_requests}: The maximum number of requests sent at the same time, at most the
+     *     number of threads (default: the number of threads)</li>
+     *     <li>{@code adaptive_concurrency}: Whether the number of concurrent requests adapts to the latency and rate
+     *     limit errors of the provider, up to {@code max_concurrent_requests} (default: false)</li>
+     *     <li>{@code requests_per_minute}: The maximum number of requests per minute, 0 for no limit (default: 0)</li>
+     *     <li>{@code tokens_per_minute}: The maximum number of tokens per minute, 0 for no limit (default: 0)</li>
+     *     <li>{@code rate_limit_retries}: How often a request rejected because of the rate limit is retried
+     *     (default: 5)</li>
+     *     <li>{@code batch_size}: The maximum number of elements per request (default: 1)</li>
+     *     <li>{@code max_tokens_per_batch}: The maximum number of tokens of all elements of a request
+     *     (default: 100000)</li>
+     *     <li>{@code length_bucketing}: Whether to batch elements of similar token length (default: false)</li>
+     *     <li>{@code max_tokens}: The maximum number of tokens of a content accepted by the model (default: 8000)</li>
+     *     <li>{@code chunk_pooling}: How contents with more than {@code max_tokens} tokens are embedded:
+     *     {@code none} truncates them after the model rejected them, {@code mean} and {@code max} split them into
+     *     windows of {@code max_tokens} tokens and pool the embeddings of the windows (default: none)</li>
+     *     <li>{@code cache_format}: {@code json} stores the embeddings in the regular cache, {@code binary} in a
+     *     binary file next to it (see {@link CacheManager#getEmbeddingCache(Object, String[], boolean)})
+     *     (default: json)</li>
+     *     <li>{@code precision}: {@code float32} or {@code float16}. In half precision, the embeddings are rounded
+     *     to half precision, stored as such in a binary cache, and kept as such in the element stores
+     *     (default: float32)</li>
+     * </ul>
+     *
+     * @param configuration The configuration of the embedding creator
+     * @param contextStore The shared context store for pipeline components
+     * @param model The name of the embedding model to use
+     * @param threads The number of threads to use for parallel embedding generation
+     * @param params Additional parameters for the embedding model
+     * @throws IllegalArgumentException If the concurrency limit, the batch size, or a token limit is less than 1,
+     *                                  the concurrency limit exceeds the number of threads, a budget is negative,
+     *                                  or the chunk pooling, cache format, or precision is unknown
+     */
+    protected CachedEmbeddingCreator(
+            ModuleConfiguration configuration, ContextStore contextStore, String model, int threads, String... params) {
+        this(
+                contextStore,
+                model,
+                threads,
+                new Options(
+                        configuration.argumentAsInt("max_concurrent_requests", Math.max(1, threads)),
+                        configuration.argumentAsBoolean("adaptive_concurrency", false),
+                        configuration.argumentAsInt("requests_per_minute", 0),
+                        configuration.argumentAsInt("tokens_per_minute", 0),
+                        configuration.argumentAsInt("rate_limit_retries", DEFAULT_RATE_LIMIT_RETRIES),
+                        configuration.argumentAsInt("batch_size", 1),
+                        configuration.argumentAsInt("max_tokens_per_batch", DEFAULT_MAX_TOKENS_PER_BATCH),
+                        configuration.argumentAsBoolean("length_bucketing", false),
+                        configuration.argumentAsInt("max_tokens", DEFAULT_MAX_TOKENS),
+                        ChunkPooling.of(configuration.argumentAsString("chunk_pooling", "none")),
+                        isBinaryCache(configuration.argumentAsString("cache_format", "json")),
+                        isHalfPrecision(configuration.argumentAsString("precision", "float32"))),
+                params);
+    }
+
+    private CachedEmbeddingCreator(
+            ContextStore contextStore, String model, int threads, Options options, String... params) {
         super(contextStore);
-        this.cache = CacheManager.getDefaultInstance().getCache(this, new String[] {model});
+        if (options.batchSize() < 1 || options.maxTokensPerBatch() < 1 || options.maxTokens() < 1) {
+            throw new IllegalArgumentException("The batch size and the token limits must be greater than 0.");
+        }
+        if (options.maxConcurrentRequests() > Math.max(1, threads)) {
+            // Each thread sends one request at a time, so a higher limit would never be reached
+            throw new IllegalArgumentException("The maximum number of concurrent requests must not exceed the number "
+                    + "of threads (" + Math.max(1, threads) + ").");
+        }
+        this.cache = options.binaryCache()
+                ? CacheManager.getDefaultInstance()
+                        .getEmbeddingCache(this, new String[] {model}, options.halfPrecision())
+                : CacheManager.getDefaultInstance().getCache(this, new String[] {model});
         this.embeddingModel = Objects.requireNonNull(createEmbeddingModel(model, params));
         this.rawNameOfModel = model;
+        this.params = params.clone();
         this.threads = Math.max(1, threads);
+        this.limiter = new RequestLimiter(
+                options.maxConcurrentRequests(),
+                options.adaptiveConcurrency(),
+                options.requestsPerMinute(),
+                options.tokensPerMinute(),
+                options.rateLimitRetries());
+        this.batchSize = options.batchSize();
+        this.maxTokensPerBatch = options.maxTokensPerBatch();
+        this.lengthBucketing = options.lengthBucketing();
+        this.maxTokens = options.maxTokens();
+        this.chunkPooling = options.chunkPooling();
+        this.halfPrecision = options.halfPrecision();
     }
 
     /**
@@ -73,75 +220,505 @@ abstract class CachedEmbeddingCreator extends EmbeddingCreator {
     protected abstract EmbeddingModel createEmbeddingModel(String model, String... params);
 
     /**
-     * Calculates embeddings for a list of elements, using either sequential or parallel processing
-     * based on the configured thread count.
+     * Returns an identifier of the model and of all options that change the embeddings: the maximum number of tokens
+     * (at which long contents are truncated or split), the chunk pooling, and the precision.
+     * Options with their default value are omitted.
+     *
+     * @return The identifier of the embeddings created by this creator
+     */
+    @Override
+    public String getModelIdentifier() {
+        StringBuilder identifier = new StringBuilder(getClass().getSimpleName()).append('_').append(rawNameOfModel);
+        if (maxTokens != DEFAULT_MAX_TOKENS) {
+            identifier.append("_max").append(maxTokens);
+        }
+        if (chunkPooling != ChunkPooling.NONE) {
+            identifier.append('_').append(chunkPooling).append("_pooling");
+        }
+        if (halfPrecision) {
+            identifier.append("_float16");
+        }
+        return identifier.toString();
+    }
+
+    @Override
+    public boolean usesHalfPrecision() {
+        return halfPrecision;
+    }
+
+    /**
+     * Calculates embeddings for a list of elements.
+     * Elements with identical content are only embedded once. The cache is consulted for all distinct contents first,
+     * with a single bulk lookup of their plain keys. Only the contents that are not cached are tokenized (if the
+     * token counts are needed for chunking, batching, or the token budget), once per content. Contents that are
+     * embedded in chunks are then looked up under their chunked key.
+     * The remaining contents are grouped into batches, which are processed sequentially or in parallel based on the
+     * configured thread count. Contents that are currently embedded by another call are not requested again,
+     * but awaited.
      *
      * @param elements The list of elements to create embeddings for
      * @return A list of vector embeddings, in the same order as the input elements
      */
     @Override
     public final List<float[]> calculateEmbeddings(List<Element> elements) {
-        if (threads == 1) return calculateEmbeddingsSequential(elements);
+        List<ClassifierCacheKey> keys = new ArrayList<>(elements.size());
+        float[][] embeddings = new float[elements.size()][];
+        // Maps each element to the first element with the same content
+        int[] representatives = new int[elements.size()];
+        Map<String, Integer> firstElementByKey = HashMap.newHashMap(elements.size());
+        List<Integer> distinct = new ArrayList<>();
+        for (int i = 0; i < elements.size(); i++) {
+            ClassifierCacheKey cacheKey = cacheKey(elements.get(i));
+            keys.add(cacheKey);
+            Integer firstElement = firstElementByKey.putIfAbsent(cacheKey.localKey(), i);
+            representatives[i] = firstElement == null ? i : firstElement;
+            if (representatives[i] == i) {
+                distinct.add(i);
+            }
+        }
 
-        int threadCount = Math.min(threads, elements.size());
-        int numberOfElementsPerThread = elements.size() / threadCount;
-        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
-        List<Future<List<float[]>>> futureResults = new ArrayList<>();
+        List<Integer> misses = lookUp(keys, distinct, embeddings);
+        if (!misses.isEmpty()) {
+            PendingContents contents = new PendingContents(elements, keys, new int[elements.size()], new HashMap<>());
+            misses = tokenizeMisses(contents, misses, embeddings);
+            if (!misses.isEmpty()) {
+                calculateMisses(contents, misses, embeddings);
+            }
+        }
 
-        for (int i = 0; i < threadCount; i++) {
-            int start = i * numberOfElementsPerThread;
-            int end = i == threadCount - 1 ? elements.size() : (i + 1) * numberOfElementsPerThread;
-            List<Element> subList = elements.subList(start, end);
-            futureResults.add(executor.submit(() -> {
-                var embeddingModelInstance = createEmbeddingModel(this.rawNameOfModel);
-                return calculateEmbeddingsSequential(embeddingModelInstance, subList);
-            }));
+        if (halfPrecision) {
+            // Cache hits and misses must be rounded alike, as only a binary cache stores rounded values.
+            // The arrays may be shared with concurrent calls, so they are copied.
+            for (int i = 0; i < elements.size(); i++) {
+                if (representatives[i] == i) {
+                    embeddings[i] = roundToHalfPrecision(embeddings[i]);
+                }
+            }
         }
-        logger.info("Waiting for classification to finish. Elements in queue: {}", futureResults.size());
 
-        try {
-            executor.shutdown();
-            boolean success = executor.awaitTermination(1, TimeUnit.DAYS);
-            if (!success) {
-                logger.error("Embedding did not finish in time.");
+        int duplicates = 0;
+        for (int i = 0; i < elements.size(); i++) {
+            if (representatives[i] != i) {
+                embeddings[i] = embeddings[representatives[i]].clone();
+                duplicates++;
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
         }
+        if (duplicates > 0) {
+            logger.debug("Reused {} embeddings of elements with identical content", duplicates);
+        }
+        return Arrays.asList(embeddings);
+    }
 
-        executor.close();
+    /**
+     * Looks up the embeddings of the given elements with a single bulk lookup and stores the cached ones in the
+     * given array.
+     *
+     * @param keys The cache keys of all elements
+     * @param indices The indices of the elements to look up
+     * @param embeddings The embeddings of all elements, filled for the cached elements
+     * @return The indices of the elements that are not cached
+     */
+    private List<Integer> lookUp(List<ClassifierCacheKey> keys, List<Integer> indices, float[][] embeddings) {
+        List<ClassifierCacheKey> lookups = new ArrayList<>(indices.size());
+        for (int index : indices) {
+            lookups.add(keys.get(index));
+        }
+        Map<ClassifierCacheKey, float[]> cached = cache.getAll(lookups, float[].class);
+        List<Integer> misses = new ArrayList<>();
+        for (int index : indices) {
+            embeddings[index] = cached.get(keys.get(index));
+            if (embeddings[index] == null) {
+                misses.add(index);
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * Counts the tokens of the contents that are not cached under their plain key, if the counts are needed for
+     * chunking, batching, or the token budget. Each content is tokenized once. Contents that exceed
+     * {@link #maxTokens} with chunk pooling keep their tokens for the windows and are looked up again under their
+     * chunked key.
+     *
+     * @param contents The contents to embed, whose token counts and chunked keys are filled for the misses
+     * @param misses The indices of the elements that are not cached under their plain key
+     * @param embeddings The embeddings of all elements, filled for the contents cached under their chunked key
+     * @return The indices of the elements that still have to be embedded
+     */
+    private List<Integer> tokenizeMisses(PendingContents contents, List<Integer> misses, float[][] embeddings) {
+        boolean chunking = chunkPooling != ChunkPooling.NONE;
+        if (!chunking && batchSize == 1 && !limiter.limitsTokens()) {
+            return misses;
+        }
+
+        Encoding tokenizer = tokenEncoding();
+        List<Integer> chunked = new ArrayList<>();
+        for (int index : misses) {
+            Element element = contents.elements().get(index);
+            if (!chunking) {
+                contents.tokens()[index] = tokenizer.countTokens(element.getContent());
+                continue;
+            }
+            IntArrayList tokens = tokenizer.encode(element.getContent());
+            contents.tokens()[index] = tokens.size();
+            if (tokens.size() > maxTokens) {
+                contents.chunkTokens().put(index, tokens);
+                contents.keys().set(index, chunkedCacheKey(element));
+                chunked.add(index);
+            }
+        }
+        if (chunked.isEmpty()) {
+            return misses;
+        }
 
-        return futureResults.stream()
-                .map(f -> Futures.getLogged(f, logger))
-                .flatMap(Collection::stream)
-                .toList();
+        Set<Integer> chunkedMisses = new HashSet<>(lookUp(contents.keys(), chunked, embeddings));
+        List<Integer> remaining = new ArrayList<>(misses.size());
+        for (int index : misses) {
+            if (!contents.isChunked(index) || chunkedMisses.contains(index)) {
+                remaining.add(index);
+            } else {
+                contents.chunkTokens().remove(index);
+            }
+        }
+        return remaining;
     }
 
     /**
-     * Calculates embeddings sequentially using the default embedding model.
+     * Calculates the embeddings of elements that are not cached and stores them in the given array.
+     * Contents that are already being embedded by a concurrent call are awaited instead of requested again.
      *
-     * @param elements The list of elements to create embeddings for
-     * @return A list of vector embeddings
+     * @param contents The contents to embed
+     * @param misses The indices of the elements to embed, with distinct contents
+     * @param embeddings The embeddings of all elements, filled for the misses
      */
-    private List<float[]> calculateEmbeddingsSequential(List<Element> elements) {
-        return this.calculateEmbeddingsSequential(this.embeddingModel, elements);
+    private void calculateMisses(PendingContents contents, List<Integer> misses, float[][] embeddings) {
+        List<ClassifierCacheKey> keys = contents.keys();
+        List<Integer> owned = new ArrayList<>(misses.size());
+        Map<Integer, CompletableFuture<float[]>> ownedFutures = HashMap.newHashMap(misses.size());
+        Map<Integer, CompletableFuture<float[]>> awaited = new HashMap<>();
+        for (int index : misses) {
+            CompletableFuture<float[]> future = new CompletableFuture<>();
+            CompletableFuture<float[]> running = inFlight.putIfAbsent(keys.get(index).localKey(), future);
+            if (running == null) {
+                owned.add(index);
+                ownedFutures.put(index, future);
+            } else {
+                awaited.put(index, running);
+            }
+        }
+
+        try {
+            if (!owned.isEmpty()) {
+                List<List<Integer>> batches = createBatches(contents, owned);
+                logger.info(
+                        "Calculating {} of {} embeddings in {} requests",
+                        owned.size(),
+                        contents.elements().size(),
+                        batches.size());
+
+                List<float[]> calculated = threads == 1 || batches.size() == 1
+                        ? calculateBatches(embeddingModel, contents, batches)
+                        : calculateBatchesInParallel(contents, batches);
+                // The batches may be ordered differently than the elements, so restore the order of the elements
+                int position = 0;
+                for (List<Integer> batch : batches) {
+                    for (int index : batch) {
+                        embeddings[index] = calculated.get(position++);
+                        ownedFutures.get(index).complete(embeddings[index]);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            for (CompletableFuture<float[]> future : ownedFutures.values()) {
+                future.completeExceptionally(e);
+            }
+            throw e;
+        } finally {
+            for (int index : owned) {
+                inFlight.remove(keys.get(index).localKey(), ownedFutures.get(index));
+            }
+        }
+
+        // Only wait after completing the own futures, so that concurrent calls never wait for each other in a cycle
+        for (var entry : awaited.entrySet()) {
+            embeddings[entry.getKey()] = Futures.getLogged(entry.getValue(), logger).clone();
+        }
+    }
+
+    /**
+     * Calculates the batches in parallel. Each of the (at most {@link #threads}) workers uses its own instance of the
+     * embedding model (the first one uses {@link #embeddingModel}) and pulls the next pending batch as soon as it
+     * finished the previous one, so batches of short elements do not hold back the others. In addition, the
+     * {@link #limiter} bounds the requests that are sent at the same time and per minute.
+     *
+     * @return The embeddings of all elements of all batches, in the order of the batches
+     */
+    private List<float[]> calculateBatchesInParallel(PendingContents contents, List<List<Integer>> batches) {
+        int workers = Math.min(threads, batches.size());
+        AtomicInteger nextBatch = new AtomicInteger();
+        AtomicReferenceArray<List<float[]>> results = new AtomicReferenceArray<>(batches.size());
+
+        List<Future<Void>> futureResults = new ArrayList<>(workers);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < workers; i++) {
+                // The first worker reuses the model of this creator, so that no additional instance is loaded
+                boolean reuseModel = i == 0;
+                futureResults.add(executor.submit(() -> {
+                    var embeddingModelInstance =
+                            reuseModel ? embeddingModel : createEmbeddingModel(this.rawNameOfModel, this.params);
+                    int batch;
+                    while ((batch = nextBatch.getAndIncrement()) < batches.size()) {
+                        results.set(batch, calculateBatch(embeddingModelInstance, contents, batches.get(batch)));
+                    }
+                    return null;
+                }));
+            }
+            logger.info("Waiting for embedding to finish. Requests in queue: {}", batches.size());
+            for (Future<Void> future : futureResults) {
+                Futures.getLogged(future, logger);
+            }
+        }
+
+        List<float[]> embeddings = new ArrayList<>();
+        for (int batch = 0; batch < batches.size(); batch++) {
+            embeddings.addAll(results.get(batch));
+        }
+        return embeddings;
     }
 
     /**
-     * Calculates embeddings sequentially using the specified embedding model.
+     * Calculates the embeddings of the batches sequentially using the specified embedding model.
      *
      * @param embeddingModel The model to use for embedding generation
-     * @param elements The list of elements to create embeddings for
-     * @return A list of vector embeddings
+     * @param contents The contents to embed
+     * @param batches The batches, each containing indices of elements
+     * @return The embeddings of all elements of all batches, in the order of the batches
      */
-    private List<float[]> calculateEmbeddingsSequential(EmbeddingModel embeddingModel, List<Element> elements) {
+    private List<float[]> calculateBatches(
+            EmbeddingModel embeddingModel, PendingContents contents, List<List<Integer>> batches) {
         List<float[]> embeddings = new ArrayList<>();
-        for (Element element : elements) {
-            embeddings.add(calculateFinalEmbedding(embeddingModel, cache, rawNameOfModel, element));
+        for (List<Integer> batch : batches) {
+            embeddings.addAll(calculateBatch(embeddingModel, contents, batch));
         }
         return embeddings;
     }
 
+    /**
+     * Calculates the embeddings of one batch of elements with a single request and caches them.
+     * If the request fails (e.g., as one of the contents is too long), each element of the batch is embedded
+     * separately, which includes the fallback of {@link #tryToFixWithLength}.
+     *
+     * @param embeddingModel The model to use for embedding generation
+     * @param contents The contents to embed
+     * @param batch The indices of the elements of the batch
+     * @return The embeddings of the elements of the batch, in the order of the batch
+     */
+    private List<float[]> calculateBatch(EmbeddingModel embeddingModel, PendingContents contents, List<Integer> batch) {
+        List<Element> elements = contents.elements();
+        List<ClassifierCacheKey> keys = contents.keys();
+        if (batch.size() == 1) {
+            int index = batch.getFirst();
+            IntArrayList chunkTokens = contents.chunkTokens().get(index);
+            if (chunkTokens != null) {
+                return List.of(
+                        calculateChunkedEmbedding(embeddingModel, keys.get(index), elements.get(index), chunkTokens));
+            }
+            return List.of(calculateFinalEmbedding(
+                    embeddingModel, keys.get(index), elements.get(index), contents.tokens()[index]));
+        }
+
+        List<TextSegment> segments = new ArrayList<>(batch.size());
+        int tokens = 0;
+        for (int index : batch) {
+            segments.add(TextSegment.from(elements.get(index).getContent()));
+            tokens += contents.tokens()[index];
+        }
+        try {
+            List<Embedding> result = limiter.execute(tokens, () -> embeddingModel.embedAll(segments).content());
+            if (result.size() != batch.size()) {
+                throw new IllegalStateException(
+                        "Expected " + batch.size() + " embeddings, but got " + result.size() + ".");
+            }
+            List<float[]> embeddings = new ArrayList<>(batch.size());
+            for (Embedding embedding : result) {
+                embeddings.add(embedding.vector());
+            }
+            Map<ClassifierCacheKey, float[]> results = HashMap.newHashMap(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                results.put(keys.get(batch.get(i)), embeddings.get(i));
+            }
+            cache.putAll(results);
+            return embeddings;
+        } catch (Exception e) {
+            if (RequestLimiter.isRateLimited(e)) {
+                throw new IllegalStateException("Embedding requests are still rate limited after retrying", e);
+            }
+            logger.warn(
+                    "Error while calculating {} embeddings in one request, falling back to single requests: {}",
+                    batch.size(),
+                    e.getMessage());
+            List<float[]> embeddings = new ArrayList<>(batch.size());
+            for (int index : batch) {
+                embeddings.add(calculateFinalEmbedding(
+                        embeddingModel, keys.get(index), elements.get(index), contents.tokens()[index]));
+            }
+            return embeddings;
+        }
+    }
+
+    /**
+     * Groups the elements without cached embeddings into batches of at most {@link #batchSize} elements and
+     * {@link #maxTokensPerBatch} tokens. An element that exceeds the token budget on its own or is embedded in chunks
+     * forms a batch by itself.
+     * <p>
+     * With {@link #lengthBucketing}, the elements are sorted by their number of tokens and assigned to buckets
+     * whose token counts differ by at most a factor of two. Batches never span multiple buckets, so local models
+     * pad the contents of a batch to a similar length.
+     *
+     * @param contents The contents to embed, with their token counts
+     * @param misses The indices of the elements to embed
+     * @return The batches, each containing indices of elements
+     */
+    private List<List<Integer>> createBatches(PendingContents contents, List<Integer> misses) {
+        if (batchSize == 1) {
+            return misses.stream().map(List::of).toList();
+        }
+
+        int[] tokens = contents.tokens();
+        List<Integer> pending = misses;
+        if (lengthBucketing) {
+            pending = new ArrayList<>(misses);
+            // Longest first, so that the most expensive batches do not start last
+            pending.sort((a, b) -> Integer.compare(tokens[b], tokens[a]));
+        }
+
+        List<List<Integer>> batches = new ArrayList<>();
+        List<Integer> batch = new ArrayList<>();
+        long batchTokens = 0;
+        int bucket = 0;
+        for (int index : pending) {
+            int elementTokens = tokens[index];
+            if (contents.isChunked(index)) {
+                batches.add(List.of(index));
+                continue;
+            }
+            int elementBucket = lengthBucketing ? bucket(elementTokens) : 0;
+            boolean full = batch.size() == batchSize || batchTokens + elementTokens > maxTokensPerBatch;
+            if (!batch.isEmpty() && (full || elementBucket != bucket)) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchTokens = 0;
+            }
+            batch.add(index);
+            batchTokens += elementTokens;
+            bucket = elementBucket;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * Returns the length bucket of a content with the given number of tokens, i.e., the position of its highest bit.
+     */
+    private static int bucket(int tokens) {
+        return Integer.SIZE - Integer.numberOfLeadingZeros(tokens);
+    }
+
+    /**
+     * Returns the tokenizer of the model. For models unknown to jtokkit, the {@code cl100k_base} encoding is used
+     * as an approximation.
+     */
+    private Encoding tokenEncoding() {
+        Encoding tokenizer = encoding;
+        if (tokenizer == null) {
+            EncodingRegistry registry = Encodings.newDefaultEncodingRegistry();
+            tokenizer = registry.getEncodingForModel(rawNameOfModel)
+                    .orElseGet(() -> registry.getEncoding(EncodingType.CL100K_BASE));
+            encoding = tokenizer;
+        }
+        return tokenizer;
+    }
+
+    /**
+     * Embeds a content that exceeds {@link #maxTokens} in chunks and caches the pooled embedding.
+     * The tokens of the content are split into windows of at most {@link #maxTokens} tokens, which are embedded
+     * with a single request and pooled according to {@link #chunkPooling}.
+     *
+     * @param embeddingModel The model to use for embedding generation
+     * @param cacheKey The cache key of the pooled embedding
+     * @param element The element to create an embedding for
+     * @param tokens The tokens of the content of the element
+     * @return The pooled embedding of the windows of the content
+     */
+    private float[] calculateChunkedEmbedding(
+            EmbeddingModel embeddingModel, ClassifierCacheKey cacheKey, Element element, IntArrayList tokens) {
+        float[] cachedEmbedding = cache.get(cacheKey, float[].class);
+        if (cachedEmbedding != null) {
+            return cachedEmbedding;
+        }
+
+        Encoding tokenizer = tokenEncoding();
+        List<TextSegment> windows = new ArrayList<>();
+        List<Integer> windowLengths = new ArrayList<>();
+        for (int start = 0; start < tokens.size(); start += maxTokens) {
+            int end = Math.min(tokens.size(), start + maxTokens);
+            IntArrayList window = new IntArrayList(end - start);
+            for (int token = start; token < end; token++) {
+                window.add(tokens.get(token));
+            }
+            windows.add(TextSegment.from(tokenizer.decode(window)));
+            windowLengths.add(end - start);
+        }
+        logger.info("Calculating embedding for {} in {} chunks", element.getIdentifier(), windows.size());
+
+        List<Embedding> embeddings = limiter.execute(tokens.size(), () -> embeddingModel.embedAll(windows).content());
+        if (embeddings.size() != windows.size()) {
+            throw new IllegalStateException(
+                    "Expected " + windows.size() + " embeddings, but got " + embeddings.size() + ".");
+        }
+        float[] embedding = chunkPooling.pool(embeddings, windowLengths);
+        cache.put(cacheKey, embedding);
+        return embedding;
+    }
+
+    private static float[] roundToHalfPrecision(float[] embedding) {
+        float[] rounded = new float[embedding.length];
+        for (int i = 0; i < embedding.length; i++) {
+            rounded[i] = Float.float16ToFloat(Float.floatToFloat16(embedding[i]));
+        }
+        return rounded;
+    }
+
+    private static boolean isHalfPrecision(String precision) {
+        return switch (precision) {
+            case "float32" -> false;
+            case "float16" -> true;
+            default -> throw new IllegalArgumentException("Unknown precision: " + precision);
+        };
+    }
+
+    private static boolean isBinaryCache(String cacheFormat) {
+        return switch (cacheFormat) {
+            case "json" -> false;
+            case "binary" -> true;
+            default -> throw new IllegalArgumentException("Unknown cache format: " + cacheFormat);
+        };
+    }
+
+    private ClassifierCacheKey cacheKey(Element element) {
+        return ClassifierCacheKey.of(rawNameOfModel, -1, -1, ClassifierCacheKey.Mode.EMBEDDING, element.getContent());
+    }
+
+    /**
+     * Returns the cache key for the pooled embedding of a content that is embedded in chunks.
+     */
+    private ClassifierCacheKey chunkedCacheKey(Element element) {
+        String content = "(CHUNKED::%s::%d): %s".formatted(chunkPooling, maxTokens, element.getContent());
+        return ClassifierCacheKey.of(rawNameOfModel, -1, -1, ClassifierCacheKey.Mode.EMBEDDING, content);
+    }
+
     /**
      * Calculates the final embedding for an element, using the cache if available.
      * This method implements a sophisticated caching and error handling strategy:
@@ -168,52 +745,47 @@ abstract class CachedEmbeddingCreator extends EmbeddingCreator {
      * </ul>
      *
      * @param embeddingModel The model to use for embedding generation
-     * @param cache The cache to use for storing and retrieving embeddings
-     * @param rawNameOfModel The name of the model being used
+     * @param cacheKey The cache key of the element
      * @param element The element to create an embedding for
+     * @param tokens The number of tokens of the content for the token budget, 0 if it was not counted
      * @return The vector embedding of the element, either from cache or newly generated
      */
-    private static float[] calculateFinalEmbedding(
-            EmbeddingModel embeddingModel, Cache cache, String rawNameOfModel, Element element) {
-
-        ClassifierCacheKey cacheKey =
-                ClassifierCacheKey.of(rawNameOfModel, -1, -1, ClassifierCacheKey.Mode.EMBEDDING, element.getContent());
-
+    private float[] calculateFinalEmbedding(
+            EmbeddingModel embeddingModel, ClassifierCacheKey cacheKey, Element element, int tokens) {
         float[] cachedEmbedding = cache.get(cacheKey, float[].class);
         if (cachedEmbedding != null) {
             return cachedEmbedding;
         } else {
-            STATIC_LOGGER.info("Calculating embedding for: {}", element.getIdentifier());
+            logger.info("Calculating embedding for: {}", element.getIdentifier());
             try {
-                float[] embedding =
-                        embeddingModel.embed(element.getContent()).content().vector();
+                float[] embedding = limiter.execute(
+                        tokens, () -> embeddingModel.embed(element.getContent()).content().vector());
                 cache.put(cacheKey, embedding);
                 return embedding;
             } catch (Exception e) {
-                STATIC_LOGGER.error(
-                        "Error while calculating embedding for .. try to fix ..: {}", element.getIdentifier());
+                if (RequestLimiter.isRateLimited(e)) {
+                    throw new IllegalStateException("Embedding requests are still rate limited after retrying", e);
+                }
+                logger.error("Error while calculating embedding for .. try to fix ..: {}", element.getIdentifier());
                 // Probably the length was too long .. check that
-                return tryToFixWithLength(embeddingModel, cache, rawNameOfModel, cacheKey, element.getContent());
+                return tryToFixWithLength(embeddingModel, cacheKey, element.getContent());
             }
         }
     }
 
     /**
-     * Attempts to fix embedding generation for content that exceeds the maximum token length.
+     * Attempts to fix embedding generation for content that exceeds the maximum token length ({@link #maxTokens}).
      * This method uses binary search to find the maximum content length that fits within
      * the token limit and generates an embedding for that truncated content.
      *
      * @param embeddingModel The model to use for embedding generation
-     * @param cache The cache to use for storing and retrieving embeddings
-     * @param rawNameOfModel The name of the model being used
      * @param key The original cache key
      * @param content The content that exceeded the token limit
      * @return The vector embedding of the truncated content
      * @throws IllegalArgumentException If the token length was not the cause of the failure
      */
-    private static float[] tryToFixWithLength(
-            EmbeddingModel embeddingModel, Cache cache, String rawNameOfModel, ClassifierCacheKey key, String content) {
-        String newKey = key.localKey() + "_fixed_" + MAX_TOKEN_LENGTH;
+    private float[] tryToFixWithLength(EmbeddingModel embeddingModel, ClassifierCacheKey key, String content) {
+        String newKey = key.localKey() + "_fixed_" + maxTokens;
 
         // We need the old keys for backwards compatibility
         @SuppressWarnings("deprecation")
@@ -222,12 +794,12 @@ abstract class CachedEmbeddingCreator extends EmbeddingCreator {
                 -1,
                 -1,
                 ClassifierCacheKey.Mode.EMBEDDING,
-                "(FIXED::%d): %s".formatted(MAX_TOKEN_LENGTH, content),
+                "(FIXED::%d): %s".formatted(maxTokens, content),
                 newKey);
 
         float[] cachedEmbedding = cache.get(newCacheKey, float[].class);
         if (cachedEmbedding != null) {
-            STATIC_LOGGER.info("using fixed embedding for: {}", key.localKey());
+            logger.info("using fixed embedding for: {}", key.localKey());
             return cachedEmbedding;
         }
         EncodingRegistry registry = Encodings.newDefaultEncodingRegistry();
@@ -235,7 +807,7 @@ abstract class CachedEmbeddingCreator extends EmbeddingCreator {
                 .orElseThrow(() -> new IllegalArgumentException(
                         "Unknown Embedding Model. Don't know how to handle previous exception"));
         int tokens = encoding.countTokens(content);
-        if (tokens < MAX_TOKEN_LENGTH)
+        if (tokens < maxTokens)
             throw new IllegalArgumentException(
                     "Token length was not too long. Don't know how to handle previous exception");
 
@@ -246,16 +818,102 @@ abstract class CachedEmbeddingCreator extends EmbeddingCreator {
             int mid = left + (right - left) / 2;
             String subContent = content.substring(0, mid);
             int subTokens = encoding.countTokens(subContent);
-            if (subTokens >= MAX_TOKEN_LENGTH) {
+            if (subTokens >= maxTokens) {
                 right = mid;
             } else {
                 left = mid + 1;
             }
         }
         String fixedContent = content.substring(0, left);
-        float[] embedding = embeddingModel.embed(fixedContent).content().vector();
-        STATIC_LOGGER.info("using fixed embedding for: {}", key.localKey());
+        float[] embedding = limiter.execute(
+                encoding.countTokens(fixedContent),
+                () -> embeddingModel.embed(fixedContent).content().vector());
+        logger.info("using fixed embedding for: {}", key.localKey());
         cache.put(newCacheKey, embedding);
         return embedding;
     }
+
+    /**
+     * The contents of a call of {@link #calculateEmbeddings(List)} that are not cached under their plain key.
+     * The token counts and chunk tokens are only filled for these contents, and only if they are needed.
+     *
+     * @param elements All elements
+     * @param keys The cache keys of all elements, the chunked key for contents that are embedded in chunks
+     * @param tokens The number of tokens of each content, 0 if it was not counted
+     * @param chunkTokens The tokens of the contents that are embedded in chunks, by the index of the element
+     */
+    private record PendingContents(
+            List<Element> elements,
+            List<ClassifierCacheKey> keys,
+            int[] tokens,
+            Map<Integer, IntArrayList> chunkTokens) {
+        private boolean isChunked(int index) {
+            return chunkTokens.containsKey(index);
+        }
+    }
+
+    /**
+     * The options of the creator, i.e., how requests are sent to the embedding model and how embeddings are cached.
+     */
+    private record Options(
+            int maxConcurrentRequests,
+            boolean adaptiveConcurrency,
+            int requestsPerMinute,
+            int tokensPerMinute,
+            int rateLimitRetries,
+            int batchSize,
+            int maxTokensPerBatch,
+            boolean lengthBucketing,
+            int maxTokens,
+            ChunkPooling chunkPooling,
+            boolean binaryCache,
+            boolean halfPrecision) {}
+
+    /**
+     * How the embeddings of the windows of a content that exceeds the maximum number of tokens are combined.
+     */
+    private enum ChunkPooling {
+        /** Contents are not split, but truncated if the model rejects them */
+        NONE,
+        /** The embeddings of the windows are averaged, weighted by the number of tokens of each window */
+        MEAN,
+        /** The element-wise maximum of the embeddings of the windows */
+        MAX;
+
+        private static ChunkPooling of(String name) {
+            for (ChunkPooling pooling : values()) {
+                if (pooling.name().equalsIgnoreCase(name)) {
+                    return pooling;
+                }
+            }
+            throw new IllegalArgumentException("Unknown chunk pooling: " + name);
+        }
+
+        private float[] pool(List<Embedding> embeddings, List<Integer> weights) {
+            int dimensions = embeddings.getFirst().vector().length;
+            double[] pooled = new double[dimensions];
+            if (this == MAX) {
+                Arrays.fill(pooled, Double.NEGATIVE_INFINITY);
+            }
+            long totalWeight = 0;
+            for (int i = 0; i < embeddings.size(); i++) {
+                float[] vector = embeddings.get(i).vector();
+                int weight = weights.get(i);
+                totalWeight += weight;
+                for (int d = 0; d < dimensions; d++) {
+                    pooled[d] = this == MAX ? Math.max(pooled[d], vector[d]) : pooled[d] + (double) weight * vector[d];
+                }
+            }
+            float[] result = new float[dimensions];
+            for (int d = 0; d < dimensions; d++) {
+                result[d] = (float) (this == MAX ? pooled[d] : pooled[d] / totalWeight);
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
 }
@@ -94,6 +94,27 @@ public abstract class EmbeddingCreator {
      */
     public abstract List<float[]> calculateEmbeddings(List<Element> elements);
 
+    /**
+     * Returns an identifier of the embedding model used by this creator.
+     * Embeddings of the same content created by creators with equal identifiers must be equal.
+     *
+     * @return The identifier of the embedding model
+     */
+    public String getModelIdentifier() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * Returns whether the embeddings of this creator only have half precision, so that they can be stored in
+     * half precision without losing information (see
+     * {@link edu.kit.kastel.sdq.lissa.ratlr.elementstore.ElementStore#setup(List, List, boolean) ElementStore}).
+     *
+     * @return true if the embeddings are rounded to half precision
+     */
+    public boolean usesHalfPrecision() {
+        return false;
+    }
+
     /**
      * Creates an appropriate embedding creator based on the provided configuration.
      * The type of creator is determined by the configuration's name field.
@@ -39,7 +39,7 @@ public class OllamaEmbeddingCreator extends CachedEmbeddingCreator {
      * @param contextStore The shared context store for pipeline components
      */
     public OllamaEmbeddingCreator(ModuleConfiguration configuration, ContextStore contextStore) {
-        super(contextStore, configuration.argumentAsString("model", "nomic-embed-text:v1.5"), 1);
+        super(configuration, contextStore, configuration.argumentAsString("model", "nomic-embed-text:v1.5"), 1);
     }
 
     /**
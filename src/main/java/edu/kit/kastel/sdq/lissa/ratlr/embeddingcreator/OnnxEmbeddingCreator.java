@@ -10,6 +10,9 @@ import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.embedding.onnx.OnnxEmbeddingModel;
 import dev.langchain4j.model.embedding.onnx.PoolingMode;
 
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+
 /**
  * An embedding creator that uses ONNX models for generating embeddings.
  * This class provides integration with ONNX-based embedding models, allowing
@@ -21,8 +24,15 @@ import dev.langchain4j.model.embedding.onnx.PoolingMode;
  * <p>
  * The embedding model uses mean pooling by default for generating the final
  * embeddings from the token-level representations.
+ * <p>
+ * To use multiple cores, the creator can either run several ONNX sessions that embed different batches in parallel
+ * ({@code sessions}), or configure the number of threads ONNX Runtime uses within a session
+ * ({@code intra_op_threads} and {@code inter_op_threads}). Each session loads the model separately.
  */
 public class OnnxEmbeddingCreator extends CachedEmbeddingCreator {
+    /** Value of the thread settings that keeps the default of ONNX Runtime */
+    private static final int DEFAULT_OP_THREADS = 0;
+
     /**
      * Creates a new ONNX embedding creator with the specified model and file paths.
      *
@@ -42,16 +52,28 @@ public class OnnxEmbeddingCreator extends CachedEmbeddingCreator {
      *     <li>{@code path_to_model}: The path to the ONNX model file</li>
      *     <li>{@code path_to_tokenizer}: The path to the tokenizer file</li>
      * </ul>
+     * Optionally, it may specify:
+     * <ul>
+     *     <li>{@code sessions}: The number of ONNX sessions that embed batches in parallel (default: 1)</li>
+     *     <li>{@code intra_op_threads}: The number of threads used within an operator of a session
+     *     (default: 0, i.e., decided by ONNX Runtime)</li>
+     *     <li>{@code inter_op_threads}: The number of threads used to run independent operators of a session
+     *     (default: 0, i.e., decided by ONNX Runtime)</li>
+     * </ul>
      *
      * @param configuration The configuration containing model and file paths
      * @param contextStore The shared context store for pipeline components
      */
     public OnnxEmbeddingCreator(ModuleConfiguration configuration, ContextStore contextStore) {
-        this(
+        super(
+                configuration,
+                contextStore,
                 configuration.argumentAsString("model"),
+                configuration.argumentAsInt("sessions", 1),
                 configuration.argumentAsString("path_to_model"),
                 configuration.argumentAsString("path_to_tokenizer"),
-                contextStore);
+                String.valueOf(configuration.argumentAsInt("intra_op_threads", DEFAULT_OP_THREADS)),
+                String.valueOf(configuration.argumentAsInt("inter_op_threads", DEFAULT_OP_THREADS)));
     }
 
     /**
@@ -60,14 +82,18 @@ public class OnnxEmbeddingCreator extends CachedEmbeddingCreator {
      * before creating the model instance.
      *
      * @param model The name of the model
-     * @param params Additional parameters containing the model and tokenizer file paths
+     * @param params Additional parameters containing the model and tokenizer file paths,
+     *               optionally followed by the intra-op and inter-op thread counts
      * @return A configured ONNX embedding model instance
      * @throws IllegalStateException If either the model or tokenizer file does not exist
+     *                               or the session options cannot be applied
      */
     @Override
     protected EmbeddingModel createEmbeddingModel(String model, String... params) {
         String modelPath = params[0];
         String tokenizerPath = params[1];
+        int intraOpThreads = params.length > 2 ? Integer.parseInt(params[2]) : DEFAULT_OP_THREADS;
+        int interOpThreads = params.length > 3 ? Integer.parseInt(params[3]) : DEFAULT_OP_THREADS;
 
         File modelFile = new File(modelPath);
         File tokenizerFile = new File(tokenizerPath);
@@ -76,8 +102,32 @@ public class OnnxEmbeddingCreator extends CachedEmbeddingCreator {
         }
 
         PoolingMode poolingMode = PoolingMode.MEAN;
-        EmbeddingModel embeddingModel = new OnnxEmbeddingModel(modelFile.toPath(), tokenizerFile.toPath(), poolingMode);
-        logger.info("Created OnnxEmbeddingModel with model: {} and tokenizer: {}", modelPath, tokenizerPath);
-        return embeddingModel;
+        if (intraOpThreads == DEFAULT_OP_THREADS && interOpThreads == DEFAULT_OP_THREADS) {
+            EmbeddingModel embeddingModel =
+                    new OnnxEmbeddingModel(modelFile.toPath(), tokenizerFile.toPath(), poolingMode);
+            logger.info("Created OnnxEmbeddingModel with model: {} and tokenizer: {}", modelPath, tokenizerPath);
+            return embeddingModel;
+        }
+
+        // The session copies the options when it is created, so they can be closed afterward
+        try (OrtSession.SessionOptions options = new OrtSession.SessionOptions()) {
+            if (intraOpThreads != DEFAULT_OP_THREADS) {
+                options.setIntraOpNumThreads(intraOpThreads);
+            }
+            if (interOpThreads != DEFAULT_OP_THREADS) {
+                options.setInterOpNumThreads(interOpThreads);
+            }
+            EmbeddingModel embeddingModel = new OnnxEmbeddingModel(
+                    modelFile.getAbsolutePath(), options, tokenizerFile.getAbsolutePath(), poolingMode);
+            logger.info(
+                    "Created OnnxEmbeddingModel with model: {}, tokenizer: {}, op threads: {} (intra) {} (inter)",
+                    modelPath,
+                    tokenizerPath,
+                    intraOpThreads,
+                    interOpThreads);
+            return embeddingModel;
+        } catch (OrtException e) {
+            throw new IllegalStateException("Could not apply the ONNX session options", e);
+        }
     }
 }
@@ -21,7 +21,9 @@ import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
  *
  * The default model used is "text-embedding-ada-002", but this can be overridden
  * through the configuration. The creator uses 40 threads by default for parallel
- * processing of embedding requests.
+ * processing of embedding requests, which can be changed with the {@code threads} argument.
+ * Requests rejected because of the rate limit are retried by the creator (not by the client), see
+ * {@link CachedEmbeddingCreator} for the rate limit arguments.
  */
 public class OpenAiEmbeddingCreator extends CachedEmbeddingCreator {
     /** Default number of threads for parallel processing */
@@ -36,7 +38,11 @@ public class OpenAiEmbeddingCreator extends CachedEmbeddingCreator {
      * @param contextStore The shared context store for pipeline components
      */
     public OpenAiEmbeddingCreator(ModuleConfiguration configuration, ContextStore contextStore) {
-        super(contextStore, configuration.argumentAsString("model", "text-embedding-ada-002"), THREADS);
+        super(
+                configuration,
+                contextStore,
+                configuration.argumentAsString("model", "text-embedding-ada-002"),
+                configuration.argumentAsInt("threads", THREADS));
     }
 
     /**
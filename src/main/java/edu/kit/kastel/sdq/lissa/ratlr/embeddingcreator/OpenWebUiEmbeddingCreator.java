@@ -33,7 +33,7 @@ public class OpenWebUiEmbeddingCreator extends CachedEmbeddingCreator {
      * @param contextStore The shared context store for pipeline components
      */
     public OpenWebUiEmbeddingCreator(ModuleConfiguration configuration, ContextStore contextStore) {
-        super(contextStore, configuration.argumentAsString("model", "nomic-embed-text:v1.5"), 1);
+        super(configuration, contextStore, configuration.argumentAsString("model", "nomic-embed-text:v1.5"), 1);
     }
 
     /**
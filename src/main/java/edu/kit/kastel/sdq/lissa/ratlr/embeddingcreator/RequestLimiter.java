@@ -0,0 +1,300 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.embeddingcreator;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.RateLimitException;
+
+/**
+ * Limits the requests that are sent to an embedding model.
+ * <p>
+ * The limiter bounds the number of concurrent requests and, optionally, the number of requests and tokens per
+ * minute (sliding window). If adaptive concurrency is enabled, the concurrency limit follows an AIMD scheme:
+ * it grows additively (by one per round of successful requests) as long as the latency stays within twice the
+ * lowest observed latency, and it is halved whenever the provider rejects a request because of its rate limit.
+ * <p>
+ * Rate-limited requests are retried after the delay requested by the provider (parsed from the error message,
+ * e.g., "Please retry after 20 seconds" or "Please try again in 1m30s") or an exponential backoff. All other requests wait until this delay has
+ * passed as well.
+ */
+final class RequestLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(RequestLimiter.class);
+    private static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final Duration INITIAL_BACKOFF = Duration.ofSeconds(1);
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(1);
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final int TOO_MANY_REQUESTS = 429;
+    /** The unit of a component of a delay, seconds if omitted */
+    private static final String DELAY_UNIT =
+            "(?:milliseconds?|ms|minutes?|mins?|m|hours?|h|seconds?|secs?|s)(?![a-z])";
+    /** A delay, possibly consisting of several components (e.g., "6m0s") */
+    private static final Pattern RETRY_AFTER = Pattern.compile(
+            "(?:retry[- ]after|try again in)\\D{0,3}((?:\\d+(?:\\.\\d+)?\\s*(?:" + DELAY_UNIT + ")?)+)",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern DELAY_COMPONENT =
+            Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*(" + DELAY_UNIT + ")?", Pattern.CASE_INSENSITIVE);
+
+    private final int maxConcurrentRequests;
+    private final boolean adaptive;
+    private final int requestsPerMinute;
+    private final int tokensPerMinute;
+    private final int maxRetries;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    /** Start time (nanos) and tokens of the requests of the last minute */
+    private final Deque<long[]> window = new ArrayDeque<>();
+
+    private double limit;
+    private int inFlight;
+    private long windowTokens;
+    private long pausedUntil;
+    private long minLatency = Long.MAX_VALUE;
+
+    /**
+     * Creates a new limiter.
+     *
+     * @param maxConcurrentRequests The maximum number of concurrent requests
+     * @param adaptive Whether the concurrency limit adapts to the observed latency and rate limit errors
+     * @param requestsPerMinute The maximum number of requests per minute, 0 for no limit
+     * @param tokensPerMinute The maximum number of tokens per minute, 0 for no limit
+     * @param maxRetries How often a rate-limited request is retried
+     * @throws IllegalArgumentException If the concurrency is less than 1 or a budget or the retries are negative
+     */
+    RequestLimiter(
+            int maxConcurrentRequests, boolean adaptive, int requestsPerMinute, int tokensPerMinute, int maxRetries) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("The maximum number of concurrent requests must be greater than 0.");
+        }
+        if (requestsPerMinute < 0 || tokensPerMinute < 0 || maxRetries < 0) {
+            throw new IllegalArgumentException("The request budgets and retries must not be negative.");
+        }
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.adaptive = adaptive;
+        this.requestsPerMinute = requestsPerMinute;
+        this.tokensPerMinute = tokensPerMinute;
+        this.maxRetries = maxRetries;
+        this.limit = maxConcurrentRequests;
+        this.pausedUntil = System.nanoTime();
+    }
+
+    /**
+     * Checks whether the limiter needs the number of tokens of the requests.
+     *
+     * @return true if a token budget is configured
+     */
+    boolean limitsTokens() {
+        return tokensPerMinute > 0;
+    }
+
+    /**
+     * Returns the current concurrency limit.
+     *
+     * @return The number of requests that may currently be sent at the same time
+     */
+    int concurrencyLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends a request once the limits permit it. Rate-limited requests are retried.
+     * The slot of the request is released however the request ends, including errors.
+     *
+     * @param tokens The number of tokens of the request, only relevant for the token budget
+     * @param request The request
+     * @param <T> The type of the response
+     * @return The response of the request
+     * @throws IllegalStateException If the thread is interrupted while waiting
+     */
+    <T> T execute(int tokens, Supplier<T> request) {
+        for (int attempt = 0; ; attempt++) {
+            acquire(tokens);
+            long start = System.nanoTime();
+            boolean released = false;
+            try {
+                T response = request.get();
+                released = true;
+                onSuccess(System.nanoTime() - start);
+                return response;
+            } catch (RuntimeException e) {
+                if (!isRateLimited(e)) {
+                    throw e;
+                }
+                Duration delay = retryAfter(e, attempt);
+                released = true;
+                onRateLimited(delay);
+                if (attempt >= maxRetries) {
+                    throw e;
+                }
+                logger.warn("Embedding request was rate limited, retrying in {} ms", delay.toMillis());
+            } finally {
+                if (!released) {
+                    release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether an exception signals that the provider rejected a request because of its rate limit.
+     *
+     * @param exception The exception
+     * @return true if the exception (or one of its causes) is a rate limit error
+     */
+    static boolean isRateLimited(Throwable exception) {
+        for (Throwable current = exception; current != null; current = current.getCause()) {
+            if (current instanceof RateLimitException
+                    || (current instanceof HttpException http && http.statusCode() == TOO_MANY_REQUESTS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines how long to wait before retrying a rate-limited request.
+     *
+     * @param exception The rate limit error
+     * @param attempt The number of the failed attempt, starting at 0
+     * @return The delay requested by the provider, or an exponential backoff if it did not request one
+     */
+    static Duration retryAfter(Throwable exception, int attempt) {
+        for (Throwable current = exception; current != null; current = current.getCause()) {
+            Matcher matcher = current.getMessage() == null ? null : RETRY_AFTER.matcher(current.getMessage());
+            if (matcher != null && matcher.find()) {
+                double millis = 0;
+                Matcher component = DELAY_COMPONENT.matcher(matcher.group(1));
+                while (component.find()) {
+                    millis += Double.parseDouble(component.group(1)) * millisPerUnit(component.group(2));
+                }
+                return Duration.ofMillis((long) Math.ceil(millis));
+            }
+        }
+        Duration backoff = INITIAL_BACKOFF.multipliedBy(1L << Math.min(attempt, 16));
+        return backoff.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : backoff;
+    }
+
+    private static double millisPerUnit(@Nullable String unit) {
+        String normalized = unit == null ? "s" : unit.toLowerCase(Locale.ROOT);
+        if (normalized.equals("ms") || normalized.startsWith("milli")) {
+            return 1;
+        }
+        if (normalized.startsWith("h")) {
+            return 3_600_000;
+        }
+        return normalized.startsWith("m") ? 60_000 : 1000;
+    }
+
+    private void acquire(int tokens) {
+        lock.lock();
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                while (!window.isEmpty() && now - window.peekFirst()[0] >= WINDOW_NANOS) {
+                    windowTokens -= window.removeFirst()[1];
+                }
+
+                long wait = 0;
+                if (now - pausedUntil < 0) {
+                    wait = pausedUntil - now;
+                } else if (inFlight >= (int) limit) {
+                    wait = Long.MAX_VALUE;
+                } else if (exceedsBudget(tokens)) {
+                    wait = window.peekFirst()[0] + WINDOW_NANOS - now;
+                }
+
+                if (wait == 0) {
+                    inFlight++;
+                    window.addLast(new long[] {now, tokens});
+                    windowTokens += tokens;
+                    return;
+                }
+                if (wait == Long.MAX_VALUE) {
+                    changed.await();
+                } else {
+                    changed.awaitNanos(wait);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the request limit", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether a request exceeds the budgets. A request is always permitted if no other request was sent
+     * within the last minute, so that requests larger than the token budget do not wait forever.
+     */
+    private boolean exceedsBudget(int tokens) {
+        if (window.isEmpty()) {
+            return false;
+        }
+        return (requestsPerMinute > 0 && window.size() >= requestsPerMinute)
+                || (tokensPerMinute > 0 && windowTokens + tokens > tokensPerMinute);
+    }
+
+    private void onSuccess(long latency) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (adaptive) {
+                minLatency = Math.min(minLatency, latency);
+                if (latency <= LATENCY_TOLERANCE * minLatency) {
+                    limit = Math.min(maxConcurrentRequests, limit + 1 / limit);
+                }
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onRateLimited(Duration delay) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (adaptive) {
+                limit = Math.max(1, limit / 2);
+                logger.info("Reduced the concurrency limit of embedding requests to {}", (int) limit);
+            }
+            long resumeAt = System.nanoTime() + delay.toNanos();
+            if (resumeAt - pausedUntil > 0) {
+                pausedUntil = resumeAt;
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -143,6 +143,15 @@ public final class Element extends Knowledge {
         return parent;
     }
 
+    /**
+     * Gets the identifier of the parent element of this element.
+     *
+     * @return The identifier of the parent element, or null if this element has no parent
+     */
+    public @Nullable String getParentId() {
+        return parentId;
+    }
+
     /**
      * Checks whether this element should be included in comparisons.
      *
@@ -0,0 +1,214 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.knowledge;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns a list of {@link Element elements} into a dense int id space.
+ * Element {@code i} of the list gets the id {@code i}. The hierarchy is stored in primitive arrays,
+ * so that traversals (parents and children) do not need any string comparisons or map lookups.
+ * <p>
+ * The index contains:
+ * <ul>
+ *     <li>The parent id, granularity, and compare flag of each element</li>
+ *     <li>The children of each element in compressed sparse row (CSR) form, i.e., the children of element
+ *     {@code i} are stored in ascending order between {@code childOffsets[i]} and {@code childOffsets[i + 1]}</li>
+ * </ul>
+ * Parents are resolved by the {@link Element#getParentId() parent identifier}. If an element has a parent that is
+ * not part of the list, it is treated as a root. If several elements share an identifier, the last one wins
+ * for {@link #indexOf(String)}.
+ */
+public final class ElementIndex {
+    /** Marks the absence of an element, e.g., the parent of a root element. */
+    public static final int NO_ELEMENT = -1;
+
+    private static final ElementIndex EMPTY = of(List.of());
+
+    private final List<Element> elements;
+    private final Map<String, Integer> idToIndex;
+    private final int[] parents;
+    private final int[] granularities;
+    private final boolean[] compare;
+    private final int[] childOffsets;
+    private final int[] children;
+
+    private ElementIndex(
+            List<Element> elements,
+            Map<String, Integer> idToIndex,
+            int[] parents,
+            int[] granularities,
+            boolean[] compare,
+            int[] childOffsets,
+            int[] children) {
+        this.elements = elements;
+        this.idToIndex = idToIndex;
+        this.parents = parents;
+        this.granularities = granularities;
+        this.compare = compare;
+        this.childOffsets = childOffsets;
+        this.children = children;
+    }
+
+    /**
+     * Returns an index without any elements.
+     *
+     * @return The empty index
+     */
+    public static ElementIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates an index for the given elements.
+     *
+     * @param elements The elements, element {@code i} gets the id {@code i}
+     * @return The index
+     */
+    public static ElementIndex of(List<Element> elements) {
+        List<Element> copy = List.copyOf(elements);
+        int size = copy.size();
+
+        Map<String, Integer> idToIndex = HashMap.newHashMap(size);
+        int[] granularities = new int[size];
+        boolean[] compare = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            Element element = copy.get(i);
+            idToIndex.put(element.getIdentifier(), i);
+            granularities[i] = element.getGranularity();
+            compare[i] = element.isCompare();
+        }
+
+        int[] parents = new int[size];
+        int[] childOffsets = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            String parentId = copy.get(i).getParentId();
+            Integer parent = parentId == null ? null : idToIndex.get(parentId);
+            parents[i] = parent == null ? NO_ELEMENT : parent;
+            if (parent != null) {
+                childOffsets[parent + 1]++;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            childOffsets[i + 1] += childOffsets[i];
+        }
+
+        // Children are filled in ascending order, so each range is sorted by id
+        int[] children = new int[childOffsets[size]];
+        int[] next = Arrays.copyOf(childOffsets, size);
+        for (int i = 0; i < size; i++) {
+            if (parents[i] != NO_ELEMENT) {
+                children[next[parents[i]]++] = i;
+            }
+        }
+
+        return new ElementIndex(copy, idToIndex, parents, granularities, compare, childOffsets, children);
+    }
+
+    /**
+     * Returns the number of elements in the index.
+     *
+     * @return The number of elements
+     */
+    public int size() {
+        return elements.size();
+    }
+
+    /**
+     * Returns the indexed elements.
+     *
+     * @return An unmodifiable list of the elements, element {@code i} has the id {@code i}
+     */
+    public List<Element> elements() {
+        return elements;
+    }
+
+    /**
+     * Returns the element with the given id.
+     *
+     * @param index The id of the element
+     * @return The element
+     * @throws IndexOutOfBoundsException If the id is out of range
+     */
+    public Element element(int index) {
+        return elements.get(index);
+    }
+
+    /**
+     * Returns the id of the element with the given identifier.
+     *
+     * @param identifier The identifier of the element
+     * @return The id, or {@link #NO_ELEMENT} if there is no such element
+     */
+    public int indexOf(String identifier) {
+        Integer index = idToIndex.get(identifier);
+        return index == null ? NO_ELEMENT : index;
+    }
+
+    /**
+     * Returns the id of the parent of an element.
+     *
+     * @param index The id of the element
+     * @return The id of the parent, or {@link #NO_ELEMENT} if the element has no parent in the index
+     */
+    public int parent(int index) {
+        return parents[index];
+    }
+
+    /**
+     * Returns the granularity of an element.
+     *
+     * @param index The id of the element
+     * @return The granularity
+     */
+    public int granularity(int index) {
+        return granularities[index];
+    }
+
+    /**
+     * Returns whether an element should be included in comparisons.
+     *
+     * @param index The id of the element
+     * @return The compare flag of the element
+     */
+    public boolean isCompare(int index) {
+        return compare[index];
+    }
+
+    /**
+     * Returns the number of direct children of an element.
+     *
+     * @param index The id of the element
+     * @return The number of children
+     */
+    public int childCount(int index) {
+        return childOffsets[index + 1] - childOffsets[index];
+    }
+
+    /**
+     * Returns a direct child of an element.
+     *
+     * @param index The id of the element
+     * @param childNumber The position of the child, between 0 (inclusive) and {@link #childCount(int)} (exclusive)
+     * @return The id of the child
+     * @throws IndexOutOfBoundsException If the child number is out of range
+     */
+    public int child(int index, int childNumber) {
+        if (childNumber < 0 || childNumber >= childCount(index)) {
+            throw new IndexOutOfBoundsException(childNumber);
+        }
+        return children[childOffsets[index] + childNumber];
+    }
+
+    /**
+     * Returns the ids of the direct children of an element.
+     *
+     * @param index The id of the element
+     * @return A new array containing the ids of the children in ascending order
+     */
+    public int[] children(int index) {
+        return Arrays.copyOfRange(children, childOffsets[index], childOffsets[index + 1]);
+    }
+}
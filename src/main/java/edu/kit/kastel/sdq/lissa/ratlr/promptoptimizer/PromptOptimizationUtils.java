@@ -112,14 +112,16 @@ public final class PromptOptimizationUtils {
      */
     public static List<ClassificationTask> getClassificationTasks(
             SourceElementStore sourceStore, TargetElementStore targetStore, Collection<TraceLink> validTraceLinks) {
+        List<Pair<Element, float[]>> sources = sourceStore.getAllElements(true);
+        List<List<Element>> targetsPerSource = targetStore.findSimilarBatch(sources);
         List<ClassificationTask> tasks = new ArrayList<>();
-        for (Pair<Element, float[]> source : sourceStore.getAllElements(true)) {
-            for (Element target : targetStore.findSimilar(source)) {
+        for (int i = 0; i < sources.size(); i++) {
+            Element source = sources.get(i).first();
+            for (Element target : targetsPerSource.get(i)) {
                 tasks.add(new ClassificationTask(
-                        source.first(),
+                        source,
                         target,
-                        validTraceLinks.contains(
-                                TraceLink.of(source.first().getIdentifier(), target.getIdentifier()))));
+                        validTraceLinks.contains(TraceLink.of(source.getIdentifier(), target.getIdentifier()))));
             }
         }
         return tasks;
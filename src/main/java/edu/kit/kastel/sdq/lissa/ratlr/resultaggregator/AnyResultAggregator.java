@@ -1,14 +1,20 @@
 /* Licensed under MIT 2025. */
 package edu.kit.kastel.sdq.lissa.ratlr.resultaggregator;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.jspecify.annotations.Nullable;
+
 import edu.kit.kastel.sdq.lissa.ratlr.classifier.ClassificationResult;
 import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
 import edu.kit.kastel.sdq.lissa.ratlr.context.ContextStore;
 import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.ElementIndex;
 import edu.kit.kastel.sdq.lissa.ratlr.knowledge.TraceLink;
 
 /**
@@ -78,12 +84,13 @@ public class AnyResultAggregator extends ResultAggregator {
             List<Element> sourceElements,
             List<Element> targetElements,
             List<ClassificationResult> classificationResults) {
+        var sources = new GranularityResolver(ElementIndex.of(sourceElements), sourceGranularity);
+        var targets = new GranularityResolver(ElementIndex.of(targetElements), targetGranularity);
+
         Set<TraceLink> traceLinks = new LinkedHashSet<>();
         for (var result : classificationResults) {
-            var sourceElementsForTraceLink =
-                    buildListOfValidElements(result.source(), sourceGranularity, sourceElements);
-            var target = result.target();
-            var targetElementsForTraceLink = buildListOfValidElements(target, targetGranularity, targetElements);
+            var sourceElementsForTraceLink = sources.validElements(result.source());
+            var targetElementsForTraceLink = targets.validElements(result.target());
             for (var sourceElement : sourceElementsForTraceLink) {
                 for (var targetElement : targetElementsForTraceLink) {
                     traceLinks.add(new TraceLink(sourceElement.getIdentifier(), targetElement.getIdentifier()));
@@ -94,67 +101,131 @@ public class AnyResultAggregator extends ResultAggregator {
     }
 
     /**
-     * Builds a list of valid elements at the desired granularity level.
-     * This method handles three cases:
+     * Finds the valid elements at the desired granularity level using the int ids of an {@link ElementIndex}.
+     * This handles three cases:
      * <ol>
      *     <li>Element is at the desired granularity: Returns the element itself</li>
-     *     <li>Element is at a lower granularity: Returns all children at the desired level</li>
-     *     <li>Element is at a higher granularity: Returns the parent at the desired level</li>
+     *     <li>Element is at a lower granularity: Returns all transitive children at the desired level</li>
+     *     <li>Element is at a higher granularity: Returns the transitive parent at the desired level</li>
      * </ol>
-     *
-     * @param element The element to find valid elements for
-     * @param desiredGranularity The desired granularity level
-     * @param allElements The list of all available elements
-     * @return A list of valid elements at the desired granularity level
+     * The results are memoized per element, as the same element usually occurs in many classification results.
      */
-    private static List<Element> buildListOfValidElements(
-            Element element, int desiredGranularity, List<Element> allElements) {
-        if (element.getGranularity() == desiredGranularity) {
-            return List.of(element);
+    private static final class GranularityResolver {
+        private final ElementIndex index;
+        private final int desiredGranularity;
+        private final List<@Nullable List<Element>> validElements;
+
+        private GranularityResolver(ElementIndex index, int desiredGranularity) {
+            this.index = index;
+            this.desiredGranularity = desiredGranularity;
+            this.validElements = new ArrayList<>(Collections.nCopies(index.size(), null));
         }
 
-        if (element.getGranularity() < desiredGranularity) {
-            // Element is more course grained than the desired granularity -> find all children that are on the desired
-            // granularity
-            List<Element> possibleChildren = allElements.stream()
-                    .filter(it -> it.getGranularity() == desiredGranularity)
-                    .toList();
-            // Filter all children that are not transitive children of the element
-            return possibleChildren.stream()
-                    .filter(it -> isTransitiveChildOf(it, element))
-                    .toList();
+        /**
+         * Builds a list of valid elements at the desired granularity level.
+         *
+         * @param element The element to find valid elements for
+         * @return A list of valid elements at the desired granularity level, ordered like the list of all elements
+         */
+        private List<Element> validElements(Element element) {
+            if (element.getGranularity() == desiredGranularity) {
+                return List.of(element);
+            }
+
+            int id = index.indexOf(element.getIdentifier());
+            if (id == ElementIndex.NO_ELEMENT) {
+                // Element is not part of the list of all elements -> neither are its children
+                return element.getGranularity() < desiredGranularity ? List.of() : parentOf(element);
+            }
+
+            List<Element> result = validElements.get(id);
+            if (result == null) {
+                result = element.getGranularity() < desiredGranularity ? childrenOf(id) : parentOf(id);
+                validElements.set(id, result);
+            }
+            return result;
         }
 
-        // Element is more fine-grained than the desired granularity -> find all parents that are on the desired
-        // granularity
-        List<Element> possibleParents = allElements.stream()
-                .filter(it -> it.getGranularity() == desiredGranularity)
-                .toList();
-        // Filter all parents that are not transitive parents of the element
-        List<Element> validParents = possibleParents.stream()
-                .filter(it -> isTransitiveChildOf(element, it))
-                .toList();
-        assert validParents.size() <= 1;
-        return validParents;
+        /**
+         * Element is more coarse-grained than the desired granularity -> find all transitive children that are on
+         * the desired granularity.
+         */
+        private List<Element> childrenOf(int id) {
+            IntStack descendants = new IntStack();
+            IntStack stack = new IntStack();
+            stack.push(id);
+            while (!stack.isEmpty()) {
+                int current = stack.pop();
+                for (int i = 0; i < index.childCount(current); i++) {
+                    int child = index.child(current, i);
+                    if (index.granularity(child) == desiredGranularity) {
+                        descendants.push(child);
+                    }
+                    stack.push(child);
+                }
+            }
+            // Keep the order of the list of all elements
+            int[] ids = descendants.toArray();
+            Arrays.sort(ids);
+            List<Element> result = new ArrayList<>(ids.length);
+            for (int descendant : ids) {
+                result.add(index.element(descendant));
+            }
+            return result;
+        }
+
+        /**
+         * Element is more fine-grained than the desired granularity -> find the transitive parent that is on the
+         * desired granularity.
+         */
+        private List<Element> parentOf(int id) {
+            for (int current = index.parent(id); current != ElementIndex.NO_ELEMENT; current = index.parent(current)) {
+                if (index.granularity(current) == desiredGranularity) {
+                    return List.of(index.element(current));
+                }
+            }
+            return List.of();
+        }
+
+        /**
+         * Fallback for elements that are not part of the index: follow the parent references until an indexed
+         * element is reached.
+         */
+        private List<Element> parentOf(Element element) {
+            for (Element current = element.getParent(); current != null; current = current.getParent()) {
+                int id = index.indexOf(current.getIdentifier());
+                if (id != ElementIndex.NO_ELEMENT) {
+                    return current.getGranularity() == desiredGranularity ? List.of(current) : parentOf(id);
+                }
+            }
+            return List.of();
+        }
     }
 
     /**
-     * Checks if an element is a transitive child of another element.
-     * This method traverses the parent chain of the possible child element
-     * to determine if the parent element is in its ancestry.
-     *
-     * @param possibleChild The element to check
-     * @param parent The potential parent element
-     * @return true if the possible child is a transitive child of the parent
+     * A minimal stack of ints, used to traverse the children of an element without boxing.
      */
-    private static boolean isTransitiveChildOf(Element possibleChild, Element parent) {
-        Element currentElement = possibleChild;
-        while (currentElement != null) {
-            if (parent == currentElement) {
-                return true;
+    private static final class IntStack {
+        private int[] values = new int[16];
+        private int size;
+
+        private void push(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
             }
-            currentElement = currentElement.getParent();
+            values[size++] = value;
+        }
+
+        private int pop() {
+            return values[--size];
+        }
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(values, size);
         }
-        return false;
     }
 }
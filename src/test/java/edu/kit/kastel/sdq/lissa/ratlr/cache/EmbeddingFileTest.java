@@ -0,0 +1,74 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the binary {@link EmbeddingFile}.
+ */
+class EmbeddingFileTest {
+
+    @Test
+    void reopensAppendedEmbeddings() throws IOException {
+        Path path = Files.createTempDirectory("embeddings").resolve("test.embeddings");
+        EmbeddingFile file = new EmbeddingFile(path, EmbeddingFile.Precision.FLOAT32);
+        file.put("a", new float[] {1f, -2.5f, 3f});
+        assertArrayEquals(new float[] {1f, -2.5f, 3f}, file.get("a"));
+        file.put("b", new float[] {0.25f});
+        file.put("a", new float[] {4f, 5f, 6f});
+        file.close();
+
+        // Simulate a crash while appending a record
+        Files.write(path, new byte[] {7, 0, 0}, StandardOpenOption.APPEND);
+
+        EmbeddingFile reopened = new EmbeddingFile(path, EmbeddingFile.Precision.FLOAT16);
+        assertArrayEquals(new float[] {4f, 5f, 6f}, reopened.get("a"));
+        assertArrayEquals(new float[] {0.25f}, reopened.get("b"));
+        assertNull(reopened.get("c"));
+        assertTrue(reopened.contains("b"));
+        reopened.put("c", new float[] {1f / 3});
+        assertEquals(1f / 3, reopened.get("c")[0]);
+    }
+
+    @Test
+    void opensLockedFileReadOnly() throws IOException {
+        Path path = Files.createTempDirectory("embeddings").resolve("locked.embeddings");
+        EmbeddingFile writer = new EmbeddingFile(path, EmbeddingFile.Precision.FLOAT32);
+        writer.put("a", new float[] {1f, 2f});
+        // A record that is still being appended by the writer
+        Files.write(path, new byte[] {7, 0, 0}, StandardOpenOption.APPEND);
+        long size = Files.size(path);
+
+        EmbeddingFile reader = new EmbeddingFile(path, EmbeddingFile.Precision.FLOAT32);
+        assertFalse(reader.isWritable());
+        assertArrayEquals(new float[] {1f, 2f}, reader.get("a"));
+        reader.put("b", new float[] {3f});
+        assertNull(reader.get("b"));
+        assertEquals(size, Files.size(path));
+
+        // The lock is released when the writer is closed
+        writer.close();
+        reader.close();
+        EmbeddingFile reopened = new EmbeddingFile(path, EmbeddingFile.Precision.FLOAT32);
+        assertTrue(reopened.isWritable());
+        assertTrue(Files.size(path) < size);
+        reopened.close();
+    }
+
+    @Test
+    void storesHalfPrecision() throws IOException {
+        Path path = Files.createTempDirectory("embeddings").resolve("half.embeddings");
+        EmbeddingFile file = new EmbeddingFile(path, EmbeddingFile.Precision.FLOAT16);
+        file.put("a", new float[] {1f / 3, -0.5f});
+        float[] vector = file.get("a");
+        assertEquals(1f / 3, vector[0], 1e-3);
+        assertEquals(-0.5f, vector[1]);
+    }
+}
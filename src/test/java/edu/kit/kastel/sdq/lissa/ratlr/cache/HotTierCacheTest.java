@@ -0,0 +1,168 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the in-memory {@link HotTierCache} and its {@link HotTier}.
+ */
+class HotTierCacheTest {
+
+    private record Key(String localKey) implements CacheKey {
+        @Override
+        public String toJsonKey() {
+            return localKey;
+        }
+    }
+
+    /** Stores raw strings and counts the lookups */
+    private static class CountingCache implements Cache {
+        private final Map<String, String> values = new ConcurrentHashMap<>();
+        private int lookups;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> @Nullable T get(CacheKey key, Class<T> clazz) {
+            lookups++;
+            return (T) values.get(key.localKey());
+        }
+
+        @Override
+        public void put(CacheKey key, String value) {
+            values.put(key.localKey(), value);
+        }
+
+        @Override
+        public <T> void put(CacheKey key, T value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public boolean containsKey(CacheKey key) {
+            lookups++;
+            return values.containsKey(key.localKey());
+        }
+    }
+
+    @Test
+    void servesRepeatedLookupsFromMemory() {
+        CountingCache backend = new CountingCache();
+        backend.put(new Key("a"), "value");
+        HotTier tier = new HotTier(1 << 20);
+        HotTierCache cache = new HotTierCache(backend, tier, "test", false);
+
+        assertTrue(cache.containsKey(new Key("a")));
+        assertEquals("value", cache.get(new Key("a"), String.class));
+        assertEquals(1, backend.lookups);
+        assertEquals(1, tier.hits());
+
+        assertNull(cache.get(new Key("b"), String.class));
+        assertFalse(cache.containsKey(new Key("b")));
+        assertEquals(3, backend.lookups);
+
+        cache.put(new Key("b"), "stored");
+        assertEquals("stored", cache.get(new Key("b"), String.class));
+        assertEquals(3, backend.lookups);
+    }
+
+    @Test
+    void remembersMissingKeysWithNegativeCaching() {
+        CountingCache backend = new CountingCache();
+        HotTierCache cache = new HotTierCache(backend, new HotTier(1 << 20), "test", true);
+
+        assertFalse(cache.containsKey(new Key("a")));
+        assertNull(cache.get(new Key("a"), String.class));
+        assertEquals(1, backend.lookups);
+
+        cache.put(new Key("a"), "value");
+        assertTrue(cache.containsKey(new Key("a")));
+        assertEquals(1, backend.lookups);
+    }
+
+    @Test
+    void concurrentPutIsNotReplacedByMissingMarker() throws InterruptedException {
+        CountDownLatch lookupStarted = new CountDownLatch(1);
+        CountDownLatch stored = new CountDownLatch(1);
+        CountingCache backend = new CountingCache() {
+            @Override
+            public <T> @Nullable T get(CacheKey key, Class<T> clazz) {
+                // The key is missing when it is looked up, but stored before the lookup returns
+                T value = super.get(key, clazz);
+                lookupStarted.countDown();
+                try {
+                    assertTrue(stored.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return value;
+            }
+        };
+        HotTierCache cache = new HotTierCache(backend, new HotTier(1 << 20), "test", true);
+
+        AtomicReference<@Nullable String> lookedUp = new AtomicReference<>("not looked up");
+        Thread lookup = Thread.ofPlatform().start(() -> lookedUp.set(cache.get(new Key("a"), String.class)));
+        assertTrue(lookupStarted.await(10, TimeUnit.SECONDS));
+        cache.put(new Key("a"), "value");
+        stored.countDown();
+        lookup.join();
+
+        assertNull(lookedUp.get());
+        assertEquals("value", cache.get(new Key("a"), String.class));
+        assertTrue(cache.containsKey(new Key("a")));
+    }
+
+    @Test
+    void looksUpOnlyMissingKeysInBulk() {
+        CountingCache backend = new CountingCache();
+        backend.put(new Key("a"), "first");
+        backend.put(new Key("b"), "second");
+        HotTierCache cache = new HotTierCache(backend, new HotTier(1 << 20), "test", true);
+        assertEquals("first", cache.get(new Key("a"), String.class));
+        assertEquals(1, backend.lookups);
+
+        Map<Key, String> values = cache.getAll(List.of(new Key("a"), new Key("b"), new Key("c")), String.class);
+        assertEquals(Map.of(new Key("a"), "first", new Key("b"), "second"), values);
+        assertEquals(3, backend.lookups);
+
+        cache.putAll(Map.of(new Key("c"), "third", new Key("d"), "fourth"));
+        assertEquals(
+                Map.of(new Key("b"), "second", new Key("c"), "third", new Key("d"), "fourth"),
+                cache.getAll(List.of(new Key("b"), new Key("c"), new Key("d")), String.class));
+        assertEquals("fourth", backend.get(new Key("d"), String.class));
+        assertEquals(4, backend.lookups);
+    }
+
+    @Test
+    void evictsValuesBeyondTheBudget() {
+        CountingCache backend = new CountingCache();
+        // Each of the 16 segments has room for a single entry of this size
+        HotTierCache cache = new HotTierCache(backend, new HotTier(16 * 1024), "test", false);
+        String value = "x".repeat(400);
+        for (int i = 0; i < 32; i++) {
+            cache.put(new Key("key" + i), value);
+        }
+        for (int i = 0; i < 32; i++) {
+            assertEquals(value, cache.get(new Key("key" + i), String.class));
+        }
+        assertTrue(backend.lookups >= 16, "At most one entry per segment may be kept");
+
+        // Values larger than a segment are never kept
+        int lookups = backend.lookups;
+        cache.put(new Key("large"), "x".repeat(1024));
+        cache.get(new Key("large"), String.class);
+        assertEquals(lookups + 1, backend.lookups);
+    }
+}
@@ -0,0 +1,188 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the append-only {@link LogLocalCache}.
+ */
+class LogLocalCacheTest {
+
+    private record Key(String localKey) implements CacheKey {
+        @Override
+        public String toJsonKey() {
+            return localKey;
+        }
+    }
+
+    @Test
+    void reopensAppendedEntries() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        Path log = directory.resolve("test.log");
+        Path json = directory.resolve("test.json");
+        LogLocalCache cache = new LogLocalCache(log, json, LogLocalCache.SyncPolicy.FLUSH);
+        cache.put(new Key("a"), "first");
+        cache.put(new Key("b"), "ümlaut");
+        cache.put(new Key("a"), "second");
+        assertEquals("second", cache.get(new Key("a")));
+        cache.close();
+
+        // Simulate a crash while appending a record
+        Files.write(log, new byte[] {1, 2, 3, 4, 0, 0}, StandardOpenOption.APPEND);
+
+        LogLocalCache reopened = new LogLocalCache(log, json, LogLocalCache.SyncPolicy.NEVER);
+        assertEquals("second", reopened.get(new Key("a")));
+        assertEquals("ümlaut", reopened.get(new Key("b")));
+        assertNull(reopened.get(new Key("c")));
+        assertTrue(reopened.containsKey(new Key("b")));
+        assertFalse(reopened.containsKey(new Key("c")));
+        reopened.put(new Key("c"), "third");
+        assertEquals("third", reopened.get(new Key("c")));
+        assertFalse(Files.exists(json));
+    }
+
+    @Test
+    void loadsIndexFileAndScansNewerRecords() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        Path log = directory.resolve("test.log");
+        Path json = directory.resolve("test.json");
+        LogLocalCache cache = new LogLocalCache(log, json, LogLocalCache.SyncPolicy.FLUSH);
+        cache.put(new Key("a"), "first");
+        cache.put(new Key("b"), "second");
+        cache.write();
+        assertTrue(Files.exists(directory.resolve("test.log.index")));
+        Path outdatedIndex = directory.resolve("outdated.index");
+        Files.copy(directory.resolve("test.log.index"), outdatedIndex);
+        cache.put(new Key("a"), "third");
+        cache.close();
+        // Restore the index file that does not cover the last record
+        Files.copy(outdatedIndex, directory.resolve("test.log.index"), StandardCopyOption.REPLACE_EXISTING);
+
+        LogLocalCache reopened = new LogLocalCache(log, json, LogLocalCache.SyncPolicy.FLUSH);
+        assertEquals("third", reopened.get(new Key("a")));
+        assertEquals("second", reopened.get(new Key("b")));
+        reopened.close();
+
+        // An index file of a different log must be ignored
+        Path otherLog = directory.resolve("other.log");
+        LogLocalCache other = new LogLocalCache(otherLog, json, LogLocalCache.SyncPolicy.FLUSH);
+        other.put(new Key("c"), "fourth");
+        other.put(new Key("d"), "fifth");
+        other.write();
+        Files.copy(
+                directory.resolve("other.log.index"),
+                directory.resolve("test.log.index"),
+                StandardCopyOption.REPLACE_EXISTING);
+        reopened = new LogLocalCache(log, json, LogLocalCache.SyncPolicy.FLUSH);
+        assertEquals("third", reopened.get(new Key("a")));
+        assertFalse(reopened.containsKey(new Key("c")));
+    }
+
+    @Test
+    void skipsUnchangedValues() throws IOException {
+        Path log = Files.createTempDirectory("cache").resolve("test.log");
+        LogLocalCache cache = new LogLocalCache(log, log.resolveSibling("test.json"), LogLocalCache.SyncPolicy.ALWAYS);
+        cache.put(new Key("a"), "value");
+        long size = Files.size(log);
+        cache.put(new Key("a"), "value");
+        assertEquals(size, Files.size(log));
+    }
+
+    @Test
+    void compactsWhileValuesAreStoredAndRead() throws Exception {
+        Path log = Files.createTempDirectory("cache").resolve("test.log");
+        LogLocalCache cache = new LogLocalCache(log, log.resolveSibling("test.json"), LogLocalCache.SyncPolicy.NEVER);
+        int keys = 200;
+        int rounds = 20;
+        for (int i = 0; i < keys; i++) {
+            cache.put(new Key("k" + i), "initial");
+        }
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread writer = Thread.ofPlatform().start(() -> {
+            try {
+                for (int round = 0; round < rounds; round++) {
+                    for (int i = 0; i < keys; i++) {
+                        cache.put(new Key("k" + i), "round " + round);
+                    }
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            } finally {
+                writing.set(false);
+            }
+        });
+        Thread reader = Thread.ofPlatform().start(() -> {
+            try {
+                for (int i = 0; writing.get(); i = (i + 1) % keys) {
+                    String value = cache.get(new Key("k" + i));
+                    if (value == null || !(value.equals("initial") || value.startsWith("round "))) {
+                        throw new AssertionError("Unexpected value of k" + i + ": " + value);
+                    }
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        while (writing.get()) {
+            cache.compact();
+        }
+        writer.join();
+        reader.join();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        long liveBytes = 0;
+        for (int i = 0; i < keys; i++) {
+            String value = "round " + (rounds - 1);
+            assertEquals(value, cache.get(new Key("k" + i)));
+            liveBytes += 3L * Integer.BYTES + ("k" + i).length() + value.length();
+        }
+        // Every byte of the log (after its header) is either a live record or garbage
+        assertEquals(Files.size(log) - 2L * Integer.BYTES - liveBytes, cache.garbage());
+
+        cache.compact();
+        assertEquals(0, cache.garbage());
+        assertEquals(2L * Integer.BYTES + liveBytes, Files.size(log));
+        cache.close();
+    }
+
+    @Test
+    void opensLockedLogReadOnly() throws IOException {
+        Path log = Files.createTempDirectory("cache").resolve("test.log");
+        Path json = log.resolveSibling("test.json");
+        LogLocalCache writer = new LogLocalCache(log, json, LogLocalCache.SyncPolicy.FLUSH);
+        writer.put(new Key("a"), "value");
+        // A record that is still being appended by the writer
+        Files.write(log, new byte[] {1, 2, 3, 4, 0, 0}, StandardOpenOption.APPEND);
+        long size = Files.size(log);
+
+        LogLocalCache reader = new LogLocalCache(log, json, LogLocalCache.SyncPolicy.FLUSH);
+        assertFalse(reader.isWritable());
+        assertEquals("value", reader.get(new Key("a")));
+        reader.put(new Key("b"), "discarded");
+        reader.write();
+        assertNull(reader.get(new Key("b")));
+        assertEquals(size, Files.size(log));
+
+        // The lock is released when the writer is closed
+        writer.close();
+        reader.close();
+        LogLocalCache reopened = new LogLocalCache(log, json, LogLocalCache.SyncPolicy.FLUSH);
+        assertTrue(reopened.isWritable());
+        assertTrue(Files.size(log) < size);
+        reopened.close();
+    }
+}
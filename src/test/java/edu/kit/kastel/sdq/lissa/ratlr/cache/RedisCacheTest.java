@@ -0,0 +1,138 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import redis.clients.jedis.CommandObject;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.executors.CommandExecutor;
+
+/**
+ * Tests the synchronization of {@link RedisCache} between Redis and its local cache.
+ */
+class RedisCacheTest {
+
+    private record Key(String localKey) implements CacheKey {
+        @Override
+        public String toJsonKey() {
+            return localKey;
+        }
+    }
+
+    private static final class MapLocalCache implements LocalCache {
+        private final Map<String, String> values = new ConcurrentHashMap<>();
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void write() {}
+
+        @Override
+        public @Nullable String get(CacheKey key) {
+            return values.get(key.localKey());
+        }
+
+        @Override
+        public void put(CacheKey key, String value) {
+            values.put(key.localKey(), value);
+        }
+
+        @Override
+        public boolean containsKey(CacheKey key) {
+            return values.containsKey(key.localKey());
+        }
+    }
+
+    /** Keeps the values of Redis in memory and runs a callback after the next read */
+    private static final class FakeJedis extends UnifiedJedis {
+        private final Map<String, String> values = new ConcurrentHashMap<>();
+        private volatile @Nullable Runnable afterNextRead;
+
+        private FakeJedis() {
+            super(new CommandExecutor() {
+                @Override
+                public <T> T executeCommand(CommandObject<T> commandObject) {
+                    throw new UnsupportedOperationException("Only the overridden commands are supported");
+                }
+
+                @Override
+                public void close() {}
+            });
+        }
+
+        @Override
+        public String hget(String key, String field) {
+            String value = values.get(key);
+            Runnable callback = afterNextRead;
+            afterNextRead = null;
+            if (callback != null) {
+                callback.run();
+            }
+            return value;
+        }
+
+        @Override
+        public long hset(String key, Map<String, String> hash) {
+            values.put(key, hash.get("data"));
+            return 1;
+        }
+
+        @Override
+        public long hsetnx(String key, String field, String value) {
+            return values.putIfAbsent(key, value) == null ? 1 : 0;
+        }
+
+        @Override
+        public boolean exists(String key) {
+            return values.containsKey(key);
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    @Test
+    void concurrentPutIsNotReplacedByStaleRedisValue() {
+        FakeJedis jedis = new FakeJedis();
+        MapLocalCache localCache = new MapLocalCache();
+        RedisCache cache = new RedisCache(localCache, true, jedis);
+        Key key = new Key("key");
+        cache.put(key, "old");
+
+        // Another thread stores a new value after the lookup read the old one from Redis
+        jedis.afterNextRead = () -> {
+            Thread writer = Thread.ofVirtual().start(() -> cache.put(key, "new"));
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        };
+        assertEquals("old", cache.get(key, String.class));
+
+        assertEquals("new", localCache.get(key));
+        assertEquals("new", cache.get(key, String.class));
+    }
+
+    @Test
+    void conflictingLocalValueIsReplaced() {
+        FakeJedis jedis = new FakeJedis();
+        MapLocalCache localCache = new MapLocalCache();
+        Key key = new Key("key");
+        jedis.values.put(key.toJsonKey(), "redis");
+        localCache.put(key, "local");
+
+        assertEquals("redis", new RedisCache(localCache, true, jedis).get(key, String.class));
+        assertEquals("redis", localCache.get(key));
+    }
+}
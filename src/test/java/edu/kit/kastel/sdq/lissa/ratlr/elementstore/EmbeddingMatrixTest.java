@@ -0,0 +1,105 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.FloatBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the contiguous {@link EmbeddingMatrix} used by the element stores.
+ */
+class EmbeddingMatrixTest {
+
+    @Test
+    void packsVectorsRowMajor() {
+        float[] first = {1, 2, 3};
+        float[] second = {4, 5, 6};
+        EmbeddingMatrix matrix = EmbeddingMatrix.of(List.of(first, second));
+
+        assertEquals(2, matrix.rows());
+        assertEquals(3, matrix.dimensions());
+        assertArrayEquals(first, matrix.copyOfRow(0));
+        assertArrayEquals(second, matrix.copyOfRow(1));
+
+        // The matrix must not be affected by modifications of the input
+        first[0] = 42;
+        assertArrayEquals(new float[] {1, 2, 3}, matrix.copyOfRow(0));
+    }
+
+    @Test
+    void storesHalfPrecision() {
+        EmbeddingMatrix matrix =
+                EmbeddingMatrix.ofHalfPrecision(List.of(new float[] {1, 0.5f, 3}, new float[] {1f / 3, -2, 0}));
+
+        assertTrue(matrix.isHalfPrecision());
+        assertEquals(3 * Short.BYTES, matrix.bytesPerRow());
+        assertArrayEquals(new float[] {1, 0.5f, 3}, matrix.copyOfRow(0));
+        assertEquals(1f / 3, matrix.copyOfRow(1)[0], 1e-3);
+        assertEquals(-2f, matrix.row(1).get(1));
+        // Row functions without a half-precision implementation see the converted values
+        assertEquals(4.5, matrix.select(new int[] {0}).applyToRow(0, (data, offset, length) -> data[offset]
+                + data[offset + 1]
+                + data[offset + 2]));
+    }
+
+    @Test
+    void rowViewsAreReadOnly() {
+        EmbeddingMatrix matrix = EmbeddingMatrix.of(List.of(new float[] {1, 2}, new float[] {3, 4}));
+
+        FloatBuffer row = matrix.row(1);
+        assertEquals(2, row.remaining());
+        assertEquals(3f, row.get(0));
+        assertEquals(4f, row.get(1));
+        assertThrows(ReadOnlyBufferException.class, () -> row.put(0, 0));
+    }
+
+    @Test
+    void selectSharesStorageAndRemapsRows() {
+        EmbeddingMatrix matrix =
+                EmbeddingMatrix.of(List.of(new float[] {1, 1}, new float[] {2, 2}, new float[] {3, 3}));
+
+        EmbeddingMatrix selection = matrix.select(new int[] {2, 0});
+        assertEquals(2, selection.rows());
+        assertArrayEquals(new float[] {3, 3}, selection.copyOfRow(0));
+        assertArrayEquals(new float[] {1, 1}, selection.copyOfRow(1));
+        assertEquals(6.0, selection.applyToRow(0, (data, offset, length) -> data[offset] + data[offset + 1]), 0.0);
+
+        EmbeddingMatrix nestedSelection = selection.select(new int[] {1});
+        assertArrayEquals(new float[] {1, 1}, nestedSelection.copyOfRow(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> selection.copyOfRow(2));
+    }
+
+    @Test
+    void splitsHeapStorageIntoRowAlignedChunks() {
+        List<float[]> vectors = List.of(new float[] {1, 2, 3}, new float[] {4, 5, 6}, new float[] {7, 8, 9});
+        // Chunks of at most 7 values hold two rows of three dimensions each
+        for (EmbeddingMatrix matrix :
+                List.of(EmbeddingMatrix.of(vectors, 7), EmbeddingMatrix.ofHalfPrecision(vectors, 7))) {
+            assertEquals(3, matrix.rows());
+            for (int row = 0; row < vectors.size(); row++) {
+                assertArrayEquals(vectors.get(row), matrix.copyOfRow(row));
+                assertEquals(vectors.get(row)[2], matrix.row(row).get(2));
+            }
+            EmbeddingMatrix selection = matrix.select(new int[] {2, 1});
+            assertEquals(15.0, selection.applyToRow(0, (data, offset, length) -> data[offset] + data[offset + 1]));
+            assertArrayEquals(vectors.get(1), selection.copyOfRow(1));
+        }
+    }
+
+    @Test
+    void rejectsMixedDimensions() {
+        List<float[]> vectors = List.of(new float[] {1, 2}, new float[] {1, 2, 3});
+        assertThrows(IllegalArgumentException.class, () -> EmbeddingMatrix.of(vectors));
+    }
+
+    @Test
+    void emptyMatrix() {
+        EmbeddingMatrix matrix = EmbeddingMatrix.of(List.of());
+        assertEquals(0, matrix.rows());
+        assertEquals(0, matrix.select(new int[0]).rows());
+    }
+}
@@ -0,0 +1,121 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+
+/**
+ * Tests that the {@link PersistentVectorIndex} only reuses persisted embeddings for the same model and elements.
+ */
+class PersistentVectorIndexTest {
+
+    @Test
+    void reusesEmbeddingsOfUnchangedCorpus() throws IOException {
+        Path directory = Files.createTempDirectory("vector-index");
+        PersistentVectorIndex index = new PersistentVectorIndex(directory);
+        Element parent = new Element("parent", "type", "parent content", 0, null, false);
+        List<Element> elements = List.of(parent, new Element("child", "type", "child content", 1, parent, true));
+        AtomicInteger calculations = new AtomicInteger();
+
+        EmbeddingMatrix first = index.loadOrCalculate("model", elements, toEmbed -> embed(toEmbed, calculations));
+        EmbeddingMatrix second = index.loadOrCalculate("model", elements, toEmbed -> embed(toEmbed, calculations));
+        assertEquals(1, calculations.get());
+        assertEquals(first.rows(), second.rows());
+        for (int i = 0; i < first.rows(); i++) {
+            assertArrayEquals(first.copyOfRow(i), second.copyOfRow(i));
+        }
+
+        // Another model or changed content must not reuse the persisted embeddings
+        index.loadOrCalculate("other model", elements, toEmbed -> embed(toEmbed, calculations));
+        assertEquals(2, calculations.get());
+        List<Element> changed = List.of(parent, new Element("child", "type", "changed content", 1, parent, true));
+        index.loadOrCalculate("model", changed, toEmbed -> embed(toEmbed, calculations));
+        assertEquals(3, calculations.get());
+    }
+
+    @Test
+    void mapsVectorsInChunks() throws IOException {
+        // Chunks of 3 rows (with 4 dimensions), so the 10 vectors are mapped in 4 chunks
+        PersistentVectorIndex index = new PersistentVectorIndex(Files.createTempDirectory("vector-index"), 48);
+        List<Element> elements = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            elements.add(new Element("e" + i, "type", "content " + i, 0, null, true));
+            vectors.add(new float[] {i, -i, i / 2f, 1});
+        }
+        index.loadOrCalculate("model", elements, toEmbed -> vectors);
+        EmbeddingMatrix loaded = index.loadOrCalculate("model", elements, toEmbed -> {
+            throw new AssertionError("The vectors must be loaded from the index");
+        });
+
+        assertEquals(10, loaded.rows());
+        int[] selected = {9, 2, 3, 6};
+        EmbeddingMatrix selection = loaded.select(selected);
+        for (int i = 0; i < 10; i++) {
+            assertArrayEquals(vectors.get(i), loaded.copyOfRow(i));
+            float[] row = new float[4];
+            loaded.row(i).get(row);
+            assertArrayEquals(vectors.get(i), row);
+            assertEquals(vectors.get(i)[2], loaded.applyToRow(i, (data, offset, length) -> data[offset + 2]), 0.0);
+        }
+        for (int i = 0; i < selected.length; i++) {
+            assertArrayEquals(vectors.get(selected[i]), selection.copyOfRow(i));
+        }
+    }
+
+    @Test
+    void mapsHalfPrecisionVectors() throws IOException {
+        // Chunks of 2 rows (with 3 dimensions in half precision), so the 5 vectors are mapped in 3 chunks
+        PersistentVectorIndex index = new PersistentVectorIndex(Files.createTempDirectory("vector-index"), 12);
+        List<Element> elements = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            elements.add(new Element("e" + i, "type", "content " + i, 0, null, true));
+            vectors.add(new float[] {i, 1f / 3, -i / 4f});
+        }
+        index.loadOrCalculate("model", elements, toEmbed -> vectors, true);
+        EmbeddingMatrix loaded = index.loadOrCalculate(
+                "model",
+                elements,
+                toEmbed -> {
+                    throw new AssertionError("The vectors must be loaded from the index");
+                },
+                true);
+
+        assertTrue(loaded.isMapped());
+        assertTrue(loaded.isHalfPrecision());
+        assertEquals(3 * Short.BYTES, loaded.bytesPerRow());
+        for (int i = 0; i < 5; i++) {
+            assertArrayEquals(vectors.get(i), loaded.copyOfRow(i), 1e-3f);
+            assertEquals(i, loaded.applyToRow(i, (data, offset, length) -> data[offset]), 0.0);
+        }
+
+        // A single-precision index is calculated separately
+        AtomicInteger calculations = new AtomicInteger();
+        EmbeddingMatrix single = index.loadOrCalculate("model", elements, toEmbed -> {
+            calculations.incrementAndGet();
+            return vectors;
+        });
+        assertEquals(1, calculations.get());
+        assertFalse(single.isHalfPrecision());
+    }
+
+    private static List<float[]> embed(List<Element> elements, AtomicInteger calculations) {
+        calculations.incrementAndGet();
+        List<float[]> embeddings = new ArrayList<>();
+        for (Element element : elements) {
+            embeddings.add(new float[] {element.getContent().length(), element.getGranularity(), 0.5f});
+        }
+        return embeddings;
+    }
+}
@@ -0,0 +1,46 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
+
+/**
+ * Tests that a reduced {@link TargetElementStore} shares the embeddings of the store it was reduced from.
+ */
+class TargetElementStoreTest {
+
+    @Test
+    void reducedStoreKeepsBackingStorage() {
+        TargetElementStore targetStore =
+                new TargetElementStore(new ModuleConfiguration("cosine_similarity", Map.of("max_results", "1")));
+        List<Element> targets = List.of(
+                new Element("t0", "type", "", 0, null, true),
+                new Element("t1", "type", "", 0, null, true),
+                new Element("t2", "type", "", 0, null, true));
+        targetStore.setup(targets, List.of(new float[] {1, 0}, new float[] {0, 1}, new float[] {-1, 0}), true);
+
+        // Both sources are most similar to t1, the third one to t0
+        SourceElementStore sourceStore = new SourceElementStore(List.of(
+                new Pair<>(new Element("s0", "type", "", 0, null, true), new float[] {0, 2}),
+                new Pair<>(new Element("s1", "type", "", 0, null, true), new float[] {0.1f, 1}),
+                new Pair<>(new Element("s2", "type", "", 0, null, true), new float[] {3, 0})));
+        TargetElementStore reduced = targetStore.reduceTargetElementStore(sourceStore);
+
+        EmbeddingMatrix embeddings = reduced.getEmbeddingsIntern(false);
+        assertTrue(embeddings.isHalfPrecision());
+        List<String> identifiers = reduced.getAllElements().stream().map(Element::getIdentifier).toList();
+        assertEquals(List.of("t1", "t1", "t0"), identifiers);
+        assertArrayEquals(new float[] {0, 1}, embeddings.copyOfRow(1));
+        assertArrayEquals(new float[] {1, 0}, embeddings.copyOfRow(2));
+        Element nearest = reduced.findSimilar(new Pair<>(null, new float[] {1, 0.1f})).getFirst();
+        assertEquals("t0", nearest.getIdentifier());
+    }
+}
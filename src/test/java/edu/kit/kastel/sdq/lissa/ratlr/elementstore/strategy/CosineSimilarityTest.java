@@ -0,0 +1,207 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.EmbeddingMatrix;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
+
+/**
+ * Checks that the prepared {@link CosineSimilarity} search returns exactly what a full sort of all similarities
+ * returns, including the order of ties, and that the similarity kernels agree.
+ */
+class CosineSimilarityTest {
+
+    @Test
+    void preparedSearchMatchesFullSort() {
+        Random random = new Random(3);
+        List<Element> elements = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            elements.add(new Element("e" + i, "test", "", 0, null, true));
+            // Few distinct values, so that many similarities are equal
+            vectors.add(new float[] {random.nextInt(3), random.nextInt(3), random.nextInt(3) - 1f});
+        }
+        EmbeddingMatrix embeddings = EmbeddingMatrix.of(vectors);
+
+        for (String maxResults : List.of("1", "7", "500", "1000", CosineSimilarity.MAX_RESULTS_INFINITY_ARGUMENT)) {
+            CosineSimilarity strategy =
+                    new CosineSimilarity(new ModuleConfiguration("cosine_similarity", Map.of("max_results", maxResults)));
+            SimilaritySearch search = strategy.prepare(elements, embeddings);
+            for (int q = 0; q < 20; q++) {
+                Pair<Element, float[]> query =
+                        new Pair<>(null, new float[] {random.nextInt(3), random.nextInt(3), random.nextInt(3)});
+                List<Pair<Element, Float>> expected = fullSort(query.second(), elements, vectors, maxResults);
+                assertEquals(expected, search.findSimilar(query));
+                assertEquals(expected, strategy.findSimilarElements(query, pairs(elements, vectors)));
+            }
+        }
+    }
+
+    @Test
+    void batchSearchMatchesSingleSearches() {
+        Random random = new Random(6);
+        List<Element> elements = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            elements.add(new Element("e" + i, "test", "", 0, null, true));
+            vectors.add(randomVector(random, 64));
+        }
+        EmbeddingMatrix embeddings = EmbeddingMatrix.of(vectors);
+        List<Pair<Element, float[]>> queries = new ArrayList<>();
+        for (int q = 0; q < 100; q++) {
+            queries.add(new Pair<>(null, randomVector(random, 64)));
+        }
+
+        for (String preNormalize : List.of("false", "true")) {
+            Map<String, String> arguments = Map.of("max_results", "20", "pre_normalize", preNormalize);
+            SimilaritySearch search =
+                    new CosineSimilarity(new ModuleConfiguration("cosine_similarity", arguments)).prepare(elements, embeddings);
+            List<List<Pair<Element, Float>>> batch = search.findSimilarBatch(queries);
+            assertEquals(queries.size(), batch.size());
+            for (int q = 0; q < queries.size(); q++) {
+                assertEquals(search.findSimilar(queries.get(q)), batch.get(q));
+            }
+        }
+    }
+
+    @Test
+    void preNormalizedSearchIsCloseToExactSearch() {
+        Random random = new Random(4);
+        List<Element> elements = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            elements.add(new Element("e" + i, "test", "", 0, null, true));
+            vectors.add(new float[] {random.nextFloat(), random.nextFloat(), random.nextFloat(), random.nextFloat()});
+        }
+        EmbeddingMatrix embeddings = EmbeddingMatrix.of(vectors);
+        Map<String, String> arguments = Map.of("max_results", "infinity", "pre_normalize", "true");
+        SimilaritySearch search =
+                new CosineSimilarity(new ModuleConfiguration("cosine_similarity", arguments)).prepare(elements, embeddings);
+
+        Pair<Element, float[]> query = new Pair<>(null, new float[] {1, 2, 3, 4});
+        List<Pair<Element, Float>> expected = fullSort(query.second(), elements, vectors, "infinity");
+        List<Pair<Element, Float>> actual = search.findSimilar(query);
+        assertEquals(expected.size(), actual.size());
+        for (Pair<Element, Float> result : actual) {
+            float exact = expected.stream()
+                    .filter(pair -> pair.first() == result.first())
+                    .findFirst()
+                    .orElseThrow()
+                    .second();
+            assertEquals(exact, result.second(), 1e-6);
+        }
+    }
+
+    @Test
+    void quantizedSearchRescoresCandidates() {
+        Random random = new Random(7);
+        List<Element> elements = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            elements.add(new Element("e" + i, "test", "", 0, null, true));
+            vectors.add(randomVector(random, 64));
+        }
+        EmbeddingMatrix embeddings = EmbeddingMatrix.of(vectors);
+        SimilaritySearch exactSearch = new CosineSimilarity(
+                        new ModuleConfiguration("cosine_similarity", Map.of("max_results", "10")))
+                .prepare(elements, embeddings);
+        SimilaritySearch quantizedSearch = new CosineSimilarity(new ModuleConfiguration(
+                        "cosine_similarity", Map.of("max_results", "10", "quantization", "int8")))
+                .prepare(elements, embeddings);
+
+        int found = 0;
+        for (int q = 0; q < 50; q++) {
+            Pair<Element, float[]> query = new Pair<>(null, randomVector(random, 64));
+            List<Pair<Element, Float>> expected = exactSearch.findSimilar(query);
+            List<Pair<Element, Float>> actual = quantizedSearch.findSimilar(query);
+            assertEquals(expected.size(), actual.size());
+            // Rescored similarities are exact, so every element found by both searches has the same score
+            for (Pair<Element, Float> result : actual) {
+                if (expected.contains(result)) {
+                    found++;
+                }
+            }
+            assertEquals(List.of(actual), quantizedSearch.findSimilarBatch(List.of(query)));
+        }
+        assertTrue(found >= 0.95 * 50 * 10, "Recall too low: " + found);
+    }
+
+    @Test
+    void vectorKernelMatchesScalarKernel() {
+        assumeTrue(
+                ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent(),
+                "Requires --add-modules jdk.incubator.vector");
+        DotProductKernel vectorKernel = DotProductKernel.fastest();
+        assertNotSame(DotProductKernel.scalar(), vectorKernel);
+        Random random = new Random(5);
+        // Lengths around the vector width check the handling of the tail
+        for (int length : new int[] {1, 3, 7, 8, 15, 16, 17, 33, 1536, 3072}) {
+            float[] query = new float[length];
+            float[] data = new float[length + 2];
+            for (int i = 0; i < length; i++) {
+                query[i] = (float) random.nextGaussian();
+                data[i + 2] = (float) random.nextGaussian();
+            }
+            double expected = DotProductKernel.scalar().dotProduct(query, data, 2);
+            assertEquals(expected, vectorKernel.dotProduct(query, data, 2), Math.abs(expected) * 1e-12 + 1e-12);
+
+            byte[] codes = new byte[length + 2];
+            random.nextBytes(codes);
+            double expectedCodes = DotProductKernel.scalar().dotProduct(query, codes, 2);
+            assertEquals(
+                    expectedCodes,
+                    vectorKernel.dotProduct(query, codes, 2),
+                    Math.abs(expectedCodes) * 1e-12 + 1e-9);
+        }
+    }
+
+    private static List<Pair<Element, Float>> fullSort(
+            float[] query, List<Element> elements, List<float[]> vectors, String maxResults) {
+        List<Pair<Element, Float>> similarities = new ArrayList<>();
+        for (int i = 0; i < elements.size(); i++) {
+            float[] vector = vectors.get(i);
+            double dotProduct = 0.0;
+            double normA = 0.0;
+            double normB = 0.0;
+            for (int d = 0; d < vector.length; d++) {
+                dotProduct += query[d] * vector[d];
+                normA += Math.pow(query[d], 2);
+                normB += Math.pow(vector[d], 2);
+            }
+            similarities.add(
+                    new Pair<>(elements.get(i), (float) (dotProduct / (Math.sqrt(normA) * Math.sqrt(normB)))));
+        }
+        similarities.sort((a, b) -> Float.compare(b.second(), a.second()));
+        int limit = maxResults.equals(CosineSimilarity.MAX_RESULTS_INFINITY_ARGUMENT)
+                ? similarities.size()
+                : Math.min(Integer.parseInt(maxResults), similarities.size());
+        return similarities.subList(0, limit);
+    }
+
+    private static float[] randomVector(Random random, int dimensions) {
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static List<Pair<Element, float[]>> pairs(List<Element> elements, List<float[]> vectors) {
+        List<Pair<Element, float[]>> pairs = new ArrayList<>();
+        for (int i = 0; i < elements.size(); i++) {
+            pairs.add(new Pair<>(elements.get(i), vectors.get(i)));
+        }
+        return pairs;
+    }
+}
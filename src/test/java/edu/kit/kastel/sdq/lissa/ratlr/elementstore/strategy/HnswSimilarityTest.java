@@ -0,0 +1,93 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.elementstore.strategy;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.elementstore.EmbeddingMatrix;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+import edu.kit.kastel.sdq.lissa.ratlr.utils.Pair;
+
+/**
+ * Compares the approximate {@link HnswSimilarity} search with the exhaustive {@link CosineSimilarity} search.
+ */
+class HnswSimilarityTest {
+    private static final int ELEMENTS = 2000;
+    private static final int DIMENSIONS = 32;
+
+    @Test
+    void findsMostOfTheExactNeighbors() {
+        Random random = new Random(1);
+        List<Element> elements = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < ELEMENTS; i++) {
+            elements.add(new Element("e" + i, "test", "", 0, null, true));
+            vectors.add(randomVector(random));
+        }
+        EmbeddingMatrix embeddings = EmbeddingMatrix.of(vectors);
+
+        RetrievalStrategy exact =
+                new CosineSimilarity(new ModuleConfiguration("cosine_similarity", Map.of("max_results", "10")));
+        SimilaritySearch approximate = new HnswSimilarity(new ModuleConfiguration("hnsw", Map.of("max_results", "10")))
+                .prepare(elements, embeddings);
+
+        int found = 0;
+        for (int q = 0; q < 50; q++) {
+            Pair<Element, float[]> query = new Pair<>(null, randomVector(random));
+            List<Pair<Element, Float>> expected = exact.findSimilarElements(query, elements, embeddings);
+            List<Pair<Element, Float>> actual = approximate.findSimilar(query);
+            assertEquals(expected.size(), actual.size());
+
+            Set<Element> expectedElements = new HashSet<>();
+            for (Pair<Element, Float> pair : expected) {
+                expectedElements.add(pair.first());
+            }
+            for (Pair<Element, Float> result : actual) {
+                if (expectedElements.contains(result.first())) {
+                    found++;
+                }
+            }
+        }
+        // Recall@10 over all queries
+        assertTrue(found / (50.0 * 10) >= 0.9, "Recall too low: " + found / 500.0);
+    }
+
+    @Test
+    void exactSearchIfAllResultsAreRequested() {
+        Random random = new Random(2);
+        List<Element> elements = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            elements.add(new Element("e" + i, "test", "", 0, null, true));
+            vectors.add(randomVector(random));
+        }
+        EmbeddingMatrix embeddings = EmbeddingMatrix.of(vectors);
+        Map<String, String> arguments = Map.of("max_results", CosineSimilarity.MAX_RESULTS_INFINITY_ARGUMENT);
+
+        Pair<Element, float[]> query = new Pair<>(null, randomVector(random));
+        List<Pair<Element, Float>> expected = new CosineSimilarity(
+                        new ModuleConfiguration("cosine_similarity", arguments))
+                .findSimilarElements(query, elements, embeddings);
+        List<Pair<Element, Float>> actual = new HnswSimilarity(new ModuleConfiguration("hnsw", arguments))
+                .prepare(elements, embeddings)
+                .findSimilar(query);
+        assertEquals(expected, actual);
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,137 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.embeddingcreator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.kit.kastel.sdq.lissa.ratlr.cache.CacheManager;
+import edu.kit.kastel.sdq.lissa.ratlr.configuration.ModuleConfiguration;
+import edu.kit.kastel.sdq.lissa.ratlr.context.ContextStore;
+import edu.kit.kastel.sdq.lissa.ratlr.knowledge.Element;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+/**
+ * Tests that {@link CachedEmbeddingCreator} splits long contents into windows of {@code max_tokens} tokens and pools
+ * their embeddings. The mock model embeds a text as {@code [number of words, 1]}, and each word is a single token.
+ */
+class CachedEmbeddingCreatorTest {
+    private static final int MAX_TOKENS = 4;
+
+    /** The texts sent to the model, one list per request */
+    private final List<List<String>> requests = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        CacheManager.setCacheDir(Files.createTempDirectory("embedding-cache").toString());
+    }
+
+    @Test
+    void splitsLongContentsAtWindowBoundaries() {
+        MockModelCreator creator = new MockModelCreator("mean");
+        Element exact = new Element("exact", "type", words(MAX_TOKENS), 0, null, true);
+        Element longer = new Element("longer", "type", words(MAX_TOKENS + 1), 0, null, true);
+        Element twice = new Element("twice", "type", words(2 * MAX_TOKENS + 2), 0, null, true);
+
+        List<float[]> embeddings = creator.calculateEmbeddings(List.of(exact, longer, twice));
+
+        // A content with exactly max_tokens tokens is not split
+        assertEquals(
+                List.of(
+                        List.of(words(4)),
+                        List.of(words(4), " " + words(1)),
+                        List.of(words(4), " " + words(4), " " + words(2))),
+                requests);
+        assertArrayEquals(new float[] {4, 1}, embeddings.get(0));
+        // Weighted by the tokens of each window: (4 * 4 + 1 * 1) / 5
+        assertArrayEquals(new float[] {3.4f, 1}, embeddings.get(1));
+        assertArrayEquals(new float[] {3.6f, 1}, embeddings.get(2));
+    }
+
+    @Test
+    void poolsWithMeanOrMax() {
+        Element element = new Element("long", "type", words(2 * MAX_TOKENS + 2), 0, null, true);
+        MockModelCreator mean = new MockModelCreator("mean");
+        MockModelCreator max = new MockModelCreator("max");
+
+        assertArrayEquals(new float[] {3.6f, 1}, mean.calculateEmbeddings(List.of(element)).getFirst());
+        assertArrayEquals(new float[] {4, 1}, max.calculateEmbeddings(List.of(element)).getFirst());
+        assertEquals(2, requests.size());
+
+        // The pooled embeddings are cached per pooling
+        assertArrayEquals(new float[] {3.6f, 1}, mean.calculateEmbeddings(List.of(element)).getFirst());
+        assertArrayEquals(new float[] {4, 1}, max.calculateEmbeddings(List.of(element)).getFirst());
+        assertEquals(2, requests.size());
+
+        // The pooling changes the embeddings, so it is part of the identifier of the model
+        assertNotEquals(mean.getModelIdentifier(), max.getModelIdentifier());
+        assertNotEquals(mean.getModelIdentifier(), new MockModelCreator("none").getModelIdentifier());
+    }
+
+    @Test
+    void rejectsMoreConcurrentRequestsThanThreads() {
+        // The mock model creator uses a single thread
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> new MockModelCreator(Map.of("max_concurrent_requests", "2", "cache_format", "binary")));
+        assertNotNull(new MockModelCreator(Map.of("max_concurrent_requests", "1", "cache_format", "binary")));
+    }
+
+    private static String words(int count) {
+        List<String> words = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            words.add("word");
+        }
+        return String.join(" ", words);
+    }
+
+    private static Embedding embed(String text) {
+        return Embedding.from(new float[] {text.strip().split("\\s+").length, 1});
+    }
+
+    private final class MockModelCreator extends CachedEmbeddingCreator {
+        private MockModelCreator(String chunkPooling) {
+            this(Map.of(
+                    "max_tokens", String.valueOf(MAX_TOKENS), "chunk_pooling", chunkPooling, "cache_format", "binary"));
+        }
+
+        private MockModelCreator(Map<String, String> arguments) {
+            super(new ModuleConfiguration("mock", arguments), new ContextStore(), "mock-model", 1);
+        }
+
+        @Override
+        protected EmbeddingModel createEmbeddingModel(String model, String... params) {
+            return new EmbeddingModel() {
+                @Override
+                public Response<Embedding> embed(String text) {
+                    requests.add(List.of(text));
+                    return Response.from(CachedEmbeddingCreatorTest.embed(text));
+                }
+
+                @Override
+                public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+                    List<String> texts = new ArrayList<>(segments.size());
+                    List<Embedding> embeddings = new ArrayList<>(segments.size());
+                    for (TextSegment segment : segments) {
+                        texts.add(segment.text());
+                        embeddings.add(CachedEmbeddingCreatorTest.embed(segment.text()));
+                    }
+                    requests.add(texts);
+                    return Response.from(embeddings);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.embeddingcreator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import dev.langchain4j.exception.RateLimitException;
+
+/**
+ * Tests for the rate limit handling of {@link RequestLimiter}.
+ */
+class RequestLimiterTest {
+
+    @Test
+    void parsesRetryAfter() {
+        assertEquals(
+                Duration.ofSeconds(20),
+                RequestLimiter.retryAfter(new RateLimitException("Please retry after 20 seconds."), 0));
+        assertEquals(
+                Duration.ofMillis(1500), RequestLimiter.retryAfter(new RateLimitException("Try again in 1.5s"), 0));
+        assertEquals(
+                Duration.ofMillis(250), RequestLimiter.retryAfter(new RateLimitException("retry-after: 250ms"), 0));
+        // Compound durations as reported by OpenAI
+        assertEquals(
+                Duration.ofMinutes(6), RequestLimiter.retryAfter(new RateLimitException("Try again in 6m0s."), 0));
+        assertEquals(
+                Duration.ofMillis(90_500),
+                RequestLimiter.retryAfter(new RateLimitException("Please try again in 1m30.5s"), 0));
+        assertEquals(
+                Duration.ofSeconds(2), RequestLimiter.retryAfter(new RateLimitException("retry after 2 more"), 0));
+        // Exponential backoff if the provider did not request a delay
+        assertEquals(Duration.ofSeconds(4), RequestLimiter.retryAfter(new RateLimitException("Too many requests"), 2));
+    }
+
+    @Test
+    void halvesConcurrencyOnRateLimit() {
+        RequestLimiter limiter = new RequestLimiter(8, true, 0, 0, 0);
+        AtomicInteger calls = new AtomicInteger();
+        RuntimeException rateLimited = new IllegalStateException(new RateLimitException("retry after 1 ms"));
+
+        assertThrows(IllegalStateException.class, () -> limiter.execute(0, () -> {
+            calls.incrementAndGet();
+            throw rateLimited;
+        }));
+        assertEquals(1, calls.get());
+        assertEquals(4, limiter.concurrencyLimit());
+        assertTrue(RequestLimiter.isRateLimited(rateLimited));
+        assertFalse(RequestLimiter.isRateLimited(new IllegalStateException("Input too long")));
+
+        // Other errors do not change the limit and are not retried
+        assertThrows(IllegalArgumentException.class, () -> limiter.execute(0, () -> {
+            throw new IllegalArgumentException("Input too long");
+        }));
+        assertEquals(4, limiter.concurrencyLimit());
+        assertEquals("done", limiter.execute(0, () -> "done"));
+    }
+
+    @Test
+    void releasesSlotOnError() throws InterruptedException {
+        RequestLimiter limiter = new RequestLimiter(1, false, 0, 0, 0);
+        assertThrows(AssertionError.class, () -> limiter.execute(0, () -> {
+            throw new AssertionError("Unexpected state");
+        }));
+
+        // The only slot is free again, so the next request does not block
+        Thread next = Thread.ofVirtual().start(() -> limiter.execute(0, () -> "done"));
+        next.join(Duration.ofSeconds(10));
+        assertFalse(next.isAlive());
+    }
+}
@@ -0,0 +1,52 @@
+/* Licensed under MIT 2025. */
+package edu.kit.kastel.sdq.lissa.ratlr.knowledge;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the dense int ids of {@link ElementIndex}.
+ */
+class ElementIndexTest {
+
+    @Test
+    void indexesHierarchy() {
+        Element document = new Element("doc", "document", "A document", 0, null, false);
+        Element firstSentence = new Element("doc$0", "sentence", "First", 1, document, true);
+        Element secondSentence = new Element("doc$1", "sentence", "Second", 1, document, true);
+        Element other = new Element("other", "document", "Another document", 0, null, true);
+        // Children listed before their parent must be indexed as well
+        ElementIndex index = ElementIndex.of(List.of(secondSentence, document, other, firstSentence));
+
+        assertEquals(4, index.size());
+        assertEquals(1, index.indexOf("doc"));
+        assertEquals(ElementIndex.NO_ELEMENT, index.indexOf("missing"));
+        assertSame(firstSentence, index.element(3));
+
+        assertEquals(1, index.parent(0));
+        assertEquals(ElementIndex.NO_ELEMENT, index.parent(1));
+        assertEquals(1, index.granularity(3));
+        assertFalse(index.isCompare(1));
+        assertTrue(index.isCompare(2));
+
+        assertEquals(2, index.childCount(1));
+        assertArrayEquals(new int[] {0, 3}, index.children(1));
+        assertEquals(3, index.child(1, 1));
+        assertArrayEquals(new int[0], index.children(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> index.child(2, 0));
+    }
+
+    @Test
+    void treatsElementsWithUnknownParentAsRoots() {
+        Element parent = new Element("parent", "document", "Parent", 0, null, false);
+        Element child = new Element("child", "sentence", "Child", 1, parent, true);
+        ElementIndex index = ElementIndex.of(List.of(child));
+
+        assertEquals(ElementIndex.NO_ELEMENT, index.parent(0));
+        assertEquals(0, index.childCount(0));
+        assertEquals(0, ElementIndex.empty().size());
+    }
+}